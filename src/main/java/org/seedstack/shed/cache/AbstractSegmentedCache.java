@@ -0,0 +1,756 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+
+/**
+ * Base class of bounded caches split into independently locked segments. The number of segments is derived from the
+ * {@link CacheParameters#getConcurrencyLevel() concurrency level} and each segment applies its own eviction policy,
+ * bounding the total weight of its entries. The loading function is invoked outside of any lock and concurrent misses
+ * on the same key wait for a single load.
+ */
+abstract class AbstractSegmentedCache<K, V> implements Cache<K, V> {
+    private static final int MIN_SEGMENT_SIZE = 16;
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final Expiration expiration;
+    private final Refresh refresh;
+    private final StatsCounter statsCounter;
+    private final BiFunction<? super K, ? super V, Integer> weigher;
+    private final Loader<K, V> loader;
+    private final AdaptiveSizing adaptiveSizing;
+    private final MemoryPressure memoryPressure;
+    private final boolean identityKeys;
+    private final double weightPerEntry;
+    private volatile long capacity;
+    private long unscaledCapacity;
+    private volatile FrozenTable<K, V> frozenTable;
+    private long frozenWeight;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    AbstractSegmentedCache(CacheParameters<K, V> cacheParameters, SegmentFactory segmentFactory) {
+        expiration = Expiration.of(cacheParameters);
+        refresh = Refresh.of(cacheParameters);
+        statsCounter = StatsCounter.of(cacheParameters);
+        loader = new Loader<>(cacheParameters, statsCounter);
+        adaptiveSizing = AdaptiveSizing.of(cacheParameters);
+        memoryPressure = MemoryPressure.of(cacheParameters);
+        identityKeys = cacheParameters.isIdentityKeys();
+        int maxSize = Math.max(1, cacheParameters.getMaxSize());
+        long maxWeight = cacheParameters.getMaximumWeight() < 0 ? maxSize : cacheParameters.getMaximumWeight();
+        weigher = cacheParameters.getMaximumWeight() < 0 ? null : cacheParameters.getWeigher();
+        weightPerEntry = (double) maxWeight / maxSize;
+        long minCapacity = Math.min(maxSize, maxWeight);
+        if (adaptiveSizing != null) {
+            // segments are sized for the largest size the cache can grow to but must not be emptied at the smallest
+            maxSize = adaptiveSizing.maxSize();
+            maxWeight = capacityOf(adaptiveSizing.size());
+            minCapacity = Math.min(adaptiveSizing.minSize(), capacityOf(adaptiveSizing.minSize()));
+        }
+        int segmentCount = segmentCount(cacheParameters.getConcurrencyLevel(), minCapacity);
+        segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        segmentMask = segmentCount - 1;
+        segments = new Segment[segmentCount];
+        capacity = maxWeight;
+        unscaledCapacity = maxWeight;
+        int initialSize = Math.max(1, cacheParameters.getInitialSize() / segmentCount);
+        long now = System.nanoTime();
+        for (int i = 0; i < segmentCount; i++) {
+            int segmentSize = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0);
+            segments[i] = segmentFactory.create(Math.min(initialSize, segmentSize), segmentSize,
+                    segmentWeight(i, maxWeight));
+            segments[i].attach(this, now);
+        }
+        if (memoryPressure != null) {
+            MemoryPressure.register(this);
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("Cache keys cannot be null");
+        }
+        if (memoryPressure != null && memoryPressure.isPending()) {
+            applyMemoryPressure();
+        }
+        FrozenTable<K, V> frozenTable = this.frozenTable;
+        if (frozenTable != null) {
+            V value = frozenTable.get(key);
+            if (value != null) {
+                if (statsCounter != null) {
+                    statsCounter.recordHit();
+                }
+                return value;
+            }
+        }
+        int hash = hash(key);
+        if (adaptiveSizing != null) {
+            adapt(hash);
+        }
+        Segment<K, V> segment = segmentFor(hash);
+        Loading<V> loading;
+        V staleValue = null;
+        boolean owner = false;
+        synchronized (segment) {
+            Node<K, V> node = segment.find(key);
+            if (node != null) {
+                if (statsCounter != null) {
+                    statsCounter.recordHit();
+                }
+                loading = refresh == null ? null : startRefresh(segment, node);
+                if (loading == null) {
+                    return node.value;
+                }
+                staleValue = node.value;
+            } else {
+                loading = segment.loadings.get(key);
+                if (loading == null) {
+                    loading = new Loading<>(Thread.currentThread());
+                    segment.loadings.put(key, loading);
+                    owner = true;
+                } else if (loading.thread == Thread.currentThread()) {
+                    throw new IllegalStateException("Recursive load of cache key " + key);
+                }
+            }
+        }
+        if (staleValue != null) {
+            refresh(segment, key, hash, loading);
+            return staleValue;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordMiss();
+        }
+        if (owner) {
+            return load(segment, key, hash, loading);
+        } else {
+            return loading.await();
+        }
+    }
+
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        if (memoryPressure != null && memoryPressure.isPending()) {
+            applyMemoryPressure();
+        }
+        FrozenTable<K, V> frozenTable = this.frozenTable;
+        Set<K> requestedKeys = new LinkedHashSet<>();
+        Map<Segment<K, V>, List<K>> keysBySegment = new HashMap<>();
+        Map<K, V> values = new HashMap<>();
+        for (K key : keys) {
+            if (requestedKeys.add(key)) {
+                V frozenValue = frozenTable == null ? null : frozenTable.get(key);
+                if (frozenValue == null) {
+                    int hash = hash(key);
+                    if (adaptiveSizing != null) {
+                        adapt(hash);
+                    }
+                    keysBySegment.computeIfAbsent(segmentFor(hash), s -> new ArrayList<>()).add(key);
+                } else {
+                    values.put(key, frozenValue);
+                    if (statsCounter != null) {
+                        statsCounter.recordHit();
+                    }
+                }
+            }
+        }
+
+        Map<K, Loading<V>> ownedLoadings = new LinkedHashMap<>();
+        Map<K, Loading<V>> otherLoadings = new HashMap<>();
+        Map<K, Loading<V>> refreshes = new HashMap<>();
+        try {
+            for (Map.Entry<Segment<K, V>, List<K>> entry : keysBySegment.entrySet()) {
+                lookupAll(entry.getKey(), entry.getValue(), values, ownedLoadings, otherLoadings, refreshes);
+            }
+            for (Map.Entry<K, Loading<V>> entry : refreshes.entrySet()) {
+                int hash = hash(entry.getKey());
+                refresh(segmentFor(hash), entry.getKey(), hash, entry.getValue());
+            }
+            if (!ownedLoadings.isEmpty()) {
+                values.putAll(loadAll(ownedLoadings));
+            }
+        } catch (RuntimeException | Error e) {
+            abandonAll(ownedLoadings, e);
+            throw e;
+        }
+        for (Map.Entry<K, Loading<V>> entry : otherLoadings.entrySet()) {
+            V value = entry.getValue().await();
+            if (value != null) {
+                values.put(entry.getKey(), value);
+            }
+        }
+
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : requestedKeys) {
+            V value = values.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        if (frozenTable != null) {
+            synchronized (this) {
+                FrozenTable<K, V> currentTable = frozenTable;
+                V frozenValue = currentTable == null ? null : currentTable.remove(key);
+                if (frozenValue != null) {
+                    frozenWeight -= weightOf(key, frozenValue);
+                }
+            }
+        }
+        Segment<K, V> segment = segmentFor(hash(key));
+        synchronized (segment) {
+            segment.invalidate(key);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        if (frozenTable != null) {
+            synchronized (this) {
+                frozenTable = null;
+                frozenWeight = 0;
+                applyCapacity(unscaledCapacity);
+            }
+        }
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Moves all the entries into an immutable perfect hash table read without locks. The segments then only hold the
+     * entries loaded afterwards, within the capacity left by the frozen entries (at least one entry per segment).
+     * Frozen entries are not evicted but can still be invalidated. Freezing again merges the entries loaded since the
+     * last freeze. If the capacity of the cache is reduced below the weight of the frozen entries, by resizing,
+     * adaptive sizing or memory pressure, they are moved back to the segments to be evicted by the policy.
+     *
+     * @throws UnsupportedOperationException if the cache expires or refreshes its entries.
+     */
+    @Override
+    public synchronized void freeze() {
+        if (expiration != null || refresh != null) {
+            throw new UnsupportedOperationException("A cache expiring or refreshing its entries cannot be frozen");
+        }
+        Map<K, V> entries = identityKeys ? new IdentityHashMap<>() : new HashMap<>();
+        FrozenTable<K, V> currentTable = frozenTable;
+        if (currentTable != null) {
+            currentTable.forEach(entries::put);
+        }
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.drainTo(entries);
+            }
+        }
+        Map<K, V> leftOut = new HashMap<>();
+        frozenTable = FrozenTable.of(entries, identityKeys, leftOut::put);
+        frozenWeight = 0;
+        frozenTable.forEach((key, value) -> frozenWeight += weightOf(key, value));
+        applyCapacity(unscaledCapacity);
+        // keys sharing their hash code with a frozen one stay in the segments
+        leftOut.forEach(this::insert);
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.empty() : statsCounter.snapshot();
+    }
+
+    /**
+     * Returns the total weight of the entries, which is their number if the cache is not bounded by weight.
+     */
+    long weightedSize() {
+        long weightedSize;
+        synchronized (this) {
+            weightedSize = frozenWeight;
+        }
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                weightedSize += segment.weightedSize;
+            }
+        }
+        return weightedSize;
+    }
+
+    /**
+     * Returns the maximum total weight of the entries, which varies over time with adaptive sizing and memory pressure.
+     */
+    long capacity() {
+        return capacity;
+    }
+
+    private void adapt(int hash) {
+        if (adaptiveSizing.record(hash) > 0) {
+            resize();
+        }
+    }
+
+    /**
+     * Applies the current adaptive size to the segments, evicting entries if the cache shrinks. The size is read
+     * while holding the cache lock so that concurrent resizes cannot apply an older size last.
+     */
+    private synchronized void resize() {
+        applyCapacity(capacityOf(adaptiveSizing.size()));
+    }
+
+    /**
+     * Changes the maximum size of the cache, scaling the weight bound in the same proportion. Returns false if the size
+     * cannot be changed in place, because the cache sizes itself adaptively or has more segments than entries.
+     */
+    boolean setMaxSize(int maxSize) {
+        long newCapacity = capacityOf(maxSize);
+        if (adaptiveSizing != null || newCapacity < segments.length) {
+            return false;
+        }
+        applyCapacity(newCapacity);
+        return true;
+    }
+
+    /**
+     * Scales the capacity of the cache down or up for the specified heap occupancy, as decided by the memory pressure
+     * shrinking.
+     */
+    synchronized void onMemoryPressure(double occupancy) {
+        // each segment keeps at least one entry
+        if (memoryPressure.update(occupancy, (double) segments.length / unscaledCapacity)) {
+            applyCapacity(unscaledCapacity);
+        }
+    }
+
+    /**
+     * Records the specified heap occupancy for the next access to apply, as decided by the memory pressure shrinking.
+     */
+    void signalMemoryPressure(double occupancy) {
+        memoryPressure.signal(occupancy);
+    }
+
+    private synchronized void applyMemoryPressure() {
+        double occupancy = memoryPressure.takePending();
+        if (occupancy >= 0) {
+            onMemoryPressure(occupancy);
+        }
+    }
+
+    private synchronized void applyCapacity(long newCapacity) {
+        unscaledCapacity = newCapacity;
+        long scaledCapacity = newCapacity;
+        if (memoryPressure != null) {
+            scaledCapacity = Math.min(newCapacity,
+                    Math.max(segments.length, Math.round(newCapacity * memoryPressure.scale())));
+        }
+        FrozenTable<K, V> thawedTable = null;
+        if (frozenTable != null && frozenWeight > scaledCapacity) {
+            // the frozen entries don't fit anymore, they go back to the segments to be evicted by the policy
+            thawedTable = frozenTable;
+            frozenTable = null;
+            frozenWeight = 0;
+        }
+        long segmentsCapacity = Math.max(segments.length, scaledCapacity - frozenWeight);
+        for (int i = 0; i < segments.length; i++) {
+            synchronized (segments[i]) {
+                segments[i].resize(segmentWeight(i, segmentsCapacity));
+            }
+        }
+        capacity = scaledCapacity;
+        if (thawedTable != null) {
+            thawedTable.forEach(this::insert);
+        }
+    }
+
+    /**
+     * Inserts an entry in its segment, as if it was loaded.
+     */
+    private void insert(K key, V value) {
+        int hash = hash(key);
+        Node<K, V> node = newNode(key, hash, value);
+        Segment<K, V> segment = segmentFor(hash);
+        synchronized (segment) {
+            segment.insert(node);
+        }
+    }
+
+    private long weightOf(K key, V value) {
+        return weigher == null ? 1 : weigher.apply(key, value);
+    }
+
+    private long capacityOf(int size) {
+        return Math.max(1, Math.round(size * weightPerEntry));
+    }
+
+    private long segmentWeight(int index, long totalWeight) {
+        // spread the remainders over the first segments so that the total is exactly the specified weight
+        return totalWeight / segments.length + (index < totalWeight % segments.length ? 1 : 0);
+    }
+
+    private V load(Segment<K, V> segment, K key, int hash, Loading<V> loading) {
+        V value;
+        Node<K, V> node;
+        try {
+            value = loader.load(key);
+            node = value == null ? null : newNode(key, hash, value);
+        } catch (RuntimeException | Error e) {
+            synchronized (segment) {
+                segment.loadings.remove(key);
+            }
+            loading.future.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (segment) {
+            if (node != null && !loading.invalidated) {
+                segment.insert(node);
+            }
+            segment.loadings.remove(key);
+        }
+        loading.future.complete(value);
+        return value;
+    }
+
+    private void lookupAll(Segment<K, V> segment, List<K> keys, Map<K, V> values, Map<K, Loading<V>> ownedLoadings,
+            Map<K, Loading<V>> otherLoadings, Map<K, Loading<V>> refreshes) {
+        synchronized (segment) {
+            for (K key : keys) {
+                Node<K, V> node = segment.find(key);
+                if (node != null) {
+                    values.put(key, node.value);
+                    if (statsCounter != null) {
+                        statsCounter.recordHit();
+                    }
+                    Loading<V> refreshing = refresh == null ? null : startRefresh(segment, node);
+                    if (refreshing != null) {
+                        refreshes.put(key, refreshing);
+                    }
+                    continue;
+                }
+                Loading<V> loading = segment.loadings.get(key);
+                if (loading == null) {
+                    loading = new Loading<>(Thread.currentThread());
+                    segment.loadings.put(key, loading);
+                    ownedLoadings.put(key, loading);
+                } else if (loading.thread == Thread.currentThread()) {
+                    throw new IllegalStateException("Recursive load of cache key " + key);
+                } else {
+                    otherLoadings.put(key, loading);
+                }
+                if (statsCounter != null) {
+                    statsCounter.recordMiss();
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a reload of the specified node if it is due for refresh and not already being loaded. Called while
+     * holding the segment lock.
+     */
+    private Loading<V> startRefresh(Segment<K, V> segment, Node<K, V> node) {
+        if (!refresh.isDue(node, System.nanoTime()) || segment.loadings.containsKey(node.key)) {
+            return null;
+        }
+        // the reload does not belong to the current thread which may still load the key itself
+        Loading<V> loading = new Loading<>(null);
+        segment.loadings.put(node.key, loading);
+        return loading;
+    }
+
+    private void refresh(Segment<K, V> segment, K key, int hash, Loading<V> loading) {
+        refresh.execute(key, () -> {
+            V value = null;
+            try {
+                value = load(segment, key, hash, loading);
+            } finally {
+                if (value == null) {
+                    // the stale entry is kept
+                    synchronized (segment) {
+                        Node<K, V> node = segment.data.get(key);
+                        if (node != null) {
+                            refresh.backOff(node);
+                        }
+                    }
+                }
+            }
+        }, e -> {
+            synchronized (segment) {
+                segment.loadings.remove(key);
+            }
+            loading.future.completeExceptionally(e);
+        });
+    }
+
+    private Map<K, V> loadAll(Map<K, Loading<V>> ownedLoadings) {
+        Map<K, V> loadedValues = loader.loadAll(ownedLoadings.keySet());
+        Map<Segment<K, V>, List<Node<K, V>>> nodesBySegment = new HashMap<>();
+        for (K key : ownedLoadings.keySet()) {
+            int hash = hash(key);
+            V value = loadedValues.get(key);
+            nodesBySegment.computeIfAbsent(segmentFor(hash), s -> new ArrayList<>())
+                    .add(value == null ? new Node<>(key, hash, null) : newNode(key, hash, value));
+        }
+        for (Map.Entry<Segment<K, V>, List<Node<K, V>>> entry : nodesBySegment.entrySet()) {
+            Segment<K, V> segment = entry.getKey();
+            synchronized (segment) {
+                for (Node<K, V> node : entry.getValue()) {
+                    if (node.value != null && !ownedLoadings.get(node.key).invalidated) {
+                        segment.insert(node);
+                    }
+                    segment.loadings.remove(node.key);
+                }
+            }
+        }
+        for (Map.Entry<K, Loading<V>> entry : ownedLoadings.entrySet()) {
+            entry.getValue().future.complete(loadedValues.get(entry.getKey()));
+        }
+        return loadedValues;
+    }
+
+    private void abandonAll(Map<K, Loading<V>> ownedLoadings, Throwable throwable) {
+        for (Map.Entry<K, Loading<V>> entry : ownedLoadings.entrySet()) {
+            Loading<V> loading = entry.getValue();
+            if (!loading.future.isDone()) {
+                Segment<K, V> segment = segmentFor(hash(entry.getKey()));
+                synchronized (segment) {
+                    segment.loadings.remove(entry.getKey());
+                }
+                loading.future.completeExceptionally(throwable);
+            }
+        }
+    }
+
+    private Node<K, V> newNode(K key, int hash, V value) {
+        Node<K, V> node = new Node<>(key, hash, value);
+        if (weigher != null) {
+            node.weight = weigher.apply(key, value);
+            if (node.weight < 0) {
+                throw new IllegalArgumentException("Negative weight " + node.weight + " for cache key " + key);
+            }
+        }
+        return node;
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments[(hash >>> segmentShift) & segmentMask];
+    }
+
+    private int hash(K key) {
+        if (key == null) {
+            throw new NullPointerException("Cache keys cannot be null");
+        }
+        // segments are selected by the high bits of the mixed hash, leaving low bits to the segment hash map
+        return (identityKeys ? System.identityHashCode(key) : key.hashCode()) * 0x9E3779B9;
+    }
+
+    private static int segmentCount(int concurrencyLevel, long capacity) {
+        long maxSegments = Math.max(1, capacity / MIN_SEGMENT_SIZE);
+        int count = 1;
+        while (count < concurrencyLevel && count < maxSegments && count < (1 << 16)) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    @FunctionalInterface
+    interface SegmentFactory {
+        <K, V> Segment<K, V> create(int initialSize, int maxSize, long maxWeight);
+    }
+
+    /**
+     * A segment holds its entries and in-flight loads, applies the eviction policy and, if enabled, expires its
+     * entries in batches as the segment is accessed. All methods are called while holding the segment lock.
+     */
+    abstract static class Segment<K, V> {
+        private final int initialSize;
+        private Map<K, Node<K, V>> data;
+        private Map<K, Loading<V>> loadings;
+        private final TimerWheel.Expirer<K, V> expirer = this::expire;
+        private Expiration expiration;
+        private StatsCounter statsCounter;
+        private TimerWheel<K, V> timerWheel;
+        private boolean refreshing;
+        private long weightedSize;
+
+        Segment(int initialSize) {
+            this.initialSize = initialSize;
+        }
+
+        void attach(AbstractSegmentedCache<K, V> cache, long now) {
+            if (cache.identityKeys) {
+                this.data = new IdentityHashMap<>(initialSize);
+                this.loadings = new IdentityHashMap<>();
+            } else {
+                this.data = new HashMap<>(initialSize);
+                this.loadings = new HashMap<>();
+            }
+            this.expiration = cache.expiration;
+            this.statsCounter = cache.statsCounter;
+            this.refreshing = cache.refresh != null;
+            if (expiration != null) {
+                this.timerWheel = new TimerWheel<>(now);
+            }
+        }
+
+        Node<K, V> find(K key) {
+            Node<K, V> node = data.get(key);
+            if (expiration == null) {
+                if (node != null) {
+                    onAccess(node);
+                }
+                return node;
+            }
+            long now = System.nanoTime();
+            if (node != null) {
+                if (expiration.hasExpired(node, now)) {
+                    evict(node);
+                    node = null;
+                } else {
+                    node.accessTime = now;
+                    onAccess(node);
+                }
+            }
+            timerWheel.advance(now, expirer);
+            return node;
+        }
+
+        void insert(Node<K, V> node) {
+            Node<K, V> previous = data.put(node.key, node);
+            if (previous != null) {
+                unlink(previous);
+            }
+            weightedSize += node.weight;
+            if (expiration == null) {
+                if (refreshing) {
+                    node.writeTime = System.nanoTime();
+                    node.refreshTime = node.writeTime;
+                }
+                onInsert(node);
+            } else {
+                long now = System.nanoTime();
+                node.writeTime = now;
+                node.refreshTime = now;
+                node.accessTime = now;
+                timerWheel.schedule(node, expiration.expirationTime(node));
+                onInsert(node);
+                timerWheel.advance(now, expirer);
+            }
+        }
+
+        void invalidate(K key) {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                unlink(node);
+            }
+            Loading<V> loading = loadings.get(key);
+            if (loading != null) {
+                loading.invalidated = true;
+            }
+        }
+
+        /**
+         * Moves the live entries of the segment to the specified map, leaving in-flight loads unaffected.
+         */
+        void drainTo(Map<K, V> entries) {
+            long now = expiration == null ? 0L : System.nanoTime();
+            for (Node<K, V> node : data.values()) {
+                if (expiration == null || !expiration.hasExpired(node, now)) {
+                    entries.put(node.key, node.value);
+                }
+                unlink(node);
+            }
+            data.clear();
+        }
+
+        void invalidateAll() {
+            for (Node<K, V> node : data.values()) {
+                unlink(node);
+            }
+            data.clear();
+            weightedSize = 0;
+            for (Loading<V> loading : loadings.values()) {
+                loading.invalidated = true;
+            }
+        }
+
+        void evict(Node<K, V> node) {
+            data.remove(node.key);
+            unlink(node);
+            if (statsCounter != null) {
+                statsCounter.recordEviction();
+            }
+        }
+
+        private void unlink(Node<K, V> node) {
+            weightedSize -= node.weight;
+            onRemove(node);
+            if (timerWheel != null) {
+                timerWheel.deschedule(node);
+            }
+        }
+
+        private boolean expire(Node<K, V> node, long now) {
+            if (expiration.hasExpired(node, now)) {
+                evict(node);
+                return true;
+            } else {
+                // the entry was accessed since it was scheduled
+                timerWheel.schedule(node, expiration.expirationTime(node));
+                return false;
+            }
+        }
+
+        abstract void onAccess(Node<K, V> node);
+
+        abstract void onInsert(Node<K, V> node);
+
+        abstract void onRemove(Node<K, V> node);
+
+        /**
+         * Changes the maximum total weight of the segment entries, evicting entries if it decreases.
+         */
+        abstract void resize(long maxWeight);
+    }
+
+    private static final class Loading<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final Thread thread;
+        private boolean invalidated;
+
+        private Loading(Thread thread) {
+            this.thread = thread;
+        }
+
+        private V await() {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+/**
+ * Base class of the primitive-specialized caches. Entries are stored in flat arrays organized as a set-associative
+ * table: a key can only be stored in one of the {@value #WAYS} slots of the set selected by its hash, so lookups probe
+ * at most {@value #WAYS} slots and a full set evicts its least recently used slot. Sets are guarded by a fixed number
+ * of lock stripes derived from the {@link CacheParameters#getConcurrencyLevel() concurrency level}. Loads happen
+ * outside of the locks and are not coalesced, so concurrent misses on the same key may load it more than once.
+ */
+abstract class AbstractStripedCache {
+    static final int WAYS = 4;
+    private static final int EMPTY = 0;
+    /**
+     * Last access stamps of the slots, zero for empty slots.
+     */
+    final long[] stamps;
+    final StatsCounter statsCounter;
+    private final Stripe[] stripes;
+    private final int setShift;
+    private final int setMask;
+    private final int stripeMask;
+
+    AbstractStripedCache(CacheParameters<?, ?> cacheParameters) {
+        int setCount = powerOfTwo((Math.max(1, cacheParameters.getMaxSize()) + WAYS - 1) / WAYS);
+        int stripeCount = Math.min(setCount, powerOfTwo(Math.max(1, cacheParameters.getConcurrencyLevel())));
+        setShift = 32 - Integer.numberOfTrailingZeros(setCount);
+        setMask = setCount - 1;
+        stripeMask = stripeCount - 1;
+        stamps = new long[setCount * WAYS];
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        statsCounter = StatsCounter.of(cacheParameters);
+    }
+
+    /**
+     * Returns the index of the first slot of the set of the specified hash code.
+     */
+    final int firstSlot(int hashCode) {
+        // the set is selected by the high bits of the mixed hash, the shift is 32 (a no-op) if there is a single set
+        return (((hashCode * 0x9E3779B9) >>> setShift) & setMask) * WAYS;
+    }
+
+    /**
+     * Returns the lock guarding the set starting at the specified slot.
+     */
+    final Stripe stripeOf(int firstSlot) {
+        return stripes[(firstSlot / WAYS) & stripeMask];
+    }
+
+    final boolean isUsed(int slot) {
+        return stamps[slot] != EMPTY;
+    }
+
+    final void touch(Stripe stripe, int slot) {
+        stamps[slot] = ++stripe.clock;
+    }
+
+    final void clear(int slot) {
+        stamps[slot] = EMPTY;
+    }
+
+    /**
+     * Returns the slot where a new entry should be stored in the set starting at the specified slot, which is either
+     * an empty slot or the least recently used one. Called while holding the stripe lock.
+     */
+    final int slotForInsertion(int firstSlot) {
+        int victim = firstSlot;
+        for (int slot = firstSlot; slot < firstSlot + WAYS; slot++) {
+            if (stamps[slot] == EMPTY) {
+                return slot;
+            } else if (stamps[slot] < stamps[victim]) {
+                victim = slot;
+            }
+        }
+        if (statsCounter != null) {
+            statsCounter.recordEviction();
+        }
+        return victim;
+    }
+
+    final void recordHit() {
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
+    }
+
+    final long startLoad() {
+        if (statsCounter == null) {
+            return 0L;
+        }
+        statsCounter.recordMiss();
+        return System.nanoTime();
+    }
+
+    final void endLoad(long start, boolean success) {
+        if (statsCounter != null) {
+            if (success) {
+                statsCounter.recordLoadSuccess(System.nanoTime() - start);
+            } else {
+                statsCounter.recordLoadFailure(System.nanoTime() - start);
+            }
+        }
+    }
+
+    final void clearAll() {
+        for (int firstSlot = 0; firstSlot < stamps.length; firstSlot += WAYS) {
+            synchronized (stripeOf(firstSlot)) {
+                for (int slot = firstSlot; slot < firstSlot + WAYS; slot++) {
+                    clearSlot(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears the specified slot, including the references it holds. Called while holding the stripe lock.
+     */
+    abstract void clearSlot(int slot);
+
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.empty() : statsCounter.snapshot();
+    }
+
+    private static int powerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(Math.min(value, 1 << 29) - 1) << 1;
+    }
+
+    static final class Stripe {
+        private long clock;
+    }
+}
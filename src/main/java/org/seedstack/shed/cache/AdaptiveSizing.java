@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides the size of caches with {@link CacheParameters#setAdaptiveSizing(int, int) adaptive sizing}. A sample of
+ * the keys, selected by hash, is replayed in three miniature LRU caches scaled down by the sampling rate, simulating
+ * half, the same and twice the current size. The cache is grown when the larger simulation hits noticeably more
+ * often and shrunk when the smaller one hits almost as often. Simulations are restarted after each resize.
+ */
+final class AdaptiveSizing {
+    private static final CacheLogger LOGGER = CacheLogger.of(AdaptiveSizing.class);
+    private static final int MAX_SHADOW_SIZE = 1024;
+    private static final int MIN_PERIOD = 1024;
+    private static final double GROW_THRESHOLD = 0.02;
+    private static final double SHRINK_THRESHOLD = 0.005;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int minSize;
+    private final int maxSize;
+    private final int sampleMask;
+    private final Shadow[] shadows = new Shadow[3];
+    private int size;
+    private int period;
+    private int samples;
+
+    private AdaptiveSizing(int minSize, int maxSize, int initialSize) {
+        if (minSize <= 0 || maxSize < minSize) {
+            throw new IllegalArgumentException("Invalid adaptive size range [" + minSize + ", " + maxSize + "]");
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        int sampleRate = 1;
+        while (maxSize / sampleRate > MAX_SHADOW_SIZE) {
+            sampleRate <<= 1;
+        }
+        this.sampleMask = sampleRate - 1;
+        this.size = Math.max(minSize, Math.min(maxSize, initialSize));
+        startSimulations();
+    }
+
+    /**
+     * Returns the adaptive sizing configured in the specified parameters or null if the cache has a fixed size.
+     */
+    static AdaptiveSizing of(CacheParameters<?, ?> cacheParameters) {
+        if (cacheParameters.getAdaptiveMaxSize() <= 0) {
+            return null;
+        }
+        return new AdaptiveSizing(cacheParameters.getAdaptiveMinSize(), cacheParameters.getAdaptiveMaxSize(),
+                cacheParameters.getMaxSize());
+    }
+
+    int minSize() {
+        return minSize;
+    }
+
+    int maxSize() {
+        return maxSize;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Records an access to the key of the specified spread hash. Returns the new size of the cache if it should be
+     * resized or -1 otherwise. Sampled accesses that would wait for another thread recording are dropped.
+     */
+    int record(int hash) {
+        if (((hash ^ (hash >>> 16)) & sampleMask) != 0 || !lock.tryLock()) {
+            return -1;
+        }
+        try {
+            for (Shadow shadow : shadows) {
+                shadow.access(hash);
+            }
+            if (++samples < period) {
+                return -1;
+            }
+            return decide();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int decide() {
+        double smallerHitRatio = shadows[0].hitRatio();
+        double currentHitRatio = shadows[1].hitRatio();
+        double largerHitRatio = shadows[2].hitRatio();
+        int newSize = size;
+        if (largerHitRatio - currentHitRatio > GROW_THRESHOLD) {
+            newSize = Math.min(maxSize, size * 2);
+        } else if (currentHitRatio - smallerHitRatio < SHRINK_THRESHOLD) {
+            newSize = Math.max(minSize, size / 2);
+        }
+        if (newSize == size) {
+            for (Shadow shadow : shadows) {
+                shadow.hits = 0;
+                shadow.accesses = 0;
+            }
+            samples = 0;
+            return -1;
+        }
+        LOGGER.debug("Resizing cache from {} to {} entries, estimated hit ratios are {} at {}, {} at {} and {} at {}",
+                size, newSize, smallerHitRatio, shadows[0].simulatedSize, currentHitRatio, shadows[1].simulatedSize,
+                largerHitRatio, shadows[2].simulatedSize);
+        size = newSize;
+        startSimulations();
+        return newSize;
+    }
+
+    private void startSimulations() {
+        shadows[0] = new Shadow(Math.max(minSize, size / 2), sampleMask + 1);
+        shadows[1] = new Shadow(size, sampleMask + 1);
+        shadows[2] = new Shadow(Math.min(maxSize, size * 2), sampleMask + 1);
+        // let the largest simulation fill up several times so that its cold start doesn't bias the comparison
+        period = Math.max(MIN_PERIOD, shadows[2].capacity * 8);
+        samples = 0;
+    }
+
+    private static final class Shadow extends LinkedHashMap<Integer, Boolean> {
+        private static final long serialVersionUID = 1L;
+        private final int simulatedSize;
+        private final int capacity;
+        private long hits;
+        private long accesses;
+
+        private Shadow(int size, int sampleRate) {
+            super(16, 0.75f, true);
+            this.simulatedSize = size;
+            this.capacity = Math.max(1, size / sampleRate);
+        }
+
+        private void access(int hash) {
+            accesses++;
+            if (put(hash, Boolean.TRUE) != null) {
+                hits++;
+            }
+        }
+
+        private double hitRatio() {
+            return accesses == 0 ? 0 : (double) hits / accesses;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A cache whose values are loaded asynchronously. Concurrent callers of the same key share a single future and
+ * futures that complete exceptionally or with a null value are discarded, so the next call loads the value again.
+ *
+ * @see Cache#createAsync(CacheParameters, java.util.concurrent.Executor)
+ */
+public interface AsyncCache<K, V> {
+    /**
+     * Returns the future value of the specified key, starting to load it if it is not already present or loading.
+     *
+     * @param key the key.
+     * @return the future value.
+     */
+    CompletableFuture<V> getAsync(K key);
+
+    /**
+     * Discards the future value of the specified key if any.
+     *
+     * @param key the key to invalidate.
+     */
+    void invalidate(K key);
+
+    /**
+     * Returns a snapshot of the statistics of this cache, where a hit is a call finding the key, even if its failed or
+     * null future is then replaced by a new load.
+     *
+     * @return the cache statistics.
+     */
+    CacheStats stats();
+}
@@ -7,10 +7,18 @@
  */
 package org.seedstack.shed.cache;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import org.seedstack.shed.reflect.Classes;
 
@@ -19,33 +27,226 @@ public interface Cache<K, V> {
     static <K, V> Cache<K, V> create(Function<? super K, ? extends V> loadingFunction) {
         CacheParameters<K, V> cacheParameters = new CacheParameters<>();
         cacheParameters.setLoadingFunction(loadingFunction);
-        return Factories.DEFAULT.createCache(cacheParameters);
+        return Factories.select(cacheParameters).createCache(cacheParameters);
     }
 
     static <K, V> Cache<K, V> create(CacheParameters<K, V> cacheParameters) {
-        return Factories.DEFAULT.createCache(cacheParameters);
+        return Factories.create(Factories.select(cacheParameters), cacheParameters);
     }
 
     static <K, V> Cache<K, V> create(CacheParameters<K, V> cacheParameters,
             Class<? extends CacheFactory> factoryClass) {
-        return Factories.FACTORIES.computeIfAbsent(factoryClass, Classes::instantiateDefault)
-                .createCache(cacheParameters);
+        return Factories.create(Factories.FACTORIES.computeIfAbsent(factoryClass, Classes::instantiateDefault),
+                cacheParameters);
     }
 
+    /**
+     * Creates a cache whose values are loaded asynchronously on the specified executor. The futures are stored in a
+     * cache created by the default factory with the specified parameters, which cannot include the settings applying
+     * to the loaded values: weight bound, refresh, negative caching, off-heap storage, snapshot, batch loading and hot
+     * keys tracking.
+     *
+     * @param cacheParameters the cache parameters, whose loading function is invoked on the executor.
+     * @param executor        the executor running the loads.
+     * @param <K>             the type of the keys.
+     * @param <V>             the type of the values.
+     * @return the asynchronous cache.
+     * @throws IllegalArgumentException if the parameters include settings applying to the loaded values.
+     */
+    static <K, V> AsyncCache<K, V> createAsync(CacheParameters<K, V> cacheParameters, Executor executor) {
+        return new FutureCache<>(cacheParameters, executor);
+    }
+
+    /**
+     * Returns the value of the specified key, loading it if it is not present. Keys cannot be null with {@link
+     * ConcurrentLRUCache}, the default cache, and most other built-in caches, which throw a {@link
+     * NullPointerException}, while {@link SimpleLRUCache}, the default before version 1.1.6, accepts them.
+     *
+     * @param key the key.
+     * @return the value of the key, or null if the loading function returned null.
+     * @throws NullPointerException if the key is null and the cache doesn't support null keys.
+     */
     V get(K key);
 
+    /**
+     * Returns the values of the specified keys, loading the missing ones. Keys without value are absent from the
+     * returned map, which iterates in the order of the specified keys. Caches may load all the missing keys at once
+     * with the {@link CacheParameters#setBatchLoadingFunction(Function) batch loading function}.
+     *
+     * @param keys the keys.
+     * @return the map of keys to their values.
+     */
+    default Map<K, V> getAll(Iterable<? extends K> keys) {
+        Map<K, V> values = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Discards the entry of the specified key if any. A load of this key in progress is not affected but its result
+     * is not retained.
+     *
+     * @param key the key to invalidate.
+     * @throws UnsupportedOperationException if the cache doesn't support invalidation.
+     */
+    default void invalidate(K key) {
+        throw new UnsupportedOperationException("Cache " + getClass().getName() + " doesn't support invalidation");
+    }
+
+    /**
+     * Discards all entries of the cache.
+     *
+     * @throws UnsupportedOperationException if the cache doesn't support invalidation.
+     */
+    default void invalidateAll() {
+        throw new UnsupportedOperationException("Cache " + getClass().getName() + " doesn't support invalidation");
+    }
+
+    /**
+     * Hints the cache that its content is now mostly stable, for instance at the end of the application startup, so
+     * that it can compact its entries into a structure optimized for hits. Caches that don't support freezing ignore
+     * this call.
+     *
+     * @throws UnsupportedOperationException if the cache supports freezing but expires or refreshes its entries.
+     */
+    default void freeze() {
+        // freezing is an optional optimization
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache. The snapshot is empty if the cache was not created with
+     * {@link CacheParameters#setRecordingStats(boolean)} enabled or doesn't support statistics.
+     *
+     * @return the cache statistics.
+     */
+    default CacheStats stats() {
+        return CacheStats.empty();
+    }
+
     class Factories {
-        private static final CacheFactory DEFAULT = resolveDefaultCacheFactory();
+        private static final CacheLogger LOGGER = CacheLogger.of(Factories.class);
+        private static final CacheFactory BUILT_IN = new ConcurrentLRUCache.Factory();
+        private static final List<CacheFactory> RANKED_FACTORIES = rank(loadDeclaredFactories());
+        private static final ConcurrentMap<Set<CacheCapability>, CacheFactory> SELECTED_FACTORIES = new
+                ConcurrentHashMap<>();
         private static final ConcurrentMap<Class<? extends CacheFactory>, CacheFactory> FACTORIES = new
                 ConcurrentHashMap<>();
 
-        private static CacheFactory resolveDefaultCacheFactory() {
-            Iterator<CacheFactory> cacheFactoryIterator = ServiceLoader.load(CacheFactory.class).iterator();
-            if (cacheFactoryIterator.hasNext()) {
-                return cacheFactoryIterator.next();
+        /**
+         * Returns the factory with the highest priority among those having all the capabilities required by the
+         * specified parameters. The selection is done once per set of required capabilities.
+         */
+        static CacheFactory select(CacheParameters<?, ?> cacheParameters) {
+            return select(CacheCapability.requiredBy(cacheParameters));
+        }
+
+        /**
+         * Returns the factory with the highest priority among those having all the specified capabilities.
+         */
+        static CacheFactory select(Set<CacheCapability> requiredCapabilities) {
+            return SELECTED_FACTORIES.computeIfAbsent(requiredCapabilities,
+                    capabilities -> select(RANKED_FACTORIES, capabilities));
+        }
+
+        /**
+         * Returns the first of the specified ranked factories having all the specified capabilities, or the built-in
+         * factory if none has them.
+         */
+        static CacheFactory select(List<CacheFactory> rankedFactories, Set<CacheCapability> requiredCapabilities) {
+            for (CacheFactory cacheFactory : rankedFactories) {
+                if (cacheFactory.capabilities().containsAll(requiredCapabilities)) {
+                    return cacheFactory;
+                }
+            }
+            return BUILT_IN;
+        }
+
+        /**
+         * Creates a cache with the specified factory, configuring it with system properties and registering it if it
+         * has a name, or tracking it for class loader eviction if it is partitioned by class loader.
+         */
+        static <K, V> Cache<K, V> create(CacheFactory cacheFactory, CacheParameters<K, V> cacheParameters) {
+            if (cacheParameters.getName() != null) {
+                cacheParameters = cacheParameters.copy();
+                cacheFactory = CacheRegistry.configure(cacheFactory, cacheParameters);
+                if (cacheParameters.isRegistered()) {
+                    return CacheRegistry.register(new ManagedCache<>(cacheFactory, cacheParameters));
+                }
+            }
+            if (cacheParameters.getClassLoaderPartitioner() != null) {
+                return CacheRegistry.track(build(cacheFactory, cacheParameters));
+            }
+            return build(cacheFactory, cacheParameters);
+        }
+
+        /**
+         * Creates a cache with the specified factory, adding the features implemented on top of any cache.
+         */
+        static <K, V> Cache<K, V> build(CacheFactory cacheFactory, CacheParameters<K, V> cacheParameters) {
+            HotKeys<K> hotKeys = null;
+            if (cacheParameters.getHotKeysSize() > 0) {
+                hotKeys = new HotKeys<>(cacheParameters);
+                cacheParameters = hotKeys.attachTo(cacheParameters);
+            }
+            if (cacheParameters.getSnapshot() != null) {
+                cacheParameters = cacheParameters.getSnapshot().attachTo(cacheParameters);
+            }
+            TracingCache.Attachment<K, V> tracing = null;
+            if (cacheParameters.getTrace() != null) {
+                tracing = TracingCache.attachTo(cacheParameters);
+                cacheParameters = tracing.cacheParameters();
+            }
+            Cache<K, V> cache;
+            if (cacheParameters.getClassLoaderPartitioner() == null) {
+                cache = cacheFactory.createCache(cacheParameters);
             } else {
-                return new SimpleLRUCache.Factory();
+                cache = new ClassLoaderPartitionedCache<>(cacheFactory, cacheParameters);
+            }
+            if (cacheParameters.getNegativeExpireAfterWrite() != null) {
+                cache = new NegativeCache<>(cache, cacheParameters);
+            }
+            if (cacheParameters.getNearCacheSize() > 0) {
+                cache = new NearCache<>(cache, cacheParameters);
+            }
+            if (tracing != null) {
+                cache = tracing.decorate(cache);
+            }
+            if (hotKeys != null) {
+                cache = new HotKeysCache<>(cache, hotKeys);
+            }
+            if (cacheParameters.getKeyCanonicalizer() != null) {
+                cache = new CanonicalKeyCache<>(cache, cacheParameters);
+            }
+            return cache;
+        }
+
+        /**
+         * Returns the specified factories followed by the built-in one, by decreasing priority. Factories of equal
+         * priority keep this order, so that a declared factory is preferred over the built-in one.
+         */
+        static List<CacheFactory> rank(List<CacheFactory> declaredFactories) {
+            List<CacheFactory> cacheFactories = new ArrayList<>(declaredFactories);
+            cacheFactories.add(BUILT_IN);
+            cacheFactories.sort(Comparator.comparingInt(CacheFactory::priority).reversed());
+            return cacheFactories;
+        }
+
+        private static List<CacheFactory> loadDeclaredFactories() {
+            List<CacheFactory> cacheFactories = new ArrayList<>();
+            Iterator<CacheFactory> cacheFactoryIterator = ServiceLoader.load(CacheFactory.class).iterator();
+            while (cacheFactoryIterator.hasNext()) {
+                try {
+                    cacheFactories.add(cacheFactoryIterator.next());
+                } catch (ServiceConfigurationError e) {
+                    LOGGER.warn("Ignoring cache factory that cannot be loaded", e);
+                }
             }
+            return cacheFactories;
         }
     }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A feature of the caches created by a {@link CacheFactory}, used to select a factory able to honor the parameters
+ * of a cache.
+ */
+public enum CacheCapability {
+    /**
+     * Bounds the number of entries by the {@link CacheParameters#setMaxSize(int) maximum size}.
+     */
+    BOUNDED,
+    /**
+     * Expires entries after {@link CacheParameters#setExpireAfterWrite(java.time.Duration) write} or {@link
+     * CacheParameters#setExpireAfterAccess(java.time.Duration) access}.
+     */
+    EXPIRING,
+    /**
+     * Bounds the total weight of entries by the {@link CacheParameters#setMaximumWeight(long) maximum weight}.
+     */
+    WEIGHTED,
+    /**
+     * Reloads entries in the background once they are due for {@link
+     * CacheParameters#setRefreshAfterWrite(java.time.Duration) refresh}.
+     */
+    ASYNC,
+    /**
+     * Serves concurrent accesses without a cache-wide lock, as requested by a {@link
+     * CacheParameters#setConcurrencyLevel(int) concurrency level} greater than one.
+     */
+    CONCURRENT,
+    /**
+     * Discards entries on {@link Cache#invalidate(Object)} and {@link Cache#invalidateAll()}, which the decorators
+     * caching {@link CacheParameters#setNegativeExpireAfterWrite(java.time.Duration) negative results} and {@link
+     * CacheParameters#setNearCacheSize(int) near entries} and the {@link AsyncCache asynchronous caches} rely on.
+     */
+    INVALIDATION;
+
+    /**
+     * Returns the capabilities needed to honor the specified parameters.
+     */
+    static Set<CacheCapability> requiredBy(CacheParameters<?, ?> cacheParameters) {
+        Set<CacheCapability> capabilities = EnumSet.noneOf(CacheCapability.class);
+        if (cacheParameters.getMaxSize() > 0) {
+            capabilities.add(BOUNDED);
+        }
+        if (cacheParameters.getExpireAfterWrite() != null || cacheParameters.getExpireAfterAccess() != null) {
+            capabilities.add(EXPIRING);
+        }
+        if (cacheParameters.getMaximumWeight() >= 0) {
+            capabilities.add(WEIGHTED);
+        }
+        if (cacheParameters.getRefreshAfterWrite() != null) {
+            capabilities.add(ASYNC);
+        }
+        if (cacheParameters.getConcurrencyLevel() > 1) {
+            capabilities.add(CONCURRENT);
+        }
+        if (cacheParameters.getNegativeExpireAfterWrite() != null || cacheParameters.getNearCacheSize() > 0) {
+            capabilities.add(INVALIDATION);
+        }
+        return capabilities;
+    }
+}
@@ -7,6 +7,36 @@
  */
 package org.seedstack.shed.cache;
 
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Creates caches. When a cache is created without specifying its factory, the factories declared as {@link
+ * java.util.ServiceLoader services} are ranked by {@link #priority() priority} and the first one having all the
+ * {@link CacheCapability capabilities} required by the cache parameters is used, falling back on {@link
+ * ConcurrentLRUCache} if none has them.
+ */
 public interface CacheFactory {
     <K, V> Cache<K, V> createCache(CacheParameters<K, V> cacheParameters);
+
+    /**
+     * Returns the priority of this factory, factories with a higher priority being preferred. The built-in factory
+     * has a priority of 0, like factories not overriding this method.
+     *
+     * @return the factory priority.
+     */
+    default int priority() {
+        return 0;
+    }
+
+    /**
+     * Returns the capabilities of the caches created by this factory. Factories not overriding this method are only
+     * considered to bound the number of entries and to serve concurrent accesses: they are not selected for caches
+     * with expiration, a weight bound, refresh or relying on invalidation, which they could silently ignore.
+     *
+     * @return the set of capabilities.
+     */
+    default Set<CacheCapability> capabilities() {
+        return EnumSet.of(CacheCapability.BOUNDED, CacheCapability.CONCURRENT);
+    }
 }
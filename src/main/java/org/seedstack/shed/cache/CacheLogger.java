@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the events of caches through SLF4J if it is on the classpath and ignores them otherwise. SLF4J is an optional
+ * dependency while caches are used by the core reflection utilities, so cache classes only reference SLF4J through
+ * this class, which only loads it once it is known to be available.
+ */
+final class CacheLogger {
+    private static final boolean SLF4J_AVAILABLE = isSlf4jAvailable();
+    private final Slf4jLogger logger;
+
+    private CacheLogger(Slf4jLogger logger) {
+        this.logger = logger;
+    }
+
+    static CacheLogger of(Class<?> type) {
+        return new CacheLogger(SLF4J_AVAILABLE ? new Slf4jLogger(type) : null);
+    }
+
+    void debug(String format, Object... arguments) {
+        if (logger != null) {
+            logger.debug(format, arguments);
+        }
+    }
+
+    void info(String format, Object... arguments) {
+        if (logger != null) {
+            logger.info(format, arguments);
+        }
+    }
+
+    void warn(String format, Object... arguments) {
+        if (logger != null) {
+            logger.warn(format, arguments);
+        }
+    }
+
+    private static boolean isSlf4jAvailable() {
+        try {
+            Class.forName("org.slf4j.LoggerFactory", false, CacheLogger.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * The SLF4J logger, in a class of its own so that SLF4J is only resolved when it is instantiated.
+     */
+    private static final class Slf4jLogger {
+        private final Logger logger;
+
+        private Slf4jLogger(Class<?> type) {
+            this.logger = LoggerFactory.getLogger(type);
+        }
+
+        private void debug(String format, Object... arguments) {
+            logger.debug(format, arguments);
+        }
+
+        private void info(String format, Object... arguments) {
+            logger.info(format, arguments);
+        }
+
+        private void warn(String format, Object... arguments) {
+            logger.warn(format, arguments);
+        }
+    }
+}
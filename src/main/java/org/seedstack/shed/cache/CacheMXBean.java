@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+/**
+ * Management interface of the caches registered in the {@link CacheRegistry}, exposed over JMX under the
+ * {@code org.seedstack.shed:type=Cache,name=<cache name>} object name. Sizes are expressed in weight units for caches
+ * bounded by weight. Statistics are zero unless the cache records them.
+ */
+public interface CacheMXBean {
+    String getName();
+
+    /**
+     * Returns the eviction policy of the cache, as an alias such as {@code lru} or {@code tinylfu} for the built-in
+     * policies or as the class name of its {@link CacheFactory} otherwise.
+     *
+     * @return the cache policy.
+     */
+    String getPolicy();
+
+    /**
+     * Replaces the cache by an empty cache with the specified policy, specified as an alias ({@code lru},
+     * {@code tinylfu}, {@code simplelru}, {@code unbounded}, {@code offheap}, {@code classvalue} or {@code none}) or as
+     * the class name of a {@link CacheFactory}.
+     *
+     * @param policy the new cache policy.
+     */
+    void setPolicy(String policy);
+
+    int getMaxSize();
+
+    /**
+     * Changes the maximum size of the cache. Segmented and class loader partitioned caches are resized in place,
+     * evicting entries if they shrink, while other caches are replaced by an empty cache with the new size.
+     *
+     * @param maxSize the new maximum size.
+     */
+    void setMaxSize(int maxSize);
+
+    /**
+     * Returns the number of entries of the cache, or their total weight if it is bounded by weight, or -1 if the cache
+     * doesn't report its size.
+     *
+     * @return the cache size.
+     */
+    long getSize();
+
+    /**
+     * Returns the current maximum size of the cache, which may differ from the configured one with adaptive sizing,
+     * or -1 if the cache is unbounded.
+     *
+     * @return the cache capacity.
+     */
+    long getCapacity();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadSuccessCount();
+
+    long getLoadFailureCount();
+
+    double getAverageLoadPenalty();
+
+    long getEvictionCount();
+
+    /**
+     * Returns the most requested keys of the cache with their estimated number of requests, or an empty array unless
+     * hot keys are tracked with the {@code shed.cache.<cache name>.hotKeysSize} system property or by the cache
+     * parameters.
+     *
+     * @return the most requested keys.
+     */
+    String[] getFrequentKeys();
+
+    /**
+     * Returns the keys of the cache that took the most time to load with their estimated total load time in
+     * nanoseconds, or an empty array unless hot keys are tracked.
+     *
+     * @return the most expensive keys.
+     */
+    String[] getExpensiveKeys();
+
+    void invalidateAll();
+}
@@ -7,13 +7,79 @@
  */
 package org.seedstack.shed.cache;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 public class CacheParameters<K, V> {
+    private String name;
+    private boolean registered = true;
     private int initialSize = 256;
     private int maxSize = 1024;
+    private long maximumWeight = -1;
+    private int adaptiveMinSize = -1;
+    private int adaptiveMaxSize = -1;
+    private double memoryPressureWatermark = -1;
+    private double memoryPressureFraction;
+    private BiFunction<? super K, ? super V, Integer> weigher;
     private int concurrencyLevel = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private Duration expireAfterWrite;
+    private Duration expireAfterAccess;
+    private Duration refreshAfterWrite;
+    private Executor refreshExecutor;
+    private Duration negativeExpireAfterWrite;
+    private int negativeMaxSize = 256;
+    private int nearCacheSize;
+    private Codec<V> valueCodec;
+    private Path offHeapFile;
+    private boolean recordingStats;
+    private int hotKeysSize;
+    private boolean identityKeys;
+    private UnaryOperator<K> keyCanonicalizer;
+    private Function<? super K, ClassLoader> classLoaderPartitioner;
     private Function<? super K, ? extends V> loadingFunction;
+    private Function<Set<K>, Map<K, V>> batchLoadingFunction;
+    private CacheSnapshot<K, V> snapshot;
+    private CacheTrace trace;
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the name of the cache, allowing its configuration to be overridden by the system properties described in
+     * {@link CacheRegistry}, under which it is also registered in the {@link CacheRegistry} and exposed over JMX unless
+     * {@link #setRegistered(boolean) registration} is disabled. Null, the default, means that the cache is neither
+     * configurable by system properties nor registered.
+     *
+     * @param name the cache name.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public boolean isRegistered() {
+        return registered;
+    }
+
+    /**
+     * Sets whether a named cache is registered in the {@link CacheRegistry} and exposed over JMX. Its configuration is
+     * overridden by system properties either way. True by default.
+     *
+     * @param registered true to register the cache, false otherwise.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setRegistered(boolean registered) {
+        this.registered = registered;
+        return this;
+    }
 
     public int getInitialSize() {
         return initialSize;
@@ -33,6 +99,90 @@ public class CacheParameters<K, V> {
         return this;
     }
 
+    public int getAdaptiveMinSize() {
+        return adaptiveMinSize;
+    }
+
+    public int getAdaptiveMaxSize() {
+        return adaptiveMaxSize;
+    }
+
+    /**
+     * Enables the adaptive sizing of the cache between the specified bounds. The cache starts with the {@link
+     * #setMaxSize(int) maximum size} and is periodically grown or shrunk by estimating, on a sample of the keys, the
+     * hit ratio it would have at other sizes. For caches bounded by weight, the maximum weight is scaled in the same
+     * proportion. Adaptive sizing is disabled by default and caches that don't support it keep their maximum size.
+     *
+     * @param minSize the size below which the cache is never shrunk.
+     * @param maxSize the size above which the cache is never grown.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setAdaptiveSizing(int minSize, int maxSize) {
+        this.adaptiveMinSize = minSize;
+        this.adaptiveMaxSize = maxSize;
+        return this;
+    }
+
+    public double getMemoryPressureWatermark() {
+        return memoryPressureWatermark;
+    }
+
+    public double getMemoryPressureFraction() {
+        return memoryPressureFraction;
+    }
+
+    /**
+     * Enables the shrinking of the cache when the heap is nearly full. After each garbage collection, if the
+     * occupancy of the old generation exceeds the watermark, the cache sheds the specified fraction of its capacity,
+     * evicting its coldest entries. It grows back by the same fraction after each collection leaving the occupancy
+     * clearly below the watermark, up to its maximum size. The cache resizes itself at its first access after the
+     * collection. Memory pressure shrinking is disabled by default and caches that don't support it keep their maximum
+     * size. The listener of garbage collections is removed by {@link CacheRegistry#shutdown()}.
+     *
+     * @param watermark the old generation occupancy above which the cache shrinks, between 0 and 1.
+     * @param fraction  the fraction of its capacity the cache sheds at each collection, between 0 and 1.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setMemoryPressureShrinking(double watermark, double fraction) {
+        this.memoryPressureWatermark = watermark;
+        this.memoryPressureFraction = fraction;
+        return this;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Sets the maximum total weight of the entries, as computed by the {@link #setWeigher(BiFunction) weigher}.
+     * When set, the cache is bounded by weight instead of by entry count and the maximum size is only used as an
+     * estimate of the number of entries. A negative value, the default, bounds the cache by its maximum size.
+     *
+     * @param maximumWeight the maximum weight.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+        return this;
+    }
+
+    public BiFunction<? super K, ? super V, Integer> getWeigher() {
+        return weigher;
+    }
+
+    /**
+     * Sets the function computing the weight of an entry when it is inserted. Weights must not be negative. Without
+     * weigher, each entry weighs 1.
+     *
+     * @param weigher the weigher.
+     * @return the cache parameters.
+     * @see Weighers
+     */
+    public CacheParameters<K, V> setWeigher(BiFunction<? super K, ? super V, Integer> weigher) {
+        this.weigher = weigher;
+        return this;
+    }
+
     public int getConcurrencyLevel() {
         return concurrencyLevel;
     }
@@ -41,6 +191,251 @@ public class CacheParameters<K, V> {
         this.concurrencyLevel = concurrencyLevel;
     }
 
+    public Duration getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    /**
+     * Sets the duration after which an entry expires once it has been loaded. Null means that entries never expire
+     * after write.
+     *
+     * @param expireAfterWrite the expiration duration.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setExpireAfterWrite(Duration expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+        return this;
+    }
+
+    public Duration getExpireAfterAccess() {
+        return expireAfterAccess;
+    }
+
+    /**
+     * Sets the duration after which an entry expires once it has been loaded or last read. Null means that entries
+     * never expire after access.
+     *
+     * @param expireAfterAccess the expiration duration.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setExpireAfterAccess(Duration expireAfterAccess) {
+        this.expireAfterAccess = expireAfterAccess;
+        return this;
+    }
+
+    public Duration getRefreshAfterWrite() {
+        return refreshAfterWrite;
+    }
+
+    /**
+     * Sets the duration after which an entry is reloaded once it has been loaded. The first read of an entry due for
+     * refresh returns the current value immediately and triggers a reload on the {@link #setRefreshExecutor(Executor)
+     * refresh executor}, the current value being served until the reload completes. If the reload fails or returns
+     * null, the current value is kept and the next reload is attempted after the same duration. Null, the default,
+     * means that entries are never refreshed.
+     *
+     * @param refreshAfterWrite the refresh duration.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setRefreshAfterWrite(Duration refreshAfterWrite) {
+        this.refreshAfterWrite = refreshAfterWrite;
+        return this;
+    }
+
+    public Executor getRefreshExecutor() {
+        return refreshExecutor;
+    }
+
+    /**
+     * Sets the executor running the reloads of entries due for refresh. Null, the default, means the common
+     * fork-join pool.
+     *
+     * @param refreshExecutor the refresh executor.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+        return this;
+    }
+
+    public Duration getNegativeExpireAfterWrite() {
+        return negativeExpireAfterWrite;
+    }
+
+    /**
+     * Enables the caching of null results and load failures for the specified duration. During that time, getting the
+     * value of such a key returns null or throws an {@link IllegalStateException} caused by the cached failure,
+     * without invoking the loading function. Null, the default, means that null results and failures are not cached
+     * and loaded again on each call.
+     *
+     * @param negativeExpireAfterWrite the duration null results and failures are cached for.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setNegativeExpireAfterWrite(Duration negativeExpireAfterWrite) {
+        this.negativeExpireAfterWrite = negativeExpireAfterWrite;
+        return this;
+    }
+
+    public int getNegativeMaxSize() {
+        return negativeMaxSize;
+    }
+
+    /**
+     * Sets the maximum number of null results and failures cached when {@link #setNegativeExpireAfterWrite(Duration)
+     * negative caching} is enabled, in addition to the maximum size of the cache.
+     *
+     * @param negativeMaxSize the maximum number of cached null results and failures.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setNegativeMaxSize(int negativeMaxSize) {
+        this.negativeMaxSize = negativeMaxSize;
+        return this;
+    }
+
+    public int getNearCacheSize() {
+        return nearCacheSize;
+    }
+
+    /**
+     * Enables a near cache of the specified size in front of the cache: each thread keeps its most recently read
+     * entries in a small table of its own, read without any synchronization. It suits a few very frequently read keys
+     * and cannot be combined with expiration or refresh. Zero, the default, disables the near cache.
+     *
+     * <p>A thread only clears its table when it next reads the cache, so the tables of idle threads, such as those of
+     * a pool, keep invalidated or evicted entries reachable. The near cache should not be enabled for caches whose
+     * entries can keep a discarded class loader reachable.</p>
+     *
+     * @param nearCacheSize the number of entries of each thread table, rounded up to a power of two.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setNearCacheSize(int nearCacheSize) {
+        this.nearCacheSize = nearCacheSize;
+        return this;
+    }
+
+    public Codec<V> getValueCodec() {
+        return valueCodec;
+    }
+
+    /**
+     * Sets the codec converting values to bytes, for caches storing their values outside of the heap.
+     *
+     * @param valueCodec the value codec.
+     * @return the cache parameters.
+     * @see OffHeapCache
+     */
+    public CacheParameters<K, V> setValueCodec(Codec<V> valueCodec) {
+        this.valueCodec = valueCodec;
+        return this;
+    }
+
+    public Path getOffHeapFile() {
+        return offHeapFile;
+    }
+
+    /**
+     * Sets the file mapped in memory to store the values of off-heap caches. The file is created if needed and its
+     * previous content is ignored. Null, the default, means that values are stored in direct memory.
+     *
+     * @param offHeapFile the file storing the values.
+     * @return the cache parameters.
+     * @see OffHeapCache
+     */
+    public CacheParameters<K, V> setOffHeapFile(Path offHeapFile) {
+        this.offHeapFile = offHeapFile;
+        return this;
+    }
+
+    public boolean isRecordingStats() {
+        return recordingStats;
+    }
+
+    /**
+     * Enables the recording of hits, misses, loads and evictions, available through {@link Cache#stats()}. Caches
+     * don't record statistics by default.
+     *
+     * @param recordingStats true to record statistics, false otherwise.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setRecordingStats(boolean recordingStats) {
+        this.recordingStats = recordingStats;
+        return this;
+    }
+
+    public int getHotKeysSize() {
+        return hotKeysSize;
+    }
+
+    /**
+     * Sets the number of most requested and most expensive to load keys reported by {@link
+     * CacheStats#getFrequentKeys()} and {@link CacheStats#getExpensiveKeys()}, estimated with summaries of sixteen
+     * times this number of keys. Requests are sampled under contention, as those arriving while another thread updates
+     * the summary are not counted. 0, the default, disables the tracking of hot keys.
+     *
+     * @param hotKeysSize the number of hot keys to report.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setHotKeysSize(int hotKeysSize) {
+        this.hotKeysSize = hotKeysSize;
+        return this;
+    }
+
+    public boolean isIdentityKeys() {
+        return identityKeys;
+    }
+
+    /**
+     * Enables the comparison of keys by identity, hashing them with {@link System#identityHashCode(Object)} instead of
+     * their {@code hashCode()} and {@code equals()} methods. Equal keys must then be the same instance, which a {@link
+     * #setKeyCanonicalizer(UnaryOperator) key canonicalizer} can ensure. Caches that don't support identity keys
+     * compare them with {@code equals()}, which gives the same results on canonical keys. Keys are compared with
+     * {@code equals()} by default.
+     *
+     * @param identityKeys true to compare keys by identity, false otherwise.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setIdentityKeys(boolean identityKeys) {
+        this.identityKeys = identityKeys;
+        return this;
+    }
+
+    public UnaryOperator<K> getKeyCanonicalizer() {
+        return keyCanonicalizer;
+    }
+
+    /**
+     * Sets the function mapping each key to its canonical instance, applied to the keys passed to the cache before
+     * they are looked up. The loading functions receive canonical keys. Null, the default, means that keys are used
+     * as is.
+     *
+     * @param keyCanonicalizer the key canonicalizer.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setKeyCanonicalizer(UnaryOperator<K> keyCanonicalizer) {
+        this.keyCanonicalizer = keyCanonicalizer;
+        return this;
+    }
+
+    public Function<? super K, ClassLoader> getClassLoaderPartitioner() {
+        return classLoaderPartitioner;
+    }
+
+    /**
+     * Splits the cache into one partition per class loader, as returned by the specified function for each key. The
+     * maximum size and weight are shared between the partitions, those using less than an equal share leaving the rest
+     * to the others, and all the entries of a class loader can be dropped at once with {@link
+     * CacheRegistry#evictClassLoader(ClassLoader)}, for instance when an application is undeployed. Partitioning cannot
+     * be combined with adaptive sizing or memory pressure shrinking. Null, the default, means that the cache is not
+     * partitioned.
+     *
+     * @param classLoaderPartitioner the function returning the class loader of a key, null for the bootstrap one.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setClassLoaderPartitioner(Function<? super K, ClassLoader> classLoaderPartitioner) {
+        this.classLoaderPartitioner = classLoaderPartitioner;
+        return this;
+    }
+
     public Function<? super K, ? extends V> getLoadingFunction() {
         return loadingFunction;
     }
@@ -49,4 +444,111 @@ public class CacheParameters<K, V> {
         this.loadingFunction = loadingFunction;
         return this;
     }
+
+    public Function<Set<K>, Map<K, V>> getBatchLoadingFunction() {
+        return batchLoadingFunction;
+    }
+
+    /**
+     * Sets a function loading the values of several keys at once, used by {@link Cache#getAll(Iterable)} to load all
+     * the missing keys in a single call. Keys absent from the returned map are considered to have no value. If no
+     * loading function is set, single keys are loaded through this function too.
+     *
+     * @param batchLoadingFunction the batch loading function.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setBatchLoadingFunction(Function<Set<K>, Map<K, V>> batchLoadingFunction) {
+        this.batchLoadingFunction = batchLoadingFunction;
+        return this;
+    }
+
+    public CacheSnapshot<K, V> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Sets a snapshot of entries saved by a previous run, restored instead of being loaded the first time their key is
+     * requested. Entries loaded by the cache are recorded in the snapshot for its next save. Null, the default, means
+     * that all entries are loaded by the loading functions.
+     *
+     * @param snapshot the snapshot.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setSnapshot(CacheSnapshot<K, V> snapshot) {
+        this.snapshot = snapshot;
+        return this;
+    }
+
+    public CacheTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Sets a trace recording the hash of the requested keys and whether they were hits or misses, to be replayed
+     * offline against other eviction policies and sizes. Null, the default, means that accesses are not recorded.
+     *
+     * @param trace the trace.
+     * @return the cache parameters.
+     */
+    public CacheParameters<K, V> setTrace(CacheTrace trace) {
+        this.trace = trace;
+        return this;
+    }
+
+    /**
+     * Sets the maximum size, scaling the maximum weight in the same proportion if the cache is bounded by weight.
+     */
+    void scaleMaxSize(int newMaxSize) {
+        if (maximumWeight >= 0) {
+            maximumWeight = Math.max(1, Math.round((double) maximumWeight * newMaxSize / Math.max(1, maxSize)));
+        }
+        maxSize = newMaxSize;
+    }
+
+    /**
+     * Creates parameters with the same settings as these ones.
+     */
+    CacheParameters<K, V> copy() {
+        CacheParameters<K, V> copy = derive(loadingFunction);
+        copy.maximumWeight = maximumWeight;
+        copy.weigher = weigher;
+        copy.refreshAfterWrite = refreshAfterWrite;
+        copy.refreshExecutor = refreshExecutor;
+        copy.negativeExpireAfterWrite = negativeExpireAfterWrite;
+        copy.negativeMaxSize = negativeMaxSize;
+        copy.nearCacheSize = nearCacheSize;
+        copy.valueCodec = valueCodec;
+        copy.offHeapFile = offHeapFile;
+        copy.batchLoadingFunction = batchLoadingFunction;
+        copy.snapshot = snapshot;
+        copy.trace = trace;
+        copy.hotKeysSize = hotKeysSize;
+        copy.name = name;
+        copy.registered = registered;
+        return copy;
+    }
+
+    /**
+     * Creates parameters with the same sizing, expiration, statistics and key settings as these ones but a different
+     * loading function, for caches storing values derived from the loaded ones. The other settings are not kept, the
+     * caller carrying over or rejecting each of them.
+     */
+    <W> CacheParameters<K, W> derive(Function<? super K, ? extends W> loadingFunction) {
+        CacheParameters<K, W> derived = new CacheParameters<>();
+        derived.initialSize = initialSize;
+        derived.maxSize = maxSize;
+        derived.adaptiveMinSize = adaptiveMinSize;
+        derived.adaptiveMaxSize = adaptiveMaxSize;
+        derived.memoryPressureWatermark = memoryPressureWatermark;
+        derived.memoryPressureFraction = memoryPressureFraction;
+        derived.concurrencyLevel = concurrencyLevel;
+        derived.expireAfterWrite = expireAfterWrite;
+        derived.expireAfterAccess = expireAfterAccess;
+        derived.recordingStats = recordingStats;
+        derived.identityKeys = identityKeys;
+        derived.keyCanonicalizer = keyCanonicalizer;
+        derived.classLoaderPartitioner = classLoaderPartitioner;
+        derived.loadingFunction = loadingFunction;
+        return derived;
+    }
 }
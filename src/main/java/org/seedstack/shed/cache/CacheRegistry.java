@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import org.seedstack.shed.reflect.Classes;
+
+/**
+ * Registry of the caches created with a {@link CacheParameters#setName(String) name}. Registered caches are exposed
+ * over JMX as {@link CacheMXBean}s and can be reconfigured at runtime. The maximum size, policy, statistics recording
+ * and hot keys tracking of all named caches, registered or not, can also be set at startup with the {@code
+ * shed.cache.<name>.maxSize}, {@code shed.cache.<name>.policy}, {@code shed.cache.<name>.recordingStats} and {@code
+ * shed.cache.<name>.hotKeysSize} system properties. Registering a cache under the name of an existing one replaces it.
+ *
+ * <p>The caches of {@link org.seedstack.shed.reflect.Annotations} and {@link Classes} are only registered, as
+ * {@code annotations}, {@code classes} and {@code classes.optional}, if the {@value #REGISTER_BUILT_IN_PROPERTY}
+ * system property is set to true, but their configuration can be overridden by system properties under these names
+ * in any case. Applications registering caches from a class loader that can be discarded, such as a web application,
+ * should call {@link #shutdown()} when it is, so that the JMX server doesn't keep it reachable.</p>
+ */
+public final class CacheRegistry {
+    /**
+     * The system property which, set to true, registers the caches of {@link org.seedstack.shed.reflect.Annotations}
+     * and {@link Classes}.
+     */
+    public static final String REGISTER_BUILT_IN_PROPERTY = "shed.cache.registerBuiltIn";
+    private static final CacheLogger LOGGER = CacheLogger.of(CacheRegistry.class);
+    private static final String OBJECT_NAME_PREFIX = "org.seedstack.shed:type=Cache,name=";
+    private static final Map<String, Class<? extends CacheFactory>> POLICIES = new LinkedHashMap<>();
+    private static final ConcurrentMap<String, ManagedCache<?, ?>> CACHES = new ConcurrentHashMap<>();
+    private static final Set<Cache<?, ?>> UNNAMED_PARTITIONED_CACHES = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<>()));
+
+    static {
+        POLICIES.put("lru", ConcurrentLRUCache.Factory.class);
+        POLICIES.put("tinylfu", TinyLFUCache.Factory.class);
+        POLICIES.put("simplelru", SimpleLRUCache.Factory.class);
+        POLICIES.put("unbounded", UnboundedCache.Factory.class);
+        POLICIES.put("offheap", OffHeapCache.Factory.class);
+        POLICIES.put("classvalue", ClassValueCache.Factory.class);
+        POLICIES.put("none", FakeCache.Factory.class);
+    }
+
+    private CacheRegistry() {
+        // no instantiation allowed
+    }
+
+    /**
+     * Returns the names of the registered caches, in alphabetical order.
+     *
+     * @return the cache names.
+     */
+    public static Set<String> names() {
+        return Collections.unmodifiableSet(new TreeSet<>(CACHES.keySet()));
+    }
+
+    /**
+     * Returns the management interface of the cache registered under the specified name.
+     *
+     * @param name the cache name.
+     * @return the management interface of the cache, or an empty optional if no cache has this name.
+     */
+    public static Optional<CacheMXBean> get(String name) {
+        return Optional.ofNullable(CACHES.get(name));
+    }
+
+    /**
+     * Removes the cache registered under the specified name from the registry and from JMX. The cache itself keeps
+     * working.
+     *
+     * @param name the cache name.
+     */
+    public static void unregister(String name) {
+        if (CACHES.remove(name) != null) {
+            unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Removes all the caches from the registry and from JMX and the garbage collection listener of {@link
+     * CacheParameters#setMemoryPressureShrinking(double, double) memory pressure shrinking}, to be called when the
+     * class loader of the application is discarded, for instance when it is undeployed. The caches themselves keep
+     * working but don't shrink under memory pressure anymore.
+     */
+    public static void shutdown() {
+        for (String name : names()) {
+            unregister(name);
+        }
+        MemoryPressure.shutdown();
+    }
+
+    /**
+     * Drops the entries of the specified class loader from all the caches that are {@link
+     * CacheParameters#setClassLoaderPartitioner(java.util.function.Function) partitioned by class loader}, registered
+     * or not, such as the caches of {@link org.seedstack.shed.reflect.Annotations} and {@link Classes}. To be called
+     * when the class loader is discarded, for instance when an application is undeployed, so that the caches don't
+     * keep it reachable.
+     *
+     * @param classLoader the class loader to evict.
+     * @return the names of the registered caches which had a partition for this class loader.
+     */
+    public static Set<String> evictClassLoader(ClassLoader classLoader) {
+        Set<String> names = new TreeSet<>();
+        for (ManagedCache<?, ?> managedCache : CACHES.values()) {
+            if (managedCache.evictClassLoader(classLoader)) {
+                names.add(managedCache.getName());
+            }
+        }
+        List<Cache<?, ?>> unnamedCaches;
+        synchronized (UNNAMED_PARTITIONED_CACHES) {
+            unnamedCaches = new ArrayList<>(UNNAMED_PARTITIONED_CACHES);
+        }
+        for (Cache<?, ?> cache : unnamedCaches) {
+            ManagedCache.evictClassLoader(cache, classLoader);
+        }
+        return names;
+    }
+
+    static <K, V> Cache<K, V> register(ManagedCache<K, V> managedCache) {
+        String name = managedCache.getName();
+        if (CACHES.put(name, managedCache) != null) {
+            LOGGER.info("Replacing registered cache {}", name);
+            unregisterMBean(name);
+        }
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            mBeanServer.registerMBean(new StandardMBean(managedCache, CacheMXBean.class, true), objectName(name));
+        } catch (JMException | RuntimeException e) {
+            LOGGER.warn("Unable to expose cache {} over JMX", name, e);
+        }
+        return managedCache;
+    }
+
+    /**
+     * Applies the system properties overriding the configuration of the named cache to its parameters and returns the
+     * factory to create it with, which can be overridden too.
+     */
+    static <K, V> CacheFactory configure(CacheFactory cacheFactory, CacheParameters<K, V> cacheParameters) {
+        String name = cacheParameters.getName();
+        String prefix = "shed.cache." + name + ".";
+        String maxSize = System.getProperty(prefix + "maxSize");
+        if (maxSize != null) {
+            try {
+                int parsedMaxSize = Integer.parseInt(maxSize.trim());
+                if (parsedMaxSize <= 0) {
+                    throw new IllegalArgumentException("Maximum size must be positive: " + parsedMaxSize);
+                }
+                cacheParameters.scaleMaxSize(parsedMaxSize);
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Ignoring invalid maximum size {} of cache {}", maxSize, name, e);
+            }
+        }
+        String policy = System.getProperty(prefix + "policy");
+        if (policy != null) {
+            try {
+                cacheFactory = resolvePolicy(policy.trim());
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Ignoring invalid policy {} of cache {}", policy, name, e);
+            }
+        }
+        String recordingStats = System.getProperty(prefix + "recordingStats");
+        if (recordingStats != null) {
+            cacheParameters.setRecordingStats(Boolean.parseBoolean(recordingStats.trim()));
+        }
+        String hotKeysSize = System.getProperty(prefix + "hotKeysSize");
+        if (hotKeysSize != null) {
+            try {
+                cacheParameters.setHotKeysSize(Integer.parseInt(hotKeysSize.trim()));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Ignoring invalid hot keys size {} of cache {}", hotKeysSize, name, e);
+            }
+        }
+        return cacheFactory;
+    }
+
+    /**
+     * Keeps track of an unregistered cache partitioned by class loader, without keeping it reachable, for {@link
+     * #evictClassLoader(ClassLoader)} to reach it.
+     */
+    static <K, V> Cache<K, V> track(Cache<K, V> cache) {
+        UNNAMED_PARTITIONED_CACHES.add(cache);
+        return cache;
+    }
+
+    /**
+     * Returns the factory of the specified policy alias or {@link CacheFactory} class name.
+     *
+     * @throws IllegalArgumentException if the policy is unknown.
+     */
+    static CacheFactory resolvePolicy(String policy) {
+        Class<? extends CacheFactory> factoryClass = POLICIES.get(policy);
+        if (factoryClass == null) {
+            // not using Classes.optional() which may be the cache being configured
+            try {
+                factoryClass = Class.forName(policy).asSubclass(CacheFactory.class);
+            } catch (ClassNotFoundException | ClassCastException | LinkageError e) {
+                throw new IllegalArgumentException("Unknown cache policy " + policy + ", expected one of "
+                        + POLICIES.keySet() + " or the class name of a cache factory", e);
+            }
+        }
+        return Classes.instantiateDefault(factoryClass);
+    }
+
+    static String policyOf(CacheFactory cacheFactory) {
+        for (Map.Entry<String, Class<? extends CacheFactory>> entry : POLICIES.entrySet()) {
+            if (entry.getValue() == cacheFactory.getClass()) {
+                return entry.getKey();
+            }
+        }
+        return cacheFactory.getClass().getName();
+    }
+
+    private static void unregisterMBean(String name) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(name);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException | RuntimeException e) {
+            LOGGER.warn("Unable to remove cache {} from JMX", name, e);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+
+/**
+ * Cache entries saved to a file by a previous run, so that a restarted application doesn't compute its warm entries
+ * again. The file is memory-mapped when the snapshot is opened and an entry is only decoded when its key is first
+ * loaded. Entries that cannot be decoded anymore, for instance because they reference a class that was removed, are
+ * loaded by the loading function instead. Values loaded while the snapshot is attached to a cache are recorded and
+ * written by {@link #save()} along with the saved entries that are still valid.
+ *
+ * <p>A snapshot is attached to a cache with {@link CacheParameters#setSnapshot(CacheSnapshot)}. It only replaces the
+ * first load of each saved key: the cache keeps its own bounds, expiration and refresh.</p>
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
+public final class CacheSnapshot<K, V> {
+    private static final CacheLogger LOGGER = CacheLogger.of(CacheSnapshot.class);
+    private static final int MAGIC = 0x53484443;
+    // 2 since Codecs.string() writes the UTF-8 length and bytes of strings instead of modified UTF-8
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 20;
+    private static final int INDEX_ENTRY_SIZE = 20;
+    private static final int KEY_OFFSET = 4;
+    private static final int KEY_LENGTH = 8;
+    private static final int VALUE_OFFSET = 12;
+    private static final int VALUE_LENGTH = 16;
+    private static final int MAX_ENTRIES = 65536;
+    private static final int UNREAD = 0;
+    private static final int RESTORED = 1;
+    private static final int STALE = 2;
+    private final Path path;
+    private final long fingerprint;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final AtomicIntegerArray states;
+    private final ConcurrentMap<EncodedKey, byte[]> recorded = new ConcurrentHashMap<>();
+
+    private CacheSnapshot(Path path, long fingerprint, Codec<K> keyCodec, Codec<V> valueCodec, ByteBuffer buffer) {
+        this.path = path;
+        this.fingerprint = fingerprint;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.buffer = buffer;
+        this.count = buffer == null ? 0 : buffer.getInt(16);
+        this.states = new AtomicIntegerArray(count);
+    }
+
+    /**
+     * Opens the snapshot stored in the specified file. If the file doesn't exist, is invalid or was saved with another
+     * fingerprint, the snapshot starts empty and the file is replaced on the next save.
+     *
+     * @param path        the snapshot file.
+     * @param fingerprint an identifier of the application version, such as a build timestamp, as snapshots saved by
+     *                    other versions are ignored.
+     * @param keyCodec    the codec of the keys.
+     * @param valueCodec  the codec of the values.
+     * @param <K>         the type of the keys.
+     * @param <V>         the type of the values.
+     * @return the snapshot.
+     */
+    public static <K, V> CacheSnapshot<K, V> open(Path path, long fingerprint, Codec<K> keyCodec,
+            Codec<V> valueCodec) {
+        return new CacheSnapshot<>(path, fingerprint, keyCodec, valueCodec, map(path, fingerprint));
+    }
+
+    private static ByteBuffer map(Path path, long fingerprint) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                LOGGER.warn("Ignoring cache snapshot {} of invalid size {}", path, size);
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to map cache snapshot {}", path, e);
+            return null;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            LOGGER.warn("Ignoring cache snapshot {} of unknown format", path);
+            return null;
+        }
+        if (buffer.getLong(8) != fingerprint) {
+            LOGGER.debug("Ignoring cache snapshot {} saved with another fingerprint", path);
+            return null;
+        }
+        int count = buffer.getInt(16);
+        if (count < 0 || count > (buffer.capacity() - HEADER_SIZE) / INDEX_ENTRY_SIZE) {
+            LOGGER.warn("Ignoring cache snapshot {} with invalid entry count {}", path, count);
+            return null;
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes the recorded entries and the saved entries that are still valid to the snapshot file, replacing it
+     * atomically if the file system allows it. Saved entries that were not accessed are kept, up to 65536 entries in
+     * total.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public synchronized void save() throws IOException {
+        Map<EncodedKey, byte[]> entries = new HashMap<>(recorded);
+        for (int i = 0; i < count && entries.size() < MAX_ENTRIES; i++) {
+            if (states.get(i) != STALE) {
+                ByteBuffer key = slice(indexInt(i, KEY_OFFSET), indexInt(i, KEY_LENGTH));
+                ByteBuffer value = slice(indexInt(i, VALUE_OFFSET), indexInt(i, VALUE_LENGTH));
+                if (key != null && value != null) {
+                    entries.putIfAbsent(new EncodedKey(toArray(key)), toArray(value));
+                }
+            }
+        }
+        List<Map.Entry<EncodedKey, byte[]>> sortedEntries = new ArrayList<>(entries.entrySet());
+        sortedEntries.sort(Comparator.comparingInt(entry -> entry.getKey().hash));
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                write(output, sortedEntries);
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    private void write(DataOutputStream output, List<Map.Entry<EncodedKey, byte[]>> entries) throws IOException {
+        long offset = HEADER_SIZE + (long) entries.size() * INDEX_ENTRY_SIZE;
+        for (Map.Entry<EncodedKey, byte[]> entry : entries) {
+            offset += entry.getKey().bytes.length + entry.getValue().length;
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("Cache snapshot " + path + " would exceed the maximum size of a mapped file");
+        }
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(fingerprint);
+        output.writeInt(entries.size());
+        int dataOffset = HEADER_SIZE + entries.size() * INDEX_ENTRY_SIZE;
+        for (Map.Entry<EncodedKey, byte[]> entry : entries) {
+            output.writeInt(entry.getKey().hash);
+            output.writeInt(dataOffset);
+            output.writeInt(entry.getKey().bytes.length);
+            dataOffset += entry.getKey().bytes.length;
+            output.writeInt(dataOffset);
+            output.writeInt(entry.getValue().length);
+            dataOffset += entry.getValue().length;
+        }
+        for (Map.Entry<EncodedKey, byte[]> entry : entries) {
+            output.write(entry.getKey().bytes);
+            output.write(entry.getValue());
+        }
+    }
+
+    /**
+     * Returns a copy of the specified parameters whose loading functions restore the entries of this snapshot and
+     * record the loaded ones.
+     */
+    CacheParameters<K, V> attachTo(CacheParameters<K, V> cacheParameters) {
+        CacheParameters<K, V> attached = cacheParameters.copy().setSnapshot(null);
+        Function<? super K, ? extends V> loadingFunction = cacheParameters.getLoadingFunction();
+        if (loadingFunction != null) {
+            attached.setLoadingFunction(key -> load(key, loadingFunction));
+        }
+        Function<Set<K>, Map<K, V>> batchLoadingFunction = cacheParameters.getBatchLoadingFunction();
+        if (batchLoadingFunction != null) {
+            attached.setBatchLoadingFunction(keys -> loadAll(keys, batchLoadingFunction));
+        }
+        return attached;
+    }
+
+    private V load(K key, Function<? super K, ? extends V> loadingFunction) {
+        EncodedKey encodedKey = encodeKey(key);
+        V value = restore(encodedKey);
+        if (value == null) {
+            value = loadingFunction.apply(key);
+            record(encodedKey, value);
+        }
+        return value;
+    }
+
+    private Map<K, V> loadAll(Set<K> keys, Function<Set<K>, Map<K, V>> batchLoadingFunction) {
+        Map<K, V> values = new HashMap<>();
+        Map<K, EncodedKey> missingKeys = new LinkedHashMap<>();
+        for (K key : keys) {
+            EncodedKey encodedKey = encodeKey(key);
+            V value = restore(encodedKey);
+            if (value == null) {
+                missingKeys.put(key, encodedKey);
+            } else {
+                values.put(key, value);
+            }
+        }
+        if (!missingKeys.isEmpty()) {
+            Map<K, V> loadedValues = batchLoadingFunction.apply(new LinkedHashSet<>(missingKeys.keySet()));
+            if (loadedValues != null) {
+                loadedValues.forEach((key, value) -> {
+                    values.put(key, value);
+                    record(missingKeys.get(key), value);
+                });
+            }
+        }
+        return values;
+    }
+
+    private V restore(EncodedKey encodedKey) {
+        if (encodedKey == null || count == 0) {
+            return null;
+        }
+        int index = find(encodedKey);
+        if (index < 0 || !states.compareAndSet(index, UNREAD, RESTORED)) {
+            return null;
+        }
+        ByteBuffer encodedValue = slice(indexInt(index, VALUE_OFFSET), indexInt(index, VALUE_LENGTH));
+        try {
+            V value = encodedValue == null ? null : valueCodec.read(
+                    new DataInputStream(new ByteBufferInputStream(encodedValue)));
+            if (value != null) {
+                return value;
+            }
+        } catch (IOException | RuntimeException | LinkageError | OutOfMemoryError e) {
+            // a codec trusting a corrupted length may fail to allocate, the entry is loaded again instead
+            LOGGER.debug("Unable to restore entry {} of cache snapshot {}, loading it again", index, path, e);
+        }
+        states.set(index, STALE);
+        return null;
+    }
+
+    private int find(EncodedKey encodedKey) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexInt(middle, 0) < encodedKey.hash) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        ByteBuffer wrappedKey = ByteBuffer.wrap(encodedKey.bytes);
+        for (int i = low; i < count && indexInt(i, 0) == encodedKey.hash; i++) {
+            if (wrappedKey.equals(slice(indexInt(i, KEY_OFFSET), indexInt(i, KEY_LENGTH)))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void record(EncodedKey encodedKey, V value) {
+        if (encodedKey != null && value != null && recorded.size() < MAX_ENTRIES) {
+            byte[] encodedValue = encode(valueCodec, value);
+            if (encodedValue != null) {
+                recorded.put(encodedKey, encodedValue);
+            }
+        }
+    }
+
+    private EncodedKey encodeKey(K key) {
+        byte[] bytes = encode(keyCodec, key);
+        return bytes == null ? null : new EncodedKey(bytes);
+    }
+
+    private static <T> byte[] encode(Codec<T> codec, T value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            codec.write(value, new DataOutputStream(bytes));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unable to encode {} for a cache snapshot", value, e);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private int indexInt(int index, int field) {
+        return buffer.getInt(HEADER_SIZE + index * INDEX_ENTRY_SIZE + field);
+    }
+
+    /**
+     * Returns a view of the specified region of the mapped file or null if the region is out of bounds, as is the
+     * case in a truncated file.
+     */
+    private ByteBuffer slice(int offset, int length) {
+        if (offset < 0 || length < 0 || offset > buffer.capacity() - length) {
+            return null;
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.limit(offset + length);
+        return slice.slice();
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static final class EncodedKey {
+        private final byte[] bytes;
+        private final int hash;
+
+        private EncodedKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof EncodedKey && Arrays.equals(bytes, ((EncodedKey) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+    }
+}
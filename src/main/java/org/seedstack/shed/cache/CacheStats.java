@@ -0,0 +1,173 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the statistics of a {@link Cache}. Statistics are only recorded by caches created with
+ * {@link CacheParameters#setRecordingStats(boolean)} enabled, otherwise all counts are zero.
+ */
+public final class CacheStats {
+    private static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0);
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long evictionCount;
+    private final List<HotKey> frequentKeys;
+    private final List<HotKey> expensiveKeys;
+
+    public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+            long totalLoadTime, long evictionCount) {
+        this(hitCount, missCount, loadSuccessCount, loadFailureCount, totalLoadTime, evictionCount,
+                Collections.emptyList(), Collections.emptyList());
+    }
+
+    private CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+            long totalLoadTime, long evictionCount, List<HotKey> frequentKeys, List<HotKey> expensiveKeys) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.frequentKeys = frequentKeys;
+        this.expensiveKeys = expensiveKeys;
+    }
+
+    public static CacheStats empty() {
+        return EMPTY;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the ratio of requests that were hits, or 1.0 if there was no request.
+     *
+     * @return the hit rate between 0.0 and 1.0.
+     */
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the ratio of requests that were misses, or 0.0 if there was no request.
+     *
+     * @return the miss rate between 0.0 and 1.0.
+     */
+    public double getMissRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 0.0 : (double) missCount / requestCount;
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /**
+     * Returns the number of loads that threw an exception or returned null.
+     *
+     * @return the load failure count.
+     */
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * Returns the total time spent loading values, successfully or not.
+     *
+     * @return the total load time in nanoseconds.
+     */
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * Returns the average time spent loading a value, or 0 if there was no load.
+     *
+     * @return the average load time in nanoseconds.
+     */
+    public double getAverageLoadPenalty() {
+        long loadCount = loadSuccessCount + loadFailureCount;
+        return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    /**
+     * Returns the number of entries removed because of the size bound or because they expired.
+     *
+     * @return the eviction count.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the most requested keys by decreasing number of requests. The list is empty unless the cache was created
+     * with {@link CacheParameters#setHotKeysSize(int)}.
+     *
+     * @return the most requested keys, with their estimated number of requests.
+     */
+    public List<HotKey> getFrequentKeys() {
+        return frequentKeys;
+    }
+
+    /**
+     * Returns the keys that took the most time to load in total, by decreasing load time. The list is empty unless the
+     * cache was created with {@link CacheParameters#setHotKeysSize(int)}.
+     *
+     * @return the most expensive keys, with their estimated total load time in nanoseconds.
+     */
+    public List<HotKey> getExpensiveKeys() {
+        return expensiveKeys;
+    }
+
+    /**
+     * Returns these statistics with the specified hot keys.
+     */
+    CacheStats withHotKeys(List<HotKey> frequentKeys, List<HotKey> expensiveKeys) {
+        return new CacheStats(hitCount, missCount, loadSuccessCount, loadFailureCount, totalLoadTime, evictionCount,
+                Collections.unmodifiableList(frequentKeys), Collections.unmodifiableList(expensiveKeys));
+    }
+
+    /**
+     * Returns the sum of these statistics and the specified ones, without their hot keys.
+     */
+    CacheStats plus(CacheStats other) {
+        return new CacheStats(hitCount + other.hitCount, missCount + other.missCount,
+                loadSuccessCount + other.loadSuccessCount, loadFailureCount + other.loadFailureCount,
+                totalLoadTime + other.totalLoadTime, evictionCount + other.evictionCount);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{"
+                + "hitCount=" + hitCount
+                + ", missCount=" + missCount
+                + ", loadSuccessCount=" + loadSuccessCount
+                + ", loadFailureCount=" + loadFailureCount
+                + ", totalLoadTime=" + totalLoadTime
+                + ", evictionCount=" + evictionCount
+                + (frequentKeys.isEmpty() ? "" : ", frequentKeys=" + frequentKeys)
+                + (expensiveKeys.isEmpty() ? "" : ", expensiveKeys=" + expensiveKeys)
+                + '}';
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A compact binary trace of the accesses to a cache, recording the hash of each requested key and whether it was a
+ * hit or a miss. Each access takes four bytes in the trace file. Accesses are first published in a lock-free ring
+ * buffer and the thread filling it past half of its capacity writes them to the file while the others go on. When
+ * the ring buffer is full, accesses are dropped instead of blocking the caller and counted by
+ * {@link #droppedCount()}.
+ *
+ * <p>A trace is attached to a cache with {@link CacheParameters#setTrace(CacheTrace)} and replayed offline with
+ * {@link #read(Path, Consumer)}. Only one cache should record in a given trace.</p>
+ */
+public final class CacheTrace implements Closeable {
+    private static final CacheLogger LOGGER = CacheLogger.of(CacheTrace.class);
+    private static final int MAGIC = 0x53485452;
+    private static final int VERSION = 1;
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final long PUBLISHED = 1L << 32;
+    private final Path path;
+    private final FileChannel channel;
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final ByteBuffer writeBuffer;
+    private volatile boolean closed;
+
+    private CacheTrace(Path path, FileChannel channel, int bufferSize) {
+        this.path = path;
+        this.channel = channel;
+        this.slots = new AtomicLongArray(bufferSize);
+        this.mask = bufferSize - 1;
+        this.writeBuffer = ByteBuffer.allocateDirect(bufferSize * 4);
+    }
+
+    /**
+     * Creates a trace writing to the specified file, replacing its content, with the default ring buffer size.
+     *
+     * @param path the trace file.
+     * @return the trace.
+     * @throws IOException if the file cannot be created.
+     */
+    public static CacheTrace open(Path path) throws IOException {
+        return open(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a trace writing to the specified file, replacing its content.
+     *
+     * @param path       the trace file.
+     * @param bufferSize the number of accesses the ring buffer can hold, rounded up to a power of two.
+     * @return the trace.
+     * @throws IOException if the file cannot be created.
+     */
+    public static CacheTrace open(Path path, int bufferSize) throws IOException {
+        if (bufferSize < 2) {
+            throw new IllegalArgumentException("Trace buffer size must be at least 2");
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new CacheTrace(path, channel, Integer.highestOneBit(bufferSize - 1) << 1);
+    }
+
+    /**
+     * Replays the accesses recorded in the specified trace file in order.
+     *
+     * @param path     the trace file.
+     * @param consumer the consumer of the accesses.
+     * @throws IOException if the file cannot be read or is not a trace.
+     */
+    public static void read(Path path, Consumer consumer) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path);
+                DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream))) {
+            if (dataInputStream.readInt() != MAGIC || dataInputStream.readInt() != VERSION) {
+                throw new IOException("Unknown cache trace format in " + path);
+            }
+            while (true) {
+                int access;
+                try {
+                    access = dataInputStream.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                consumer.accept(access >>> 1, (access & 1) != 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of accesses that were dropped because the ring buffer was full.
+     *
+     * @return the number of dropped accesses.
+     */
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes the accesses published so far to the trace file.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public void flush() throws IOException {
+        drainLock.lock();
+        try {
+            drain();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the accesses published so far and closes the trace file. Accesses recorded afterwards are ignored.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        drainLock.lock();
+        try {
+            if (!closed) {
+                closed = true;
+                try {
+                    drain();
+                } finally {
+                    channel.close();
+                }
+            }
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Publishes an access in the ring buffer, the lowest 31 bits of the key hash being kept.
+     */
+    void record(int hash, boolean hit) {
+        if (closed) {
+            return;
+        }
+        long access = PUBLISHED | ((hash << 1 | (hit ? 1 : 0)) & 0xffffffffL);
+        long index;
+        do {
+            index = tail.get();
+            if (index - head.get() > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(index, index + 1));
+        slots.lazySet((int) index & mask, access);
+        // a single thread writes while the others go on
+        if (index - head.get() >= (mask + 1) / 2 && drainLock.tryLock()) {
+            try {
+                drain();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to write cache trace {}, stopping recording", path, e);
+                closed = true;
+            } finally {
+                drainLock.unlock();
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        long index = head.get();
+        long end = tail.get();
+        writeBuffer.clear();
+        while (index < end) {
+            int slot = (int) index & mask;
+            long access = slots.get(slot);
+            if (access == 0) {
+                // claimed but not published yet, it will be written on the next drain
+                break;
+            }
+            writeBuffer.putInt((int) access);
+            slots.lazySet(slot, 0);
+            index++;
+        }
+        head.set(index);
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+    }
+
+    /**
+     * A consumer of the accesses replayed from a trace file.
+     */
+    @FunctionalInterface
+    public interface Consumer {
+        /**
+         * Consumes an access.
+         *
+         * @param hash the key hash, truncated to 31 bits.
+         * @param hit  true if the key was found in the cache, false if it was loaded.
+         */
+        void accept(int hash, boolean hit);
+    }
+}
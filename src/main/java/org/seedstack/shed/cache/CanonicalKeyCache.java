@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * A cache decorator replacing the keys by their canonical instance, as computed by the {@link
+ * CacheParameters#setKeyCanonicalizer(UnaryOperator) key canonicalizer}, before passing them to another cache. The
+ * maps returned by {@link #getAll(Iterable)} are keyed by the specified keys, not by their canonical instances.
+ */
+final class CanonicalKeyCache<K, V> implements Cache<K, V> {
+    private final Cache<K, V> delegate;
+    private final UnaryOperator<K> keyCanonicalizer;
+
+    CanonicalKeyCache(Cache<K, V> delegate, CacheParameters<K, V> cacheParameters) {
+        this.delegate = delegate;
+        this.keyCanonicalizer = cacheParameters.getKeyCanonicalizer();
+    }
+
+    Cache<K, V> delegate() {
+        return delegate;
+    }
+
+    @Override
+    public V get(K key) {
+        return delegate.get(keyCanonicalizer.apply(key));
+    }
+
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        List<K> specifiedKeys = new ArrayList<>();
+        List<K> canonicalKeys = new ArrayList<>();
+        for (K key : keys) {
+            specifiedKeys.add(key);
+            canonicalKeys.add(keyCanonicalizer.apply(key));
+        }
+        Map<K, V> canonicalValues = delegate.getAll(canonicalKeys);
+        Map<K, V> values = new LinkedHashMap<>();
+        for (int i = 0; i < specifiedKeys.size(); i++) {
+            V value = canonicalValues.get(canonicalKeys.get(i));
+            if (value != null) {
+                values.put(specifiedKeys.get(i), value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        delegate.invalidate(keyCanonicalizer.apply(key));
+    }
+
+    @Override
+    public void invalidateAll() {
+        delegate.invalidateAll();
+    }
+
+    @Override
+    public void freeze() {
+        delegate.freeze();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return delegate.stats();
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+/**
+ * A cache key made of a class and a small set of flags, which {@link ClassValueCache} attaches its values to. Keys
+ * with the same class and flags must be equal.
+ */
+public interface ClassKey {
+    /**
+     * Returns the class the value of this key is attached to.
+     *
+     * @return the key class.
+     */
+    Class<?> keyClass();
+
+    /**
+     * Returns the flags of this key as a bit set, lower than {@link ClassValueCache#MAX_FLAG_COMBINATIONS}.
+     *
+     * @return the key flags.
+     */
+    int keyFlags();
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A cache split into one partition per class loader, as returned for each key by the {@link
+ * CacheParameters#setClassLoaderPartitioner(Function) class loader partitioner}. Each partition is a cache created by
+ * the factory with a share of the maximum size and weight, so the entries of a class loader cannot crowd out those of
+ * the others, and all the entries of a class loader can be dropped at once with {@link
+ * #evictClassLoader(ClassLoader)}.
+ *
+ * <p>The partitions get equal shares when they are created or evicted and when the maximum size is changed. After a
+ * number of loads equal to the maximum size, the shares are recomputed to be fair on demand: a partition gets the
+ * capacity it uses, up to an equal share, and the capacity left by the partitions that don't need their equal share
+ * goes to the others. The demand of a partition is the number of its entries, plus its loads since the last sharing if
+ * it is full. A partition that cannot be resized in place, because it is not segmented or has more segments than its
+ * new share, is created again with its new share when it shrinks, dropping its entries. The shares of such partitions
+ * never grow, as their size is not known. The total of the shares only exceeds the maximum size if there are more
+ * partitions than the maximum size, as each partition holds at least one entry.</p>
+ *
+ * <p>Adaptive sizing and memory pressure shrinking cannot be combined with partitioning, as each partition would
+ * adjust its capacity on its own. The entries of a partition usually reference its class loader strongly, through the
+ * classes of their keys and values: the class loader is kept reachable until its partition is evicted. The statistics
+ * of the cache are the sum of those of its partitions, including evicted or recreated ones.</p>
+ */
+final class ClassLoaderPartitionedCache<K, V> implements Cache<K, V> {
+    private final CacheFactory cacheFactory;
+    private final CacheParameters<K, V> cacheParameters;
+    private final Function<? super K, ClassLoader> classLoaderPartitioner;
+    private final AtomicInteger loadsSinceSharing = new AtomicInteger();
+    private volatile List<Partition<K, V>> partitions = new ArrayList<>();
+    private volatile Partition<K, V> bootstrapPartition;
+    private CacheStats evictedStats = CacheStats.empty();
+
+    ClassLoaderPartitionedCache(CacheFactory cacheFactory, CacheParameters<K, V> cacheParameters) {
+        if (cacheParameters.getAdaptiveMaxSize() > 0 || cacheParameters.getMemoryPressureWatermark() > 0) {
+            throw new IllegalArgumentException("Class loader partitioning cannot be combined with adaptive sizing or "
+                    + "memory pressure shrinking as each partition would resize itself regardless of the others");
+        }
+        this.cacheFactory = cacheFactory;
+        // copied as the maximum size can be changed
+        this.cacheParameters = cacheParameters.copy();
+        this.classLoaderPartitioner = cacheParameters.getClassLoaderPartitioner();
+    }
+
+    @Override
+    public V get(K key) {
+        V value = partitionFor(classLoaderPartitioner.apply(key)).cache.get(key);
+        shareIfNeeded();
+        return value;
+    }
+
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        List<K> requestedKeys = new ArrayList<>();
+        Map<Cache<K, V>, List<K>> keysByPartition = new IdentityHashMap<>();
+        for (K key : keys) {
+            requestedKeys.add(key);
+            keysByPartition.computeIfAbsent(partitionFor(classLoaderPartitioner.apply(key)).cache,
+                    p -> new ArrayList<>()).add(key);
+        }
+        Map<K, V> values = new LinkedHashMap<>();
+        for (Map.Entry<Cache<K, V>, List<K>> entry : keysByPartition.entrySet()) {
+            values.putAll(entry.getKey().getAll(entry.getValue()));
+        }
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : requestedKeys) {
+            V value = values.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        shareIfNeeded();
+        return result;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        ClassLoader classLoader = classLoaderPartitioner.apply(key);
+        Partition<K, V> partition = classLoader == null ? bootstrapPartition : findPartition(classLoader);
+        if (partition != null) {
+            partition.cache.invalidate(key);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (Cache<K, V> partition : partitions()) {
+            partition.invalidateAll();
+        }
+    }
+
+    @Override
+    public void freeze() {
+        for (Cache<K, V> partition : partitions()) {
+            partition.freeze();
+        }
+    }
+
+    @Override
+    public synchronized CacheStats stats() {
+        CacheStats stats = evictedStats;
+        for (Cache<K, V> partition : partitions()) {
+            stats = stats.plus(partition.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Changes the maximum size of the cache, scaling the weight bound in the same proportion, and shares it again
+     * among the partitions.
+     */
+    synchronized void setMaxSize(int maxSize) {
+        cacheParameters.scaleMaxSize(maxSize);
+        sharePartitions(false);
+    }
+
+    /**
+     * Drops the partition of the specified class loader with all its entries. The bootstrap partition is dropped if the
+     * class loader is null. Returns true if there was such a partition.
+     */
+    synchronized boolean evictClassLoader(ClassLoader classLoader) {
+        Partition<K, V> evicted = null;
+        if (classLoader == null) {
+            evicted = bootstrapPartition;
+            bootstrapPartition = null;
+        } else {
+            List<Partition<K, V>> newPartitions = new ArrayList<>(partitions.size());
+            for (Partition<K, V> partition : partitions) {
+                ClassLoader partitionClassLoader = partition.classLoader.get();
+                if (partitionClassLoader == classLoader) {
+                    evicted = partition;
+                } else if (partitionClassLoader != null) {
+                    newPartitions.add(partition);
+                }
+            }
+            partitions = newPartitions;
+        }
+        if (evicted == null) {
+            return false;
+        }
+        evictedStats = evictedStats.plus(evicted.cache.stats());
+        sharePartitions(false);
+        return true;
+    }
+
+    /**
+     * Returns the current partitions, including the bootstrap one if it exists.
+     */
+    List<Cache<K, V>> partitions() {
+        List<Cache<K, V>> caches = new ArrayList<>();
+        for (Partition<K, V> partition : allPartitions()) {
+            caches.add(partition.cache);
+        }
+        return caches;
+    }
+
+    private List<Partition<K, V>> allPartitions() {
+        List<Partition<K, V>> allPartitions = new ArrayList<>(partitions);
+        Partition<K, V> currentBootstrapPartition = bootstrapPartition;
+        if (currentBootstrapPartition != null) {
+            allPartitions.add(0, currentBootstrapPartition);
+        }
+        return allPartitions;
+    }
+
+    private Partition<K, V> partitionFor(ClassLoader classLoader) {
+        Partition<K, V> partition = classLoader == null ? bootstrapPartition : findPartition(classLoader);
+        return partition == null ? createPartition(classLoader) : partition;
+    }
+
+    private Partition<K, V> findPartition(ClassLoader classLoader) {
+        // class loaders are few, a scan by identity is cheaper than hashing
+        for (Partition<K, V> partition : partitions) {
+            if (partition.classLoader.get() == classLoader) {
+                return partition;
+            }
+        }
+        return null;
+    }
+
+    private synchronized Partition<K, V> createPartition(ClassLoader classLoader) {
+        if (classLoader == null) {
+            if (bootstrapPartition == null) {
+                bootstrapPartition = newPartition(null, partitions.size() + 1);
+                sharePartitions(false);
+            }
+            return bootstrapPartition;
+        }
+        Partition<K, V> partition = findPartition(classLoader);
+        if (partition == null) {
+            List<Partition<K, V>> newPartitions = new ArrayList<>(partitions.size() + 1);
+            for (Partition<K, V> existingPartition : partitions) {
+                if (existingPartition.classLoader.get() != null) {
+                    newPartitions.add(existingPartition);
+                }
+            }
+            partition = newPartition(classLoader, newPartitions.size() + (bootstrapPartition == null ? 1 : 2));
+            newPartitions.add(partition);
+            partitions = newPartitions;
+            sharePartitions(false);
+        }
+        return partition;
+    }
+
+    /**
+     * Creates a partition with an equal share of the maximum size, until the next sharing.
+     */
+    private Partition<K, V> newPartition(ClassLoader classLoader, int partitionCount) {
+        Partition<K, V> partition = new Partition<>(classLoader);
+        partition.maxSize = Math.max(1, cacheParameters.getMaxSize() / partitionCount);
+        partition.cache = cacheFactory.createCache(partitionParameters(partition));
+        return partition;
+    }
+
+    /**
+     * Returns the parameters of a partition, with its share of the maximum size and weight of the cache, and its loads
+     * counted to estimate its demand.
+     */
+    private CacheParameters<K, V> partitionParameters(Partition<K, V> partition) {
+        CacheParameters<K, V> partitionParameters = cacheParameters.copy();
+        partitionParameters.setMaxSize(partition.maxSize);
+        if (cacheParameters.getMaximumWeight() >= 0) {
+            partitionParameters.setMaximumWeight(Math.max(1, Math.round(
+                    (double) cacheParameters.getMaximumWeight() * partition.maxSize / cacheParameters.getMaxSize())));
+        }
+        partitionParameters.setInitialSize(Math.min(cacheParameters.getInitialSize(), partition.maxSize));
+        Function<? super K, ? extends V> loadingFunction = cacheParameters.getLoadingFunction();
+        if (loadingFunction != null) {
+            partitionParameters.setLoadingFunction(key -> {
+                countLoads(partition, 1);
+                return loadingFunction.apply(key);
+            });
+        }
+        Function<Set<K>, Map<K, V>> batchLoadingFunction = cacheParameters.getBatchLoadingFunction();
+        if (batchLoadingFunction != null) {
+            partitionParameters.setBatchLoadingFunction(keys -> {
+                countLoads(partition, keys.size());
+                return batchLoadingFunction.apply(keys);
+            });
+        }
+        return partitionParameters;
+    }
+
+    private void countLoads(Partition<K, V> partition, int loadCount) {
+        partition.loads.addAndGet(loadCount);
+        loadsSinceSharing.addAndGet(loadCount);
+    }
+
+    private void shareIfNeeded() {
+        if (loadsSinceSharing.get() >= cacheParameters.getMaxSize()) {
+            synchronized (this) {
+                if (loadsSinceSharing.get() >= cacheParameters.getMaxSize()) {
+                    sharePartitions(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shares the maximum size among the current partitions by max-min fairness, on their demand or equally, then
+     * resizes them. The maximum weight follows in the same proportion.
+     */
+    private void sharePartitions(boolean onDemand) {
+        loadsSinceSharing.set(0);
+        List<Partition<K, V>> currentPartitions = allPartitions();
+        int[] shares = shareOf(currentPartitions, onDemand);
+        for (int i = 0; i < shares.length; i++) {
+            Partition<K, V> partition = currentPartitions.get(i);
+            int share = Math.max(1, shares[i]);
+            if (partition.cache instanceof AbstractSegmentedCache
+                    && ((AbstractSegmentedCache<K, V>) partition.cache).setMaxSize(share)) {
+                partition.maxSize = share;
+            } else if (share < partition.maxSize) {
+                // created again with fewer segments if needed, as they are derived from the capacity
+                evictedStats = evictedStats.plus(partition.cache.stats());
+                partition.maxSize = share;
+                partition.cache = cacheFactory.createCache(partitionParameters(partition));
+            }
+        }
+    }
+
+    private int[] shareOf(List<Partition<K, V>> currentPartitions, boolean onDemand) {
+        int count = currentPartitions.size();
+        long[] demands = new long[count];
+        Integer[] byDemand = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            demands[i] = demandOf(currentPartitions.get(i), onDemand);
+            byDemand[i] = i;
+        }
+        Arrays.sort(byDemand, (i, j) -> Long.compare(demands[i], demands[j]));
+        int[] shares = new int[count];
+        int left = cacheParameters.getMaxSize();
+        for (int i = 0; i < count; i++) {
+            int share = (int) Math.min(demands[byDemand[i]], left / (count - i));
+            shares[byDemand[i]] = share;
+            left -= share;
+        }
+        // what no partition demands is spread evenly so that partitions can grow until the next sharing
+        for (int i = 0; i < count; i++) {
+            shares[i] += left / count + (i < left % count ? 1 : 0);
+        }
+        return shares;
+    }
+
+    /**
+     * Returns the number of entries a partition needs: its entries, plus its loads since the last sharing if it is
+     * full. Partitions that cannot grow in place demand their current share, others an equal share if not shared on
+     * demand.
+     */
+    private long demandOf(Partition<K, V> partition, boolean onDemand) {
+        long loads = partition.loads.getAndSet(0);
+        if (!(partition.cache instanceof AbstractSegmentedCache)) {
+            return partition.maxSize;
+        } else if (!onDemand) {
+            return Long.MAX_VALUE;
+        }
+        double weightPerEntry = cacheParameters.getMaximumWeight() < 0 ? 1
+                : (double) cacheParameters.getMaximumWeight() / cacheParameters.getMaxSize();
+        long size = (long) Math.ceil(((AbstractSegmentedCache<K, V>) partition.cache).weightedSize() / weightPerEntry);
+        return size < partition.maxSize ? size : size + loads;
+    }
+
+    private static final class Partition<K, V> {
+        private final WeakReference<ClassLoader> classLoader;
+        private final AtomicLong loads = new AtomicLong();
+        private volatile Cache<K, V> cache;
+        private int maxSize;
+
+        private Partition(ClassLoader classLoader) {
+            this.classLoader = new WeakReference<>(classLoader);
+        }
+    }
+}
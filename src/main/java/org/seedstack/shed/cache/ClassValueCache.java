@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A cache attaching its values to the classes of its keys with {@link ClassValue}s, one per combination of key flags.
+ * Keys must be classes or implement {@link ClassKey}. A hit reads the class value map of the class instead of probing
+ * a hash table, and entries are discarded with their class when it is unloaded.
+ *
+ * <p>The cache is only bounded by the number of classes and ignores its maximum size. Concurrent misses on the same
+ * key wait for a single load. Expiration and refresh are not supported.</p>
+ */
+public class ClassValueCache<K, V> implements Cache<K, V> {
+    /**
+     * The number of distinct flag combinations a key can have.
+     */
+    public static final int MAX_FLAG_COMBINATIONS = 16;
+    private final Loader<K, V> loader;
+    private final StatsCounter statsCounter;
+    private volatile AtomicReferenceArray<SlotClassValue<V>> classValues =
+            new AtomicReferenceArray<>(MAX_FLAG_COMBINATIONS);
+
+    private ClassValueCache(CacheParameters<K, V> cacheParameters) {
+        if (Expiration.of(cacheParameters) != null || Refresh.of(cacheParameters) != null) {
+            throw new IllegalArgumentException("Class value caches don't support expiration nor refresh");
+        }
+        statsCounter = StatsCounter.of(cacheParameters);
+        loader = new Loader<>(cacheParameters, statsCounter);
+    }
+
+    @Override
+    public V get(K key) {
+        Slot<V> slot = classValueFor(key).get(classOf(key));
+        V value = slot.value;
+        if (value == null) {
+            synchronized (slot) {
+                value = slot.value;
+                if (value == null) {
+                    return load(slot, key);
+                }
+            }
+        }
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
+        return value;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        classValueFor(key).remove(classOf(key));
+    }
+
+    @Override
+    public void invalidateAll() {
+        // values attached to the previous class values are reclaimed with them
+        classValues = new AtomicReferenceArray<>(MAX_FLAG_COMBINATIONS);
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.empty() : statsCounter.snapshot();
+    }
+
+    /**
+     * Loads the value of the specified key into its slot, while holding the slot lock.
+     */
+    private V load(Slot<V> slot, K key) {
+        if (slot.loadingThread == Thread.currentThread()) {
+            throw new IllegalStateException("Recursive load of cache key " + key);
+        }
+        if (statsCounter != null) {
+            statsCounter.recordMiss();
+        }
+        slot.loadingThread = Thread.currentThread();
+        try {
+            V value = loader.load(key);
+            slot.value = value;
+            return value;
+        } finally {
+            slot.loadingThread = null;
+        }
+    }
+
+    private SlotClassValue<V> classValueFor(K key) {
+        int flags = key instanceof ClassKey ? ((ClassKey) key).keyFlags() : 0;
+        if (flags < 0 || flags >= MAX_FLAG_COMBINATIONS) {
+            throw new IllegalArgumentException("Flags " + flags + " of cache key " + key + " are out of range");
+        }
+        AtomicReferenceArray<SlotClassValue<V>> currentClassValues = classValues;
+        SlotClassValue<V> classValue = currentClassValues.get(flags);
+        if (classValue == null) {
+            currentClassValues.compareAndSet(flags, null, new SlotClassValue<>());
+            classValue = currentClassValues.get(flags);
+        }
+        return classValue;
+    }
+
+    private static Class<?> classOf(Object key) {
+        if (key instanceof ClassKey) {
+            return ((ClassKey) key).keyClass();
+        } else if (key instanceof Class) {
+            return (Class<?>) key;
+        } else {
+            throw new IllegalArgumentException("Cache key " + key + " is neither a class nor a ClassKey");
+        }
+    }
+
+    private static final class SlotClassValue<V> extends ClassValue<Slot<V>> {
+        @Override
+        protected Slot<V> computeValue(Class<?> type) {
+            return new Slot<>();
+        }
+    }
+
+    /**
+     * Holds the value of a key, null until it is loaded. Loads are done while holding the slot lock.
+     */
+    private static final class Slot<V> {
+        private volatile V value;
+        private Thread loadingThread;
+    }
+
+    public static class Factory implements CacheFactory {
+        @Override
+        public <K, V> Cache<K, V> createCache(CacheParameters<K, V> cacheParameters) {
+            return new ClassValueCache<>(cacheParameters);
+        }
+
+        @Override
+        public Set<CacheCapability> capabilities() {
+            return EnumSet.of(CacheCapability.CONCURRENT, CacheCapability.INVALIDATION);
+        }
+    }
+}
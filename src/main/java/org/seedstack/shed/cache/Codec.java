@@ -0,0 +1,26 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts values to and from a compact binary form, for storing cache entries outside of the heap or across JVM
+ * restarts. Codecs should store references to classes and members symbolically, by name, and throw an exception when
+ * such a reference can no longer be resolved.
+ *
+ * @param <T> the type of the values.
+ * @see Codecs
+ */
+public interface Codec<T> {
+    void write(T value, DataOutput output) throws IOException;
+
+    T read(DataInput input) throws IOException;
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Built-in codecs for {@link CacheSnapshot} and other binary representations of cache entries.
+ */
+public final class Codecs {
+    private static final int CHUNK_SIZE = 8192;
+
+    private Codecs() {
+        // no instantiation allowed
+    }
+
+    /**
+     * Returns a codec for strings of any length, written as their number of UTF-8 bytes followed by these bytes.
+     *
+     * @return the codec.
+     */
+    public static Codec<String> string() {
+        return new Codec<String>() {
+            @Override
+            public void write(String value, DataOutput output) throws IOException {
+                writeString(value, output);
+            }
+
+            @Override
+            public String read(DataInput input) throws IOException {
+                return readString(input);
+            }
+        };
+    }
+
+    /**
+     * Returns a codec for classes, written as their name like {@link #string()} and resolved with the specified class
+     * loader without being initialized. Writing a class that the class loader doesn't resolve to the same class, as is
+     * the case for classes defined by unrelated class loaders, and reading a class that cannot be found anymore throw
+     * an {@link IOException}, so that such entries are neither saved nor restored.
+     *
+     * @param classLoader the class loader resolving the classes.
+     * @return the codec.
+     */
+    public static Codec<Class<?>> classReference(ClassLoader classLoader) {
+        return new Codec<Class<?>>() {
+            @Override
+            public void write(Class<?> value, DataOutput output) throws IOException {
+                if (resolve(value.getName()) != value) {
+                    throw new IOException("Class " + value.getName() + " is not visible from " + classLoader);
+                }
+                writeString(value.getName(), output);
+            }
+
+            @Override
+            public Class<?> read(DataInput input) throws IOException {
+                return resolve(readString(input));
+            }
+
+            private Class<?> resolve(String name) throws IOException {
+                try {
+                    return Class.forName(name, false, classLoader);
+                } catch (ClassNotFoundException | LinkageError e) {
+                    throw new IOException("Unable to resolve class " + name, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a codec for lists, written as their size followed by their elements. The list grows as its elements are
+     * read, so that an invalid size fails when the input runs out instead of allocating for the size.
+     *
+     * @param elementCodec the codec of the elements.
+     * @param <E>          the type of the elements.
+     * @return the codec.
+     */
+    public static <E> Codec<List<E>> list(Codec<E> elementCodec) {
+        return new Codec<List<E>>() {
+            @Override
+            public void write(List<E> value, DataOutput output) throws IOException {
+                output.writeInt(value.size());
+                for (E element : value) {
+                    elementCodec.write(element, output);
+                }
+            }
+
+            @Override
+            public List<E> read(DataInput input) throws IOException {
+                int size = input.readInt();
+                if (size < 0) {
+                    throw new IOException("Invalid list size " + size);
+                }
+                List<E> list = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; i++) {
+                    list.add(elementCodec.read(input));
+                }
+                return list;
+            }
+        };
+    }
+
+    private static void writeString(String value, DataOutput output) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        return new String(readBytes(input, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the specified number of bytes, growing the array by chunks as they are read so that an invalid length
+     * throws an {@link java.io.EOFException} at the end of the input instead of allocating up to 2 GB.
+     */
+    private static byte[] readBytes(DataInput input, int length) throws IOException {
+        byte[] bytes = new byte[Math.min(length, CHUNK_SIZE)];
+        int read = 0;
+        while (true) {
+            input.readFully(bytes, read, bytes.length - read);
+            read = bytes.length;
+            if (read == length) {
+                return bytes;
+            }
+            bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+        }
+    }
+}
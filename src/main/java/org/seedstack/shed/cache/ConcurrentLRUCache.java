@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A bounded LRU cache split into independently locked segments. Each segment evicts its own least recently used
+ * entries. The loading function is invoked outside of any lock and concurrent misses on the same key wait for a
+ * single load.
+ */
+public class ConcurrentLRUCache<K, V> extends AbstractSegmentedCache<K, V> {
+    private ConcurrentLRUCache(CacheParameters<K, V> cacheParameters) {
+        super(cacheParameters, LRUSegment::new);
+    }
+
+    private static final class LRUSegment<K, V> extends Segment<K, V> {
+        private final NodeDeque<K, V> accessOrder = new NodeDeque<>();
+        private long maxWeight;
+
+        private LRUSegment(int initialSize, int maxSize, long maxWeight) {
+            super(initialSize);
+            this.maxWeight = maxWeight;
+        }
+
+        @Override
+        void onAccess(Node<K, V> node) {
+            accessOrder.moveToLast(node);
+        }
+
+        @Override
+        void onInsert(Node<K, V> node) {
+            accessOrder.addLast(node);
+            while (accessOrder.weight() > maxWeight) {
+                evict(accessOrder.peekFirst());
+            }
+        }
+
+        @Override
+        void onRemove(Node<K, V> node) {
+            accessOrder.remove(node);
+        }
+
+        @Override
+        void resize(long maxWeight) {
+            this.maxWeight = maxWeight;
+            while (accessOrder.weight() > maxWeight) {
+                evict(accessOrder.peekFirst());
+            }
+        }
+    }
+
+    public static class Factory implements CacheFactory {
+        @Override
+        public <K, V> Cache<K, V> createCache(CacheParameters<K, V> cacheParameters) {
+            return new ConcurrentLRUCache<>(cacheParameters);
+        }
+
+        @Override
+        public Set<CacheCapability> capabilities() {
+            return EnumSet.allOf(CacheCapability.class);
+        }
+    }
+}
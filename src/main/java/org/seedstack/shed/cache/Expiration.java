@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.time.Duration;
+
+/**
+ * Computes the expiration time of nodes from the expiration durations of {@link CacheParameters}.
+ */
+final class Expiration {
+    private static final long MAX_DURATION = Long.MAX_VALUE >>> 2;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+
+    private Expiration(Duration expireAfterWrite, Duration expireAfterAccess) {
+        expireAfterWriteNanos = toNanos(expireAfterWrite);
+        expireAfterAccessNanos = toNanos(expireAfterAccess);
+    }
+
+    /**
+     * Returns the expiration configured in the specified parameters or null if entries never expire.
+     */
+    static Expiration of(CacheParameters<?, ?> cacheParameters) {
+        if (cacheParameters.getExpireAfterWrite() == null && cacheParameters.getExpireAfterAccess() == null) {
+            return null;
+        }
+        return new Expiration(cacheParameters.getExpireAfterWrite(), cacheParameters.getExpireAfterAccess());
+    }
+
+    boolean isAccessBased() {
+        return expireAfterAccessNanos != MAX_DURATION;
+    }
+
+    long expirationTime(Node<?, ?> node) {
+        return Math.min(node.writeTime + expireAfterWriteNanos, node.accessTime + expireAfterAccessNanos);
+    }
+
+    boolean hasExpired(Node<?, ?> node, long now) {
+        return expirationTime(node) - now <= 0;
+    }
+
+    /**
+     * Converts the specified duration to nanoseconds, capped so that adding it to a nano time doesn't overflow.
+     */
+    static long toNanos(Duration duration) {
+        if (duration == null) {
+            return MAX_DURATION;
+        }
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException("Expiration duration cannot be negative: " + duration);
+        }
+        return duration.compareTo(Duration.ofNanos(MAX_DURATION)) > 0 ? MAX_DURATION : duration.toNanos();
+    }
+}
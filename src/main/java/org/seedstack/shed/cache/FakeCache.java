@@ -7,18 +7,60 @@
  */
 package org.seedstack.shed.cache;
 
-import java.util.function.Function;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class FakeCache<K, V> implements Cache<K, V> {
-    private final Function<? super K, ? extends V> loadingFunction;
+    private final Loader<K, V> loader;
+    private final StatsCounter statsCounter;
 
     private FakeCache(CacheParameters<K, V> cacheParameters) {
-        loadingFunction = cacheParameters.getLoadingFunction();
+        statsCounter = StatsCounter.of(cacheParameters);
+        loader = new Loader<>(cacheParameters, statsCounter);
     }
 
     @Override
     public V get(K key) {
-        return loadingFunction.apply(key);
+        if (statsCounter != null) {
+            statsCounter.recordMiss();
+        }
+        return loader.load(key);
+    }
+
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        Set<K> keySet = new LinkedHashSet<>();
+        keys.forEach(keySet::add);
+        if (statsCounter != null) {
+            statsCounter.recordMisses(keySet.size());
+        }
+        Map<K, V> loadedValues = loader.loadAll(keySet);
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : keySet) {
+            V value = loadedValues.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        // nothing is retained
+    }
+
+    @Override
+    public void invalidateAll() {
+        // nothing is retained
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.empty() : statsCounter.snapshot();
     }
 
     public static class Factory implements CacheFactory {
@@ -26,5 +68,10 @@ public class FakeCache<K, V> implements Cache<K, V> {
         public <K, V> Cache<K, V> createCache(CacheParameters<K, V> cacheParameters) {
             return new FakeCache<>(cacheParameters);
         }
+
+        @Override
+        public Set<CacheCapability> capabilities() {
+            return EnumSet.allOf(CacheCapability.class);
+        }
     }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable hash table built with two-level perfect hashing. Keys are first spread into as many buckets as there
+ * are keys, then each bucket gets its own table, with a number of slots at least the square of its number of keys
+ * and a hash seed chosen so that its keys don't collide. A lookup thus computes two hashes and compares a single
+ * key, without any lock. Keys whose hash codes are equal can't be separated and all but one of them are left out,
+ * which the builder reports. Keys cannot be added but entries can be removed, their slot being emptied.
+ */
+final class FrozenTable<K, V> {
+    private static final int MAX_SEED_ATTEMPTS = 32;
+    private final int bucketShift;
+    private final int bucketMask;
+    /**
+     * For each bucket, the offset of its first slot, the mask of its slot count (-1 if empty) and its hash seed.
+     */
+    private final int[] buckets;
+    private final Object[] keys;
+    private final AtomicReferenceArray<Object> values;
+    private final int size;
+    private final boolean identityKeys;
+
+    private FrozenTable(int bucketCount, int[] buckets, Object[] keys, AtomicReferenceArray<Object> values, int size,
+            boolean identityKeys) {
+        this.bucketShift = 32 - Integer.numberOfTrailingZeros(bucketCount);
+        this.bucketMask = bucketCount - 1;
+        this.buckets = buckets;
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+        this.identityKeys = identityKeys;
+    }
+
+    static <K, V> FrozenTable<K, V> of(Map<K, V> entries) {
+        return of(entries, false, (key, value) -> {
+        });
+    }
+
+    /**
+     * Builds a table of the specified entries, comparing keys by identity if specified or with equals otherwise. The
+     * entries that cannot be placed because another key has the same hash code are handed to the specified consumer.
+     */
+    static <K, V> FrozenTable<K, V> of(Map<K, V> entries, boolean identityKeys,
+            BiConsumer<? super K, ? super V> leftOut) {
+        int bucketCount = Integer.highestOneBit(Math.max(1, entries.size()) * 2 - 1);
+        int bucketShift = 32 - Integer.numberOfTrailingZeros(bucketCount);
+        List<List<Map.Entry<K, V>>> entriesByBucket = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            entriesByBucket.add(new ArrayList<>(1));
+        }
+        for (Map.Entry<K, V> entry : entries.entrySet()) {
+            int bucket = bucketOf(hashOf(entry.getKey(), identityKeys), bucketShift, bucketCount - 1);
+            entriesByBucket.get(bucket).add(entry);
+        }
+
+        int[] buckets = new int[bucketCount * 3];
+        int slotCount = 0;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            int keyCount = entriesByBucket.get(bucket).size();
+            int bucketSlots = keyCount == 0 ? 0 : Integer.highestOneBit(keyCount * keyCount * 2 - 1);
+            buckets[bucket * 3] = slotCount;
+            buckets[bucket * 3 + 1] = bucketSlots - 1;
+            slotCount += bucketSlots;
+        }
+
+        Object[] keys = new Object[slotCount];
+        AtomicReferenceArray<Object> values = new AtomicReferenceArray<>(slotCount);
+        int size = 0;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            List<Map.Entry<K, V>> bucketEntries = entriesByBucket.get(bucket);
+            if (!bucketEntries.isEmpty()) {
+                int offset = buckets[bucket * 3];
+                int mask = buckets[bucket * 3 + 1];
+                int seed = findSeed(bucketEntries, mask, identityKeys);
+                buckets[bucket * 3 + 2] = seed;
+                for (Map.Entry<K, V> entry : bucketEntries) {
+                    int slot = offset + (mix(hashOf(entry.getKey(), identityKeys), seed) & mask);
+                    if (keys[slot] == null) {
+                        keys[slot] = entry.getKey();
+                        values.set(slot, entry.getValue());
+                        size++;
+                    } else {
+                        leftOut.accept(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+        return new FrozenTable<>(bucketCount, buckets, keys, values, size, identityKeys);
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        int slot = slotOf(key);
+        return slot < 0 ? null : (V) values.get(slot);
+    }
+
+    /**
+     * Removes the entry of the specified key and returns its value, or null if the table has no such entry.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(Object key) {
+        int slot = slotOf(key);
+        return slot < 0 ? null : (V) values.getAndSet(slot, null);
+    }
+
+    /**
+     * Returns the number of entries placed when the table was built.
+     */
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            Object value = values.get(slot);
+            if (value != null) {
+                action.accept((K) keys[slot], (V) value);
+            }
+        }
+    }
+
+    private int slotOf(Object key) {
+        int hashCode = hashOf(key, identityKeys);
+        int bucket = bucketOf(hashCode, bucketShift, bucketMask) * 3;
+        int mask = buckets[bucket + 1];
+        if (mask < 0) {
+            return -1;
+        }
+        int slot = buckets[bucket] + (mix(hashCode, buckets[bucket + 2]) & mask);
+        Object candidate = keys[slot];
+        if (candidate == key || !identityKeys && candidate != null && candidate.equals(key)) {
+            return slot;
+        }
+        return -1;
+    }
+
+    private static <K, V> int findSeed(List<Map.Entry<K, V>> bucketEntries, int mask, boolean identityKeys) {
+        boolean[] used = new boolean[mask + 1];
+        for (int seed = 1; seed <= MAX_SEED_ATTEMPTS; seed++) {
+            boolean collision = false;
+            for (Map.Entry<K, V> entry : bucketEntries) {
+                int slot = mix(hashOf(entry.getKey(), identityKeys), seed) & mask;
+                if (used[slot]) {
+                    collision = true;
+                    break;
+                }
+                used[slot] = true;
+            }
+            if (!collision) {
+                return seed;
+            }
+            Arrays.fill(used, false);
+        }
+        // only keys with equal hash codes collide for every seed, the colliding ones are left out
+        return 1;
+    }
+
+    private static int hashOf(Object key, boolean identityKeys) {
+        return identityKeys ? System.identityHashCode(key) : key.hashCode();
+    }
+
+    private static int bucketOf(int hashCode, int bucketShift, int bucketMask) {
+        // the shift is 32 (a no-op) if there is a single bucket, which the mask then selects
+        return (mix(hashCode, 0) >>> bucketShift) & bucketMask;
+    }
+
+    private static int mix(int hashCode, int seed) {
+        // murmur3 finalizer
+        int h = hashCode ^ (seed * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * An {@link AsyncCache} storing futures in a regular cache. The loading function of the underlying cache only
+ * submits the actual load to the executor, so misses never block. Each key maps to a slot holding its current future,
+ * replaced in place when it is found failed or null, only if it is still the same future, so that a newer load is
+ * never discarded.
+ *
+ * <p>The name, tracing and near caching of the parameters apply to the cache of futures, while the settings that
+ * apply to the loaded values themselves are rejected.</p>
+ */
+final class FutureCache<K, V> implements AsyncCache<K, V> {
+    private final Function<? super K, ? extends V> loadingFunction;
+    private final Executor executor;
+    private final Cache<K, Slot<V>> cache;
+
+    FutureCache(CacheParameters<K, V> cacheParameters, Executor executor) {
+        if (cacheParameters.getMaximumWeight() >= 0 || cacheParameters.getRefreshAfterWrite() != null
+                || cacheParameters.getNegativeExpireAfterWrite() != null) {
+            throw new IllegalArgumentException("Asynchronous caches cannot be bounded by weight, refreshed or cache "
+                    + "null results and failures as they store futures instead of values");
+        }
+        if (cacheParameters.getValueCodec() != null || cacheParameters.getOffHeapFile() != null
+                || cacheParameters.getSnapshot() != null || cacheParameters.getBatchLoadingFunction() != null) {
+            throw new IllegalArgumentException("Asynchronous caches cannot store their values off-heap, be "
+                    + "snapshotted or load in batches as they store futures instead of values");
+        }
+        if (cacheParameters.getHotKeysSize() > 0) {
+            throw new IllegalArgumentException("Asynchronous caches cannot track hot keys as their load time would "
+                    + "only be the time to submit the load");
+        }
+        this.loadingFunction = cacheParameters.getLoadingFunction();
+        this.executor = executor;
+        CacheParameters<K, Slot<V>> slotParameters = cacheParameters.derive(key -> new Slot<>(load(key)));
+        slotParameters.setName(cacheParameters.getName());
+        slotParameters.setRegistered(cacheParameters.isRegistered());
+        slotParameters.setTrace(cacheParameters.getTrace());
+        slotParameters.setNearCacheSize(cacheParameters.getNearCacheSize());
+        // explicitly invalidated futures must be discarded
+        Set<CacheCapability> requiredCapabilities = CacheCapability.requiredBy(slotParameters);
+        requiredCapabilities.add(CacheCapability.INVALIDATION);
+        this.cache = Cache.Factories.create(Cache.Factories.select(requiredCapabilities), slotParameters);
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(K key) {
+        Slot<V> slot = cache.get(key);
+        CompletableFuture<V> future = slot.future;
+        if (future.isDone() && (future.isCompletedExceptionally() || future.join() == null)) {
+            synchronized (slot) {
+                if (slot.completedInLoad) {
+                    // returned as is to the call that created the slot
+                    slot.completedInLoad = false;
+                } else if (slot.future == future) {
+                    slot.future = load(key);
+                }
+                return slot.future;
+            }
+        }
+        return future;
+    }
+
+    private CompletableFuture<V> load(K key) {
+        return CompletableFuture.supplyAsync(() -> loadingFunction.apply(key), executor);
+    }
+
+    @Override
+    public void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    @Override
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static final class Slot<V> {
+        private volatile CompletableFuture<V> future;
+        private boolean completedInLoad;
+
+        private Slot(CompletableFuture<V> future) {
+            this.future = future;
+            this.completedInLoad = future.isDone();
+        }
+    }
+}
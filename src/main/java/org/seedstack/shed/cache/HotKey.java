@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+/**
+ * A key among the most requested or the most expensive to load of a cache, as reported by {@link
+ * CacheStats#getFrequentKeys()} and {@link CacheStats#getExpensiveKeys()}. The estimate is the number of requests or
+ * the load time in nanoseconds of the key. It may over-estimate the actual value, by at most {@link #getError()}.
+ */
+public final class HotKey {
+    private final Object key;
+    private final long estimate;
+    private final long error;
+
+    HotKey(Object key, long estimate, long error) {
+        this.key = key;
+        this.estimate = estimate;
+        this.error = error;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public long getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * Returns the maximum over-estimation of the value of the key, inherited from the key it replaced in the summary.
+     *
+     * @return the maximum error of the estimate.
+     */
+    public long getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + estimate + (error > 0 ? " (error " + error + ")" : "");
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * The most requested and the most expensive to load keys of a cache, each tracked by a Space-Saving summary of
+ * bounded size. A summary counts a fixed number of keys: a key that is not counted replaces the one with the lowest
+ * count and inherits this count as its error. Every key occurring more than a share of {@code 1 / capacity} of the
+ * total is thus guaranteed to be counted. The counters are kept in a binary min-heap, so that the lowest count is
+ * found and updated in logarithmic time.
+ *
+ * <p>All loads are counted with their duration, but requests are sampled under contention: a request is dropped if
+ * another thread is updating the summary, so that the callers never wait. The request counts are then lower than the
+ * actual ones, the keys requested concurrently the most being under-counted the most, and the guarantee above applies
+ * to the counted requests only.</p>
+ *
+ * <p>The counted keys are strongly referenced until they are replaced by other keys.</p>
+ */
+final class HotKeys<K> {
+    private static final int CAPACITY_FACTOR = 16;
+    private final int size;
+    private final Summary<K> frequentKeys;
+    private final Summary<K> expensiveKeys;
+
+    HotKeys(CacheParameters<K, ?> cacheParameters) {
+        this.size = cacheParameters.getHotKeysSize();
+        int capacity = size * CAPACITY_FACTOR;
+        this.frequentKeys = new Summary<>(capacity, cacheParameters.isIdentityKeys());
+        this.expensiveKeys = new Summary<>(capacity, cacheParameters.isIdentityKeys());
+    }
+
+    /**
+     * Returns parameters whose loading functions record the load time of the keys in these hot keys.
+     */
+    <V> CacheParameters<K, V> attachTo(CacheParameters<K, V> cacheParameters) {
+        CacheParameters<K, V> attached = cacheParameters.copy();
+        Function<? super K, ? extends V> loadingFunction = cacheParameters.getLoadingFunction();
+        if (loadingFunction != null) {
+            attached.setLoadingFunction(key -> {
+                long start = System.nanoTime();
+                try {
+                    return loadingFunction.apply(key);
+                } finally {
+                    expensiveKeys.offer(key, System.nanoTime() - start);
+                }
+            });
+        }
+        Function<Set<K>, Map<K, V>> batchLoadingFunction = cacheParameters.getBatchLoadingFunction();
+        if (batchLoadingFunction != null) {
+            attached.setBatchLoadingFunction(keys -> {
+                long start = System.nanoTime();
+                try {
+                    return batchLoadingFunction.apply(keys);
+                } finally {
+                    // the time of a batch is shared evenly by its keys
+                    long loadTime = (System.nanoTime() - start) / Math.max(1, keys.size());
+                    for (K key : keys) {
+                        expensiveKeys.offer(key, loadTime);
+                    }
+                }
+            });
+        }
+        return attached;
+    }
+
+    void recordRequest(K key) {
+        frequentKeys.tryOffer(key, 1);
+    }
+
+    CacheStats addTo(CacheStats cacheStats) {
+        return cacheStats.withHotKeys(frequentKeys.top(size), expensiveKeys.top(size));
+    }
+
+    private static final class Summary<K> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<K, Counter<K>> counters;
+        private final Counter<K>[] heap;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        private Summary(int capacity, boolean identityKeys) {
+            this.counters = identityKeys ? new IdentityHashMap<>(capacity * 2) : new HashMap<>(capacity * 2);
+            this.heap = new Counter[capacity];
+        }
+
+        private void offer(K key, long weight) {
+            lock.lock();
+            try {
+                add(key, weight);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void tryOffer(K key, long weight) {
+            if (lock.tryLock()) {
+                try {
+                    add(key, weight);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private List<HotKey> top(int topSize) {
+            List<HotKey> hotKeys = new ArrayList<>(heap.length);
+            lock.lock();
+            try {
+                for (int i = 0; i < size; i++) {
+                    hotKeys.add(new HotKey(heap[i].key, heap[i].count, heap[i].error));
+                }
+            } finally {
+                lock.unlock();
+            }
+            hotKeys.sort(Comparator.comparingLong(HotKey::getEstimate).reversed());
+            return hotKeys.size() > topSize ? new ArrayList<>(hotKeys.subList(0, topSize)) : hotKeys;
+        }
+
+        private void add(K key, long weight) {
+            Counter<K> counter = counters.get(key);
+            if (counter != null) {
+                counter.count += weight;
+                siftDown(counter.index);
+            } else if (size < heap.length) {
+                counter = new Counter<>(key, weight, 0);
+                counters.put(key, counter);
+                heap[size] = counter;
+                siftUp(size++);
+            } else {
+                // the new key takes the place of the minimum at the root
+                Counter<K> minimum = heap[0];
+                counters.remove(minimum.key);
+                counter = new Counter<>(key, minimum.count + weight, minimum.count);
+                counters.put(key, counter);
+                heap[0] = counter;
+                siftDown(0);
+            }
+        }
+
+        private void siftUp(int index) {
+            Counter<K> counter = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (heap[parent].count <= counter.count) {
+                    break;
+                }
+                place(heap[parent], index);
+                index = parent;
+            }
+            place(counter, index);
+        }
+
+        private void siftDown(int index) {
+            Counter<K> counter = heap[index];
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                    child++;
+                }
+                if (counter.count <= heap[child].count) {
+                    break;
+                }
+                place(heap[child], index);
+                index = child;
+            }
+            place(counter, index);
+        }
+
+        private void place(Counter<K> counter, int index) {
+            heap[index] = counter;
+            counter.index = index;
+        }
+    }
+
+    private static final class Counter<K> {
+        private final K key;
+        private final long error;
+        private long count;
+        private int index;
+
+        private Counter(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
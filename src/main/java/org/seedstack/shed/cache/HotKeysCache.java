@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache decorator counting the requested keys in {@link HotKeys} and adding the most requested and the most
+ * expensive to load keys to the statistics of another cache.
+ */
+final class HotKeysCache<K, V> implements Cache<K, V> {
+    private final Cache<K, V> delegate;
+    private final HotKeys<K> hotKeys;
+
+    HotKeysCache(Cache<K, V> delegate, HotKeys<K> hotKeys) {
+        this.delegate = delegate;
+        this.hotKeys = hotKeys;
+    }
+
+    Cache<K, V> delegate() {
+        return delegate;
+    }
+
+    @Override
+    public V get(K key) {
+        hotKeys.recordRequest(key);
+        return delegate.get(key);
+    }
+
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        List<K> specifiedKeys = new ArrayList<>();
+        for (K key : keys) {
+            hotKeys.recordRequest(key);
+            specifiedKeys.add(key);
+        }
+        return delegate.getAll(specifiedKeys);
+    }
+
+    @Override
+    public void invalidate(K key) {
+        delegate.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        delegate.invalidateAll();
+    }
+
+    @Override
+    public void freeze() {
+        delegate.freeze();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return hotKeys.addTo(delegate.stats());
+    }
+}
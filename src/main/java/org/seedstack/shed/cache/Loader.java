@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Loads values with the loading functions of {@link CacheParameters}, recording load statistics if enabled. When
+ * only a batch loading function is configured, single keys are loaded as singleton batches.
+ */
+final class Loader<K, V> {
+    private final Function<? super K, ? extends V> loadingFunction;
+    private final Function<Set<K>, Map<K, V>> batchLoadingFunction;
+    private final StatsCounter statsCounter;
+
+    Loader(CacheParameters<K, V> cacheParameters, StatsCounter statsCounter) {
+        this.loadingFunction = cacheParameters.getLoadingFunction();
+        this.batchLoadingFunction = cacheParameters.getBatchLoadingFunction();
+        this.statsCounter = statsCounter;
+    }
+
+    V load(K key) {
+        if (loadingFunction == null && batchLoadingFunction != null) {
+            return loadAll(Collections.singleton(key)).get(key);
+        }
+        return statsCounter == null ? loadingFunction.apply(key) : statsCounter.load(loadingFunction, key);
+    }
+
+    /**
+     * Loads the specified keys, with a single call to the batch loading function if any. The returned map has no
+     * entry for keys whose value is null.
+     */
+    Map<K, V> loadAll(Set<K> keys) {
+        if (batchLoadingFunction == null) {
+            Map<K, V> values = new HashMap<>();
+            for (K key : keys) {
+                V value = load(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+            return values;
+        }
+        long start = statsCounter == null ? 0L : System.nanoTime();
+        Map<K, V> values;
+        try {
+            values = batchLoadingFunction.apply(keys);
+        } catch (RuntimeException | Error e) {
+            if (statsCounter != null) {
+                statsCounter.recordLoadFailure(System.nanoTime() - start);
+            }
+            throw e;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordLoadSuccess(System.nanoTime() - start);
+        }
+        return values == null ? Collections.emptyMap() : values;
+    }
+
+    boolean isBatching() {
+        return batchLoadingFunction != null;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * A cache with {@code long} keys, which are never boxed when looking up values.
+ *
+ * <p>Primitive caches are not created by a {@link CacheFactory} and only honor the maximum size, concurrency level
+ * and statistics settings of {@link CacheParameters}. Loads are not coalesced: concurrent misses on the same key can
+ * each invoke the loading function. Entries are held strongly until evicted, so results computed from classes of
+ * discardable class loaders should be memoized with a {@link ClassValue} instead.</p>
+ *
+ * @param <V> the type of the values.
+ */
+@FunctionalInterface
+public interface LongCache<V> {
+    static <V> LongCache<V> create(LongFunction<? extends V> loadingFunction) {
+        return new StripedLongCache<>(new CacheParameters<>(), loadingFunction);
+    }
+
+    /**
+     * Creates a bounded cache with the specified parameters. Only the maximum size, concurrency level and statistics
+     * settings apply. The loading function is only invoked, with a boxed key, on misses.
+     *
+     * @param cacheParameters the cache parameters.
+     * @param <V>             the type of the values.
+     * @return the cache.
+     */
+    static <V> LongCache<V> create(CacheParameters<Long, V> cacheParameters) {
+        Function<? super Long, ? extends V> loadingFunction = cacheParameters.getLoadingFunction();
+        return new StripedLongCache<>(cacheParameters, loadingFunction::apply);
+    }
+
+    V get(long key);
+
+    /**
+     * Discards the entry of the specified key if any.
+     *
+     * @param key the key to invalidate.
+     * @throws UnsupportedOperationException if the cache doesn't support invalidation.
+     */
+    default void invalidate(long key) {
+        throw new UnsupportedOperationException("Cache " + getClass().getName() + " doesn't support invalidation");
+    }
+
+    /**
+     * Discards all entries of the cache.
+     *
+     * @throws UnsupportedOperationException if the cache doesn't support invalidation.
+     */
+    default void invalidateAll() {
+        throw new UnsupportedOperationException("Cache " + getClass().getName() + " doesn't support invalidation");
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     *
+     * @return the cache statistics.
+     * @see Cache#stats()
+     */
+    default CacheStats stats() {
+        return CacheStats.empty();
+    }
+}
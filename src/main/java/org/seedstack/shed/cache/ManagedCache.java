@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache registered in the {@link CacheRegistry}. It delegates to a cache created from its own copy of the
+ * parameters, replaced when a reconfiguration cannot be applied in place.
+ */
+final class ManagedCache<K, V> implements Cache<K, V>, CacheMXBean {
+    private static final CacheLogger LOGGER = CacheLogger.of(ManagedCache.class);
+    private final String name;
+    private final CacheParameters<K, V> cacheParameters;
+    private CacheFactory cacheFactory;
+    private volatile Cache<K, V> delegate;
+
+    ManagedCache(CacheFactory cacheFactory, CacheParameters<K, V> cacheParameters) {
+        this.name = cacheParameters.getName();
+        this.cacheParameters = cacheParameters.copy();
+        this.cacheFactory = cacheFactory;
+        this.delegate = Cache.Factories.build(this.cacheFactory, this.cacheParameters);
+    }
+
+    @Override
+    public V get(K key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        return delegate.getAll(keys);
+    }
+
+    @Override
+    public void invalidate(K key) {
+        delegate.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        delegate.invalidateAll();
+    }
+
+    @Override
+    public void freeze() {
+        delegate.freeze();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return delegate.stats();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized String getPolicy() {
+        return CacheRegistry.policyOf(cacheFactory);
+    }
+
+    @Override
+    public synchronized void setPolicy(String policy) {
+        cacheFactory = CacheRegistry.resolvePolicy(policy);
+        delegate = Cache.Factories.build(cacheFactory, cacheParameters);
+        LOGGER.info("Changed policy of cache {} to {}", name, policy);
+    }
+
+    @Override
+    public synchronized int getMaxSize() {
+        return cacheParameters.getMaxSize();
+    }
+
+    @Override
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size of cache " + name + " must be positive: " + maxSize);
+        }
+        cacheParameters.scaleMaxSize(maxSize);
+        Cache<K, V> core = unwrap(delegate);
+        if (core instanceof ClassLoaderPartitionedCache) {
+            ((ClassLoaderPartitionedCache<K, V>) core).setMaxSize(maxSize);
+        } else if (!(core instanceof AbstractSegmentedCache)
+                || !((AbstractSegmentedCache<K, V>) core).setMaxSize(maxSize)) {
+            delegate = Cache.Factories.build(cacheFactory, cacheParameters);
+        }
+        LOGGER.info("Changed maximum size of cache {} to {}", name, maxSize);
+    }
+
+    @Override
+    public long getSize() {
+        return sizeOf(unwrap(delegate));
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacityOf(unwrap(delegate));
+    }
+
+    @Override
+    public long getHitCount() {
+        return delegate.stats().getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return delegate.stats().getMissCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return delegate.stats().getHitRate();
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return delegate.stats().getLoadSuccessCount();
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return delegate.stats().getLoadFailureCount();
+    }
+
+    @Override
+    public double getAverageLoadPenalty() {
+        return delegate.stats().getAverageLoadPenalty();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return delegate.stats().getEvictionCount();
+    }
+
+    @Override
+    public String[] getFrequentKeys() {
+        return toStrings(delegate.stats().getFrequentKeys());
+    }
+
+    @Override
+    public String[] getExpensiveKeys() {
+        return toStrings(delegate.stats().getExpensiveKeys());
+    }
+
+    /**
+     * Drops the partition of the specified class loader if the cache is partitioned by class loader, along with the
+     * entries of this class loader held by the near cache and the negative cache. Returns true if there was such a
+     * partition.
+     */
+    boolean evictClassLoader(ClassLoader classLoader) {
+        if (!evictClassLoader(delegate, classLoader)) {
+            return false;
+        }
+        LOGGER.info("Evicted class loader {} from cache {}", classLoader, name);
+        return true;
+    }
+
+    /**
+     * Drops the partition of the specified class loader from the specified cache, as built by {@link
+     * Cache.Factories#build(CacheFactory, CacheParameters)}, if it is partitioned by class loader. Returns true if
+     * there was such a partition.
+     */
+    static <K, V> boolean evictClassLoader(Cache<K, V> cache, ClassLoader classLoader) {
+        if (cache instanceof CanonicalKeyCache) {
+            cache = ((CanonicalKeyCache<K, V>) cache).delegate();
+        }
+        if (cache instanceof HotKeysCache) {
+            cache = ((HotKeysCache<K, V>) cache).delegate();
+        }
+        if (cache instanceof TracingCache) {
+            cache = ((TracingCache<K, V>) cache).delegate();
+        }
+        NearCache<K, V> nearCache = null;
+        if (cache instanceof NearCache) {
+            nearCache = (NearCache<K, V>) cache;
+            cache = nearCache.delegate();
+        }
+        NegativeCache<K, V> negativeCache = null;
+        if (cache instanceof NegativeCache) {
+            negativeCache = (NegativeCache<K, V>) cache;
+            cache = negativeCache.delegate();
+        }
+        if (!(cache instanceof ClassLoaderPartitionedCache)
+                || !((ClassLoaderPartitionedCache<K, V>) cache).evictClassLoader(classLoader)) {
+            return false;
+        }
+        if (negativeCache != null) {
+            negativeCache.clearNegatives();
+        }
+        if (nearCache != null) {
+            nearCache.clearTables();
+        }
+        return true;
+    }
+
+    private static <K, V> long sizeOf(Cache<K, V> core) {
+        if (core instanceof AbstractSegmentedCache) {
+            return ((AbstractSegmentedCache<K, V>) core).weightedSize();
+        } else if (core instanceof UnboundedCache) {
+            return ((UnboundedCache<K, V>) core).size();
+        } else if (core instanceof SimpleLRUCache) {
+            return ((SimpleLRUCache<K, V>) core).size();
+        } else if (core instanceof OffHeapCache) {
+            return ((OffHeapCache<K, V>) core).weightedSize();
+        } else if (core instanceof FakeCache) {
+            return 0;
+        } else if (core instanceof ClassLoaderPartitionedCache) {
+            long size = 0;
+            for (Cache<K, V> partition : ((ClassLoaderPartitionedCache<K, V>) core).partitions()) {
+                long partitionSize = sizeOf(partition);
+                if (partitionSize < 0) {
+                    return -1;
+                }
+                size += partitionSize;
+            }
+            return size;
+        } else {
+            return -1;
+        }
+    }
+
+    private long capacityOf(Cache<K, V> core) {
+        if (core instanceof AbstractSegmentedCache) {
+            return ((AbstractSegmentedCache<K, V>) core).capacity();
+        } else if (core instanceof SimpleLRUCache) {
+            return getMaxSize();
+        } else if (core instanceof OffHeapCache) {
+            return ((OffHeapCache<K, V>) core).capacity();
+        } else if (core instanceof FakeCache) {
+            return 0;
+        } else if (core instanceof ClassLoaderPartitionedCache) {
+            long capacity = 0;
+            for (Cache<K, V> partition : ((ClassLoaderPartitionedCache<K, V>) core).partitions()) {
+                long partitionCapacity = capacityOf(partition);
+                if (partitionCapacity < 0) {
+                    return -1;
+                }
+                capacity += partitionCapacity;
+            }
+            return capacity;
+        } else {
+            return -1;
+        }
+    }
+
+    private static String[] toStrings(List<HotKey> hotKeys) {
+        return hotKeys.stream().map(HotKey::toString).toArray(String[]::new);
+    }
+
+    private static <K, V> Cache<K, V> unwrap(Cache<K, V> cache) {
+        if (cache instanceof CanonicalKeyCache) {
+            cache = ((CanonicalKeyCache<K, V>) cache).delegate();
+        }
+        if (cache instanceof HotKeysCache) {
+            cache = ((HotKeysCache<K, V>) cache).delegate();
+        }
+        if (cache instanceof TracingCache) {
+            cache = ((TracingCache<K, V>) cache).delegate();
+        }
+        if (cache instanceof NearCache) {
+            cache = ((NearCache<K, V>) cache).delegate();
+        }
+        if (cache instanceof NegativeCache) {
+            cache = ((NegativeCache<K, V>) cache).delegate();
+        }
+        return cache;
+    }
+}
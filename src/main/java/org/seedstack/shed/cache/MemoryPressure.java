@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Scales down caches with {@link CacheParameters#setMemoryPressureShrinking(double, double) memory pressure
+ * shrinking} when the heap is nearly full. After each garbage collection, the occupancy of the tenured pool once
+ * collected is compared to the watermark of each cache: above it, the cache sheds a fraction of its capacity, evicting
+ * its coldest entries, and below a lower recovery mark it grows back by the same fraction up to its normal capacity.
+ * The occupancy is only recorded by the notification thread of the garbage collector: caches apply it at their next
+ * access, so that evictions are never run on this thread.
+ */
+final class MemoryPressure {
+    private static final CacheLogger LOGGER = CacheLogger.of(MemoryPressure.class);
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+    private static final double RECOVERY_RATIO = 0.9;
+    private static final double NO_OCCUPANCY = -1;
+    private static final List<WeakReference<AbstractSegmentedCache<?, ?>>> CACHES = new CopyOnWriteArrayList<>();
+    private static Listener listener;
+    private final double watermark;
+    private final double fraction;
+    private volatile double pendingOccupancy = NO_OCCUPANCY;
+    private double scale = 1;
+
+    private MemoryPressure(double watermark, double fraction) {
+        if (watermark <= 0 || watermark > 1 || fraction <= 0 || fraction >= 1) {
+            throw new IllegalArgumentException("Invalid memory pressure watermark " + watermark + " or fraction "
+                    + fraction + ", both must be between 0 and 1");
+        }
+        this.watermark = watermark;
+        this.fraction = fraction;
+    }
+
+    /**
+     * Returns the memory pressure shrinking configured in the specified parameters or null if it is disabled.
+     */
+    static MemoryPressure of(CacheParameters<?, ?> cacheParameters) {
+        if (cacheParameters.getMemoryPressureWatermark() <= 0) {
+            return null;
+        }
+        return new MemoryPressure(cacheParameters.getMemoryPressureWatermark(),
+                cacheParameters.getMemoryPressureFraction());
+    }
+
+    /**
+     * Subscribes the specified cache to the heap occupancy after garbage collections, as long as it is reachable.
+     */
+    static synchronized void register(AbstractSegmentedCache<?, ?> cache) {
+        if (listener == null) {
+            listener = Listener.install();
+        }
+        if (listener.isInstalled()) {
+            CACHES.add(new WeakReference<>(cache));
+        }
+    }
+
+    /**
+     * Removes the listener of garbage collections, which keeps the class loader of this class reachable, and
+     * unsubscribes the caches. Caches created afterwards install it again.
+     */
+    static synchronized void shutdown() {
+        if (listener != null) {
+            listener.remove();
+            listener = null;
+        }
+        CACHES.clear();
+    }
+
+    /**
+     * Records the specified heap occupancy, between 0 and 1, for the registered caches to apply at their next access.
+     */
+    static void notifyCaches(double occupancy) {
+        for (WeakReference<AbstractSegmentedCache<?, ?>> reference : CACHES) {
+            AbstractSegmentedCache<?, ?> cache = reference.get();
+            if (cache == null) {
+                CACHES.remove(reference);
+            } else {
+                cache.signalMemoryPressure(occupancy);
+            }
+        }
+    }
+
+    /**
+     * Records the specified heap occupancy until the cache applies it.
+     */
+    void signal(double occupancy) {
+        pendingOccupancy = occupancy;
+    }
+
+    /**
+     * Returns true if a heap occupancy was recorded since the cache last applied one.
+     */
+    boolean isPending() {
+        return pendingOccupancy != NO_OCCUPANCY;
+    }
+
+    /**
+     * Returns the heap occupancy recorded since the cache last applied one, or a negative value if there is none.
+     * Called while holding the cache lock. An occupancy recorded concurrently can be lost, the next garbage collection
+     * recording a new one.
+     */
+    double takePending() {
+        double occupancy = pendingOccupancy;
+        pendingOccupancy = NO_OCCUPANCY;
+        return occupancy;
+    }
+
+    /**
+     * Returns the factor applied to the capacity of the cache, between 0 and 1.
+     */
+    double scale() {
+        return scale;
+    }
+
+    /**
+     * Updates the scale for the specified heap occupancy, without going below the specified minimum. Returns true if
+     * the scale changed. Called while holding the cache lock.
+     */
+    boolean update(double occupancy, double minScale) {
+        double newScale;
+        if (occupancy >= watermark) {
+            newScale = Math.max(Math.min(1, minScale), scale * (1 - fraction));
+        } else if (occupancy < watermark * RECOVERY_RATIO) {
+            newScale = Math.min(1, scale / (1 - fraction));
+        } else {
+            return false;
+        }
+        if (newScale == scale) {
+            return false;
+        }
+        LOGGER.debug("Scaling cache capacity from {} to {} at heap occupancy {}", scale, newScale, occupancy);
+        scale = newScale;
+        return true;
+    }
+
+    /**
+     * Listens to garbage collections from the registration of the first cache until {@link #shutdown()}.
+     */
+    private static final class Listener implements NotificationListener {
+        private final MemoryPoolMXBean tenuredPool;
+        private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+        private Listener(MemoryPoolMXBean tenuredPool) {
+            this.tenuredPool = tenuredPool;
+        }
+
+        private static Listener install() {
+            MemoryPoolMXBean tenuredPool = findTenuredPool();
+            Listener listener = new Listener(tenuredPool);
+            if (tenuredPool == null) {
+                LOGGER.debug("No tenured memory pool found, caches won't shrink under memory pressure");
+                return listener;
+            }
+            for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (garbageCollector instanceof NotificationEmitter) {
+                    NotificationEmitter emitter = (NotificationEmitter) garbageCollector;
+                    emitter.addNotificationListener(listener, null, null);
+                    listener.emitters.add(emitter);
+                }
+            }
+            return listener;
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (GC_NOTIFICATION.equals(notification.getType())) {
+                onCollection(tenuredPool);
+            }
+        }
+
+        private boolean isInstalled() {
+            return !emitters.isEmpty();
+        }
+
+        private void remove() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (ListenerNotFoundException e) {
+                    LOGGER.debug("Garbage collection listener already removed", e);
+                }
+            }
+            emitters.clear();
+        }
+
+        private static void onCollection(MemoryPoolMXBean tenuredPool) {
+            MemoryUsage usage = tenuredPool.getCollectionUsage();
+            if (usage != null) {
+                long max = usage.getMax() > 0 ? usage.getMax() : usage.getCommitted();
+                if (max > 0) {
+                    notifyCaches((double) usage.getUsed() / max);
+                }
+            }
+        }
+
+        /**
+         * Returns the heap pool supporting usage thresholds with the largest maximum, which is the old generation of
+         * the generational collectors as their young pools don't support usage thresholds.
+         */
+        private static MemoryPoolMXBean findTenuredPool() {
+            MemoryPoolMXBean tenuredPool = null;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()
+                        && pool.isCollectionUsageThresholdSupported()
+                        && (tenuredPool == null || pool.getUsage().getMax() > tenuredPool.getUsage().getMax())) {
+                    tenuredPool = pool;
+                }
+            }
+            return tenuredPool;
+        }
+    }
+}
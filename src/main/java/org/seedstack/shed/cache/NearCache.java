@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache keeping the most recently read entries of another cache in a small direct-mapped table per thread, read and
+ * written without any synchronization. A hit in the table only reads the epoch of the near cache, a volatile counter
+ * incremented after each invalidation: a thread seeing a new epoch clears its table before using it. Null values are
+ * never kept in the tables.
+ *
+ * <p>Virtual threads bypass the tables, as they are too short-lived and numerous to amortize one, and go directly to
+ * the shared cache. Hits in the tables are not recorded in the {@link #stats() statistics} of the shared cache.</p>
+ */
+final class NearCache<K, V> implements Cache<K, V> {
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+    private static final Table BYPASS = new Table(0);
+    private final Cache<K, V> delegate;
+    private final AtomicLong epoch = new AtomicLong();
+    private final ThreadLocal<Table> tables;
+    private final boolean identityKeys;
+
+    NearCache(Cache<K, V> delegate, CacheParameters<K, V> cacheParameters) {
+        if (cacheParameters.getExpireAfterWrite() != null || cacheParameters.getExpireAfterAccess() != null
+                || cacheParameters.getRefreshAfterWrite() != null) {
+            throw new IllegalArgumentException("Near caching cannot be combined with expiration or refresh as the "
+                    + "thread tables would keep serving outdated values");
+        }
+        int size = Integer.highestOneBit(Math.max(1, cacheParameters.getNearCacheSize() * 2 - 1));
+        this.delegate = delegate;
+        this.identityKeys = cacheParameters.isIdentityKeys();
+        this.tables = ThreadLocal.withInitial(() -> isVirtual(Thread.currentThread()) ? BYPASS : new Table(size));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        Table table = tables.get();
+        if (table == BYPASS) {
+            return delegate.get(key);
+        }
+        // read the epoch before the shared cache so that a concurrent invalidation clears the table next time
+        long currentEpoch = epoch.get();
+        if (table.epoch != currentEpoch) {
+            table.clear(currentEpoch);
+        }
+        int index = table.indexOf(hash(key));
+        Object[] entries = table.entries;
+        Object tableKey = entries[index];
+        if (tableKey == key || !identityKeys && tableKey != null && tableKey.equals(key)) {
+            return (V) entries[index + 1];
+        }
+        V value = delegate.get(key);
+        if (value != null) {
+            entries[index] = key;
+            entries[index + 1] = value;
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        Table table = tables.get();
+        if (table == BYPASS) {
+            return delegate.getAll(keys);
+        }
+        long currentEpoch = epoch.get();
+        if (table.epoch != currentEpoch) {
+            table.clear(currentEpoch);
+        }
+        Map<K, V> values = new LinkedHashMap<>();
+        List<K> missingKeys = new ArrayList<>();
+        for (K key : keys) {
+            int index = table.indexOf(hash(key));
+            Object tableKey = table.entries[index];
+            if (tableKey == key || !identityKeys && tableKey != null && tableKey.equals(key)) {
+                values.put(key, (V) table.entries[index + 1]);
+            } else {
+                // reserve the position of the key in the returned map
+                values.put(key, null);
+                missingKeys.add(key);
+            }
+        }
+        if (!missingKeys.isEmpty()) {
+            Map<K, V> loadedValues = delegate.getAll(missingKeys);
+            for (K key : missingKeys) {
+                V value = loadedValues.get(key);
+                if (value == null) {
+                    values.remove(key);
+                } else {
+                    values.put(key, value);
+                    int index = table.indexOf(hash(key));
+                    table.entries[index] = key;
+                    table.entries[index + 1] = value;
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        delegate.invalidate(key);
+        // after the shared cache so that a thread cannot refill its table with the invalidated value
+        epoch.incrementAndGet();
+    }
+
+    @Override
+    public void invalidateAll() {
+        delegate.invalidateAll();
+        epoch.incrementAndGet();
+    }
+
+    @Override
+    public void freeze() {
+        delegate.freeze();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return delegate.stats();
+    }
+
+    /**
+     * Makes all threads clear their table before using it again, without invalidating the shared cache.
+     */
+    void clearTables() {
+        epoch.incrementAndGet();
+    }
+
+    Cache<K, V> delegate() {
+        return delegate;
+    }
+
+    private int hash(K key) {
+        return (identityKeys ? System.identityHashCode(key) : key.hashCode()) * 0x9E3779B9;
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            // virtual threads don't exist in the Java versions this library is compiled for
+            return MethodHandles.publicLookup()
+                    .findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A direct-mapped table storing each key next to its value so that a hit reads a single cache line.
+     */
+    private static final class Table {
+        private final Object[] entries;
+        private final int mask;
+        private long epoch;
+
+        private Table(int size) {
+            this.entries = new Object[size * 2];
+            this.mask = size - 1;
+        }
+
+        private int indexOf(int hash) {
+            return ((hash ^ (hash >>> 16)) & mask) << 1;
+        }
+
+        private void clear(long epoch) {
+            Arrays.fill(entries, null);
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cache decorator remembering the keys whose load returned null or failed, so they are not loaded again until
+ * their negative entry expires. Negative entries are kept in a separate map bounded by
+ * {@link CacheParameters#getNegativeMaxSize()}: when it is exceeded, expired entries are purged first, then arbitrary
+ * ones until a quarter of the budget is free again.
+ *
+ * <p>While a failure is remembered, callers get a new {@link IllegalStateException} caused by the original failure,
+ * so that they don't share and alter the same exception. An invalidation increments a generation counter: a load
+ * started before it doesn't leave a negative entry behind, even if it completes after the invalidation.</p>
+ */
+final class NegativeCache<K, V> implements Cache<K, V> {
+    private final Cache<K, V> delegate;
+    private final long expireAfterWriteNanos;
+    private final int maxSize;
+    private final ConcurrentMap<K, Negative> negatives = new ConcurrentHashMap<>();
+    private final ReentrantLock purgeLock = new ReentrantLock();
+    private final AtomicLong generation = new AtomicLong();
+
+    NegativeCache(Cache<K, V> delegate, CacheParameters<K, V> cacheParameters) {
+        this.delegate = delegate;
+        this.expireAfterWriteNanos = Expiration.toNanos(cacheParameters.getNegativeExpireAfterWrite());
+        this.maxSize = Math.max(1, cacheParameters.getNegativeMaxSize());
+    }
+
+    Cache<K, V> delegate() {
+        return delegate;
+    }
+
+    /**
+     * Forgets all the null results and failures, without invalidating the delegate cache.
+     */
+    void clearNegatives() {
+        negatives.clear();
+    }
+
+    @Override
+    public V get(K key) {
+        Negative negative = negatives.get(key);
+        if (negative != null) {
+            if (!negative.hasExpired(System.nanoTime())) {
+                if (negative.failure != null) {
+                    throw failureOf(key, negative);
+                }
+                return null;
+            }
+            negatives.remove(key, negative);
+        }
+        long loadGeneration = generation.get();
+        V value;
+        try {
+            value = delegate.get(key);
+        } catch (RuntimeException e) {
+            remember(key, e, loadGeneration);
+            throw e;
+        }
+        if (value == null) {
+            remember(key, null, loadGeneration);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        long now = System.nanoTime();
+        List<K> pendingKeys = new ArrayList<>();
+        for (K key : keys) {
+            Negative negative = negatives.get(key);
+            if (negative == null || negative.hasExpired(now)) {
+                pendingKeys.add(key);
+            } else if (negative.failure != null) {
+                throw failureOf(key, negative);
+            }
+        }
+        long loadGeneration = generation.get();
+        Map<K, V> values = delegate.getAll(pendingKeys);
+        for (K key : pendingKeys) {
+            if (!values.containsKey(key)) {
+                remember(key, null, loadGeneration);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        // before removing so that a concurrent load remembering this key sees it and backs off
+        generation.incrementAndGet();
+        negatives.remove(key);
+        delegate.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        negatives.clear();
+        delegate.invalidateAll();
+    }
+
+    @Override
+    public void freeze() {
+        delegate.freeze();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return delegate.stats();
+    }
+
+    private RuntimeException failureOf(K key, Negative negative) {
+        return new IllegalStateException("Loading cache key " + key + " failed recently and is not retried before "
+                + "its negative entry expires", negative.failure);
+    }
+
+    /**
+     * Remembers the null result or failure of the load of the specified key, started at the specified generation. The
+     * negative entry is discarded again if an invalidation happened since.
+     */
+    private void remember(K key, RuntimeException failure, long loadGeneration) {
+        Negative negative = new Negative(System.nanoTime() + expireAfterWriteNanos, failure);
+        negatives.put(key, negative);
+        if (generation.get() != loadGeneration) {
+            negatives.remove(key, negative);
+            return;
+        }
+        // a single thread purges while the others go on
+        if (negatives.size() > maxSize && purgeLock.tryLock()) {
+            try {
+                purge();
+            } finally {
+                purgeLock.unlock();
+            }
+        }
+    }
+
+    private void purge() {
+        long now = System.nanoTime();
+        negatives.values().removeIf(negative -> negative.hasExpired(now));
+        Iterator<Negative> iterator = negatives.values().iterator();
+        int excess = negatives.size() - (maxSize - maxSize / 4);
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static final class Negative {
+        private final long expirationTime;
+        private final RuntimeException failure;
+
+        private Negative(long expirationTime, RuntimeException failure) {
+            this.expirationTime = expirationTime;
+            this.failure = failure;
+        }
+
+        private boolean hasExpired(long now) {
+            return expirationTime - now <= 0;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+/**
+ * A cache entry. In segmented caches, nodes are linked into the eviction policy queues and the timer wheel of their
+ * segment, and are only accessed while holding the segment lock. The access time can also be updated without a lock
+ * by caches that do not order their entries.
+ */
+final class Node<K, V> {
+    static final byte WINDOW = 0;
+    static final byte PROBATION = 1;
+    static final byte PROTECTED = 2;
+    final K key;
+    final int hash;
+    V value;
+    int weight = 1;
+    byte queue;
+    Node<K, V> previous;
+    Node<K, V> next;
+    long writeTime;
+    // the write time, or the time of the last failed or null reload so that reloads back off
+    long refreshTime;
+    volatile long accessTime;
+    long timerTime;
+    Node<K, V> previousInTimer;
+    Node<K, V> nextInTimer;
+
+    Node(K key, int hash, V value) {
+        this.key = key;
+        this.hash = hash;
+        this.value = value;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+/**
+ * An intrusive doubly-linked deque of nodes, ordered from the least recently to the most recently added or moved
+ * node. A node can only be linked in one deque at a time. The deque also keeps the total weight of its nodes.
+ */
+final class NodeDeque<K, V> {
+    private Node<K, V> first;
+    private Node<K, V> last;
+    private int size;
+    private long weight;
+
+    int size() {
+        return size;
+    }
+
+    long weight() {
+        return weight;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    Node<K, V> peekFirst() {
+        return first;
+    }
+
+    Node<K, V> peekLast() {
+        return last;
+    }
+
+    Node<K, V> pollFirst() {
+        Node<K, V> node = first;
+        if (node != null) {
+            remove(node);
+        }
+        return node;
+    }
+
+    void addLast(Node<K, V> node) {
+        node.previous = last;
+        node.next = null;
+        if (last == null) {
+            first = node;
+        } else {
+            last.next = node;
+        }
+        last = node;
+        size++;
+        weight += node.weight;
+    }
+
+    void moveToLast(Node<K, V> node) {
+        if (node != last) {
+            remove(node);
+            addLast(node);
+        }
+    }
+
+    void remove(Node<K, V> node) {
+        if (node.previous == null) {
+            first = node.next;
+        } else {
+            node.previous.next = node.next;
+        }
+        if (node.next == null) {
+            last = node.previous;
+        } else {
+            node.next.previous = node.previous;
+        }
+        node.previous = null;
+        node.next = null;
+        size--;
+        weight -= node.weight;
+    }
+
+    void clear() {
+        first = null;
+        last = null;
+        size = 0;
+        weight = 0;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A cache storing its values outside of the Java heap, encoded by the {@link CacheParameters#setValueCodec(Codec)
+ * value codec}. Values are written in direct buffers or, if {@link CacheParameters#setOffHeapFile(Path) a file} is
+ * specified, in buffers mapped from this file so that they are backed by the page cache instead of the swap. The
+ * {@link CacheParameters#setMaximumWeight(long) maximum weight} is the capacity of the buffers, in bytes.
+ *
+ * <p>The cache is split into independently locked segments, each writing its values sequentially in its own ring
+ * buffer and evicting the oldest ones when the ring wraps around. Only keys and value positions are kept on the heap
+ * and each hit decodes a fresh copy of the value. To serve hot entries without decoding, use this cache as a second
+ * level, as the loading function of an on-heap cache; invalidations must then be applied to both caches.</p>
+ */
+public class OffHeapCache<K, V> implements Cache<K, V> {
+    private static final long MIN_SEGMENT_CAPACITY = 1L << 20;
+    private static final long MAX_SEGMENT_CAPACITY = 1L << 30;
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final Codec<V> valueCodec;
+    private final StatsCounter statsCounter;
+    private final Loader<K, V> loader;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private OffHeapCache(CacheParameters<K, V> cacheParameters) {
+        if (cacheParameters.getValueCodec() == null) {
+            throw new IllegalArgumentException("Off-heap caches require a value codec");
+        }
+        if (cacheParameters.getMaximumWeight() <= 0) {
+            throw new IllegalArgumentException("Off-heap caches must be bounded by their maximum weight, in bytes");
+        }
+        if (Expiration.of(cacheParameters) != null || Refresh.of(cacheParameters) != null) {
+            throw new IllegalArgumentException("Off-heap caches don't support expiration nor refresh");
+        }
+        valueCodec = cacheParameters.getValueCodec();
+        statsCounter = StatsCounter.of(cacheParameters);
+        loader = new Loader<>(cacheParameters, statsCounter);
+        long capacity = cacheParameters.getMaximumWeight();
+        int segmentCount = 1;
+        while (capacity / segmentCount > MAX_SEGMENT_CAPACITY || segmentCount < cacheParameters.getConcurrencyLevel()
+                && capacity / (segmentCount * 2L) >= MIN_SEGMENT_CAPACITY) {
+            segmentCount <<= 1;
+        }
+        segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        segmentMask = segmentCount - 1;
+        segments = new Segment[segmentCount];
+        ByteBuffer[] buffers = cacheParameters.getOffHeapFile() == null ? new ByteBuffer[segmentCount]
+                : map(cacheParameters.getOffHeapFile(), capacity, segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>((int) (capacity / segmentCount), buffers[i], statsCounter);
+        }
+    }
+
+    private static ByteBuffer[] map(Path file, long capacity, int segmentCount) {
+        ByteBuffer[] buffers = new ByteBuffer[segmentCount];
+        long segmentCapacity = capacity / segmentCount;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            for (int i = 0; i < segmentCount; i++) {
+                buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentCapacity, segmentCapacity);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to map off-heap cache file " + file, e);
+        }
+        return buffers;
+    }
+
+    @Override
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(spread(key.hashCode()));
+        byte[] encodedValue;
+        Loading<V> loading;
+        boolean owner = false;
+        synchronized (segment) {
+            encodedValue = segment.read(key);
+            if (encodedValue == null) {
+                loading = segment.loadings.get(key);
+                if (loading == null) {
+                    loading = new Loading<>();
+                    segment.loadings.put(key, loading);
+                    owner = true;
+                } else if (loading.thread == Thread.currentThread()) {
+                    throw new IllegalStateException("Recursive load of cache key " + key);
+                }
+            } else {
+                loading = null;
+            }
+        }
+        if (statsCounter != null) {
+            if (encodedValue == null) {
+                statsCounter.recordMiss();
+            } else {
+                statsCounter.recordHit();
+            }
+        }
+        if (encodedValue != null) {
+            return decode(encodedValue);
+        } else if (owner) {
+            return load(segment, key, loading);
+        } else {
+            return loading.await();
+        }
+    }
+
+    @Override
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(spread(key.hashCode()));
+        synchronized (segment) {
+            segment.invalidate(key);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.invalidateAll();
+            }
+        }
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.empty() : statsCounter.snapshot();
+    }
+
+    /**
+     * Returns the number of bytes used by the values in the cache.
+     */
+    long weightedSize() {
+        long weightedSize = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                weightedSize += segment.usedBytes;
+            }
+        }
+        return weightedSize;
+    }
+
+    long capacity() {
+        return (long) segments[0].capacity * segments.length;
+    }
+
+    private V load(Segment<K, V> segment, K key, Loading<V> loading) {
+        V value;
+        byte[] encodedValue;
+        try {
+            value = loader.load(key);
+            encodedValue = value == null ? null : encode(value);
+        } catch (RuntimeException | Error e) {
+            synchronized (segment) {
+                segment.loadings.remove(key, loading);
+            }
+            loading.future.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (segment) {
+            // the loading is gone if the key was invalidated meanwhile
+            if (segment.loadings.remove(key, loading) && encodedValue != null) {
+                segment.write(key, encodedValue);
+            }
+        }
+        loading.future.complete(value);
+        return value;
+    }
+
+    private byte[] encode(V value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            valueCodec.write(value, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to encode cache value " + value, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private V decode(byte[] encodedValue) {
+        try {
+            return valueCodec.read(new DataInputStream(new ByteArrayInputStream(encodedValue)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to decode cache value", e);
+        }
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments[(hash >>> segmentShift) & segmentMask];
+    }
+
+    private static int spread(int hashCode) {
+        return hashCode * 0x9E3779B9;
+    }
+
+    /**
+     * A ring buffer of encoded values with the position of each value on the heap. Values are appended at the write
+     * position, evicting the oldest values they overwrite; replaced and invalidated values are left in place until
+     * they are overwritten. All methods are called while holding the segment lock.
+     */
+    private static final class Segment<K, V> {
+        private final Map<K, Slot<K>> slots = new HashMap<>();
+        private final ArrayDeque<Slot<K>> writeOrder = new ArrayDeque<>();
+        private final Map<K, Loading<V>> loadings = new HashMap<>();
+        private final int capacity;
+        private final StatsCounter statsCounter;
+        private ByteBuffer buffer;
+        private int writePosition;
+        private long usedBytes;
+
+        private Segment(int capacity, ByteBuffer buffer, StatsCounter statsCounter) {
+            this.capacity = capacity;
+            this.buffer = buffer;
+            this.statsCounter = statsCounter;
+        }
+
+        private byte[] read(K key) {
+            Slot<K> slot = slots.get(key);
+            if (slot == null) {
+                return null;
+            }
+            byte[] encodedValue = new byte[slot.length];
+            buffer.position(slot.offset);
+            buffer.get(encodedValue);
+            return encodedValue;
+        }
+
+        private void write(K key, byte[] encodedValue) {
+            if (encodedValue.length > capacity) {
+                return;
+            }
+            if (buffer == null) {
+                // direct memory is only reserved once the segment is used
+                buffer = ByteBuffer.allocateDirect(capacity);
+            }
+            remove(key);
+            if (writePosition + encodedValue.length > capacity) {
+                // the values written after the write position in the previous round are the oldest ones
+                while (!writeOrder.isEmpty() && writeOrder.peekFirst().offset >= writePosition) {
+                    evict(writeOrder.pollFirst());
+                }
+                writePosition = 0;
+            }
+            int end = writePosition + encodedValue.length;
+            while (!writeOrder.isEmpty() && writeOrder.peekFirst().offset >= writePosition
+                    && writeOrder.peekFirst().offset < end) {
+                evict(writeOrder.pollFirst());
+            }
+            buffer.position(writePosition);
+            buffer.put(encodedValue);
+            Slot<K> slot = new Slot<>(key, writePosition, encodedValue.length);
+            slots.put(key, slot);
+            writeOrder.addLast(slot);
+            usedBytes += slot.length;
+            writePosition = end;
+        }
+
+        private void invalidate(K key) {
+            remove(key);
+            loadings.remove(key);
+        }
+
+        private void invalidateAll() {
+            slots.clear();
+            writeOrder.clear();
+            loadings.clear();
+            writePosition = 0;
+            usedBytes = 0;
+        }
+
+        private void evict(Slot<K> slot) {
+            if (slots.remove(slot.key, slot)) {
+                usedBytes -= slot.length;
+                if (statsCounter != null) {
+                    statsCounter.recordEviction();
+                }
+            }
+        }
+
+        private void remove(K key) {
+            Slot<K> slot = slots.remove(key);
+            if (slot != null) {
+                usedBytes -= slot.length;
+            }
+        }
+    }
+
+    private static final class Slot<K> {
+        private final K key;
+        private final int offset;
+        private final int length;
+
+        private Slot(K key, int offset, int length) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Loading<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final Thread thread = Thread.currentThread();
+
+        private V await() {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public static class Factory implements CacheFactory {
+        @Override
+        public <K, V> Cache<K, V> createCache(CacheParameters<K, V> cacheParameters) {
+            return new OffHeapCache<>(cacheParameters);
+        }
+
+        @Override
+        public Set<CacheCapability> capabilities() {
+            return EnumSet.of(CacheCapability.WEIGHTED, CacheCapability.CONCURRENT, CacheCapability.INVALIDATION);
+        }
+    }
+}
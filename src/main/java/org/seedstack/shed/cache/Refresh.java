@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Decides when entries are due for refresh and runs the reloads on the executor of {@link CacheParameters}. A failed
+ * reload is counted as a load failure in the cache statistics, logged if SLF4J is available, and the stale value is
+ * kept until the next refresh attempt. A failed or null reload {@link #backOff(Node) backs off}: the entry is only due
+ * again after the refresh duration, instead of every read submitting a new reload.
+ */
+final class Refresh {
+    private static final CacheLogger LOGGER = CacheLogger.of(Refresh.class);
+    private final long refreshAfterWriteNanos;
+    private final Executor executor;
+
+    private Refresh(Duration refreshAfterWrite, Executor executor) {
+        if (refreshAfterWrite.isNegative() || refreshAfterWrite.isZero()) {
+            throw new IllegalArgumentException("Refresh duration must be positive: " + refreshAfterWrite);
+        }
+        this.refreshAfterWriteNanos = refreshAfterWrite.toNanos();
+        this.executor = executor == null ? ForkJoinPool.commonPool() : executor;
+    }
+
+    /**
+     * Returns the refresh configured in the specified parameters or null if entries are never refreshed.
+     */
+    static Refresh of(CacheParameters<?, ?> cacheParameters) {
+        if (cacheParameters.getRefreshAfterWrite() == null) {
+            return null;
+        }
+        return new Refresh(cacheParameters.getRefreshAfterWrite(), cacheParameters.getRefreshExecutor());
+    }
+
+    boolean isDue(Node<?, ?> node, long now) {
+        return now - node.refreshTime >= refreshAfterWriteNanos;
+    }
+
+    /**
+     * Postpones the next refresh of the specified node by the refresh duration, after a failed or null reload.
+     */
+    void backOff(Node<?, ?> node) {
+        node.refreshTime = System.nanoTime();
+    }
+
+    /**
+     * Runs the reload of the specified key on the executor. If the executor rejects it, the abandon callback is run
+     * in the calling thread instead.
+     */
+    void execute(Object key, Runnable reload, Consumer<RejectedExecutionException> abandon) {
+        try {
+            executor.execute(() -> {
+                try {
+                    reload.run();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unable to refresh cache key {}, the current value is kept", key, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Unable to schedule the refresh of cache key {}", key, e);
+            abandon.accept(e);
+        }
+    }
+}
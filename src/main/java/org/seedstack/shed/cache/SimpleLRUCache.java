@@ -7,21 +7,33 @@
  */
 package org.seedstack.shed.cache;
 
+import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 public class SimpleLRUCache<K, V> implements Cache<K, V> {
     private final LinkedHashMap<K, V> map;
-    private final Function<? super K, ? extends V> loadingFunction;
+    private final Loader<K, V> loader;
+    private final Function<K, V> loadingFunction;
+    private final StatsCounter statsCounter;
 
     private SimpleLRUCache(CacheParameters<K, V> cacheParameters) {
-        loadingFunction = cacheParameters.getLoadingFunction();
+        statsCounter = StatsCounter.of(cacheParameters);
+        loader = new Loader<>(cacheParameters, statsCounter);
+        loadingFunction = loader::load;
         final int maxSize = cacheParameters.getMaxSize();
         this.map = new LinkedHashMap<K, V>(cacheParameters.getInitialSize(), 0.75f, true) {
             @Override
             protected boolean removeEldestEntry(Map.Entry eldest) {
-                return size() > maxSize;
+                if (size() > maxSize) {
+                    if (statsCounter != null) {
+                        statsCounter.recordEviction();
+                    }
+                    return true;
+                }
+                return false;
             }
         };
     }
@@ -29,7 +41,45 @@ public class SimpleLRUCache<K, V> implements Cache<K, V> {
     @Override
     public V get(K key) {
         synchronized (map) {
-            return map.computeIfAbsent(key, loadingFunction);
+            if (statsCounter == null) {
+                return map.computeIfAbsent(key, loadingFunction);
+            }
+            V value = map.get(key);
+            if (value != null) {
+                statsCounter.recordHit();
+                return value;
+            }
+            statsCounter.recordMiss();
+            value = loader.load(key);
+            if (value != null) {
+                map.put(key, value);
+            }
+            return value;
+        }
+    }
+
+    @Override
+    public void invalidate(K key) {
+        synchronized (map) {
+            map.remove(key);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.empty() : statsCounter.snapshot();
+    }
+
+    long size() {
+        synchronized (map) {
+            return map.size();
         }
     }
 
@@ -38,5 +88,10 @@ public class SimpleLRUCache<K, V> implements Cache<K, V> {
         public <K, V> Cache<K, V> createCache(CacheParameters<K, V> cacheParameters) {
             return new SimpleLRUCache<>(cacheParameters);
         }
+
+        @Override
+        public Set<CacheCapability> capabilities() {
+            return EnumSet.of(CacheCapability.BOUNDED, CacheCapability.INVALIDATION);
+        }
     }
 }
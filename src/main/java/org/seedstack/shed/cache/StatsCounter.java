@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Accumulates the statistics of a cache in striped counters, so that concurrent updates don't contend. Caches that
+ * don't record statistics hold no counter at all.
+ */
+final class StatsCounter {
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Returns a new counter if the specified parameters enable statistics or null otherwise.
+     */
+    static StatsCounter of(CacheParameters<?, ?> cacheParameters) {
+        return cacheParameters.isRecordingStats() ? new StatsCounter() : null;
+    }
+
+    /**
+     * Invokes the loading function and records its outcome and duration. A null value counts as a failure.
+     */
+    <K, V> V load(Function<? super K, ? extends V> loadingFunction, K key) {
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = loadingFunction.apply(key);
+        } catch (RuntimeException | Error e) {
+            recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+        if (value == null) {
+            recordLoadFailure(System.nanoTime() - start);
+        } else {
+            recordLoadSuccess(System.nanoTime() - start);
+        }
+        return value;
+    }
+
+    void recordHit() {
+        hitCount.increment();
+    }
+
+    void recordMiss() {
+        missCount.increment();
+    }
+
+    void recordMisses(int count) {
+        missCount.add(count);
+    }
+
+    void recordLoadSuccess(long loadTime) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    void recordLoadFailure(long loadTime) {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    void recordEviction() {
+        evictionCount.increment();
+    }
+
+    CacheStats snapshot() {
+        return new CacheStats(
+                hitCount.sum(),
+                missCount.sum(),
+                loadSuccessCount.sum(),
+                loadFailureCount.sum(),
+                totalLoadTime.sum(),
+                evictionCount.sum()
+        );
+    }
+}
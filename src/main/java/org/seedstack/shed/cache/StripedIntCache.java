@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.function.IntFunction;
+
+/**
+ * An {@link IntCache} storing its keys in an {@code int} array.
+ */
+final class StripedIntCache<V> extends AbstractStripedCache implements IntCache<V> {
+    private final IntFunction<? extends V> loadingFunction;
+    private final int[] keys;
+    private final Object[] values;
+
+    StripedIntCache(CacheParameters<?, ?> cacheParameters, IntFunction<? extends V> loadingFunction) {
+        super(cacheParameters);
+        this.loadingFunction = loadingFunction;
+        this.keys = new int[stamps.length];
+        this.values = new Object[stamps.length];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int firstSlot = firstSlot(key);
+        Stripe stripe = stripeOf(firstSlot);
+        synchronized (stripe) {
+            int slot = find(firstSlot, key);
+            if (slot >= 0) {
+                touch(stripe, slot);
+                recordHit();
+                return (V) values[slot];
+            }
+        }
+        long start = startLoad();
+        V value;
+        try {
+            value = loadingFunction.apply(key);
+        } catch (RuntimeException | Error e) {
+            endLoad(start, false);
+            throw e;
+        }
+        endLoad(start, value != null);
+        if (value != null) {
+            synchronized (stripe) {
+                int slot = find(firstSlot, key);
+                if (slot < 0) {
+                    slot = slotForInsertion(firstSlot);
+                    keys[slot] = key;
+                }
+                values[slot] = value;
+                touch(stripe, slot);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void invalidate(int key) {
+        int firstSlot = firstSlot(key);
+        synchronized (stripeOf(firstSlot)) {
+            int slot = find(firstSlot, key);
+            if (slot >= 0) {
+                clearSlot(slot);
+            }
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        clearAll();
+    }
+
+    @Override
+    void clearSlot(int slot) {
+        clear(slot);
+        values[slot] = null;
+    }
+
+    private int find(int firstSlot, int key) {
+        for (int slot = firstSlot; slot < firstSlot + WAYS; slot++) {
+            if (keys[slot] == key && isUsed(slot)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
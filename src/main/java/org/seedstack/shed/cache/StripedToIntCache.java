@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * A {@link ToIntCache} storing its values in an {@code int} array.
+ */
+final class StripedToIntCache<K> extends AbstractStripedCache implements ToIntCache<K> {
+    private final ToIntFunction<? super K> loadingFunction;
+    private final Object[] keys;
+    private final int[] values;
+
+    StripedToIntCache(CacheParameters<?, ?> cacheParameters, ToIntFunction<? super K> loadingFunction) {
+        super(cacheParameters);
+        this.loadingFunction = loadingFunction;
+        this.keys = new Object[stamps.length];
+        this.values = new int[stamps.length];
+    }
+
+    @Override
+    public int get(K key) {
+        int firstSlot = firstSlot(key.hashCode());
+        Stripe stripe = stripeOf(firstSlot);
+        synchronized (stripe) {
+            int slot = find(firstSlot, key);
+            if (slot >= 0) {
+                touch(stripe, slot);
+                recordHit();
+                return values[slot];
+            }
+        }
+        long start = startLoad();
+        int value;
+        try {
+            value = loadingFunction.applyAsInt(key);
+        } catch (RuntimeException | Error e) {
+            endLoad(start, false);
+            throw e;
+        }
+        endLoad(start, true);
+        synchronized (stripe) {
+            int slot = find(firstSlot, key);
+            if (slot < 0) {
+                slot = slotForInsertion(firstSlot);
+                keys[slot] = key;
+            }
+            values[slot] = value;
+            touch(stripe, slot);
+        }
+        return value;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        int firstSlot = firstSlot(key.hashCode());
+        synchronized (stripeOf(firstSlot)) {
+            int slot = find(firstSlot, key);
+            if (slot >= 0) {
+                clearSlot(slot);
+            }
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        clearAll();
+    }
+
+    @Override
+    void clearSlot(int slot) {
+        clear(slot);
+        keys[slot] = null;
+    }
+
+    private int find(int firstSlot, K key) {
+        for (int slot = firstSlot; slot < firstSlot + WAYS; slot++) {
+            if (isUsed(slot) && key.equals(keys[slot])) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
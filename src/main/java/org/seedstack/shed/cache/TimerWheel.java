@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+/**
+ * A hierarchical timer wheel scheduling nodes for expiration in O(1). Each level is an array of buckets covering a
+ * time span that is a power of two nanoseconds (about a second, a minute, an hour and a day), the last level
+ * catching everything further away. Advancing the wheel processes only the buckets whose span has elapsed: nodes of
+ * higher levels are cascaded down to finer levels and nodes whose time has come are handed to an {@link Expirer}.
+ * This class is not thread-safe.
+ */
+final class TimerWheel<K, V> {
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final int[] SHIFTS = {30, 36, 42, 47, 49};
+    private final Node<K, V>[][] wheel;
+    private long nanos;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimerWheel(long nanos) {
+        this.nanos = nanos;
+        wheel = new Node[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                Node<K, V> sentinel = new Node<>(null, 0, null);
+                sentinel.previousInTimer = sentinel;
+                sentinel.nextInTimer = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Returns the tick of the finest level of the wheel at the specified time: advancing the wheel has no effect until
+     * the tick changes.
+     */
+    static long tickOf(long nanos) {
+        return nanos >>> SHIFTS[0];
+    }
+
+    /**
+     * Schedules the node to be handed to the expirer when the wheel advances past the specified time.
+     */
+    void schedule(Node<K, V> node, long time) {
+        if (node.nextInTimer != null) {
+            unlink(node);
+        }
+        node.timerTime = time;
+        Node<K, V> sentinel = findBucket(time);
+        node.previousInTimer = sentinel.previousInTimer;
+        node.nextInTimer = sentinel;
+        sentinel.previousInTimer.nextInTimer = node;
+        sentinel.previousInTimer = node;
+    }
+
+    /**
+     * Removes the node from the wheel if it is scheduled.
+     */
+    void deschedule(Node<K, V> node) {
+        if (node.nextInTimer != null) {
+            unlink(node);
+        }
+    }
+
+    /**
+     * Advances the wheel to the specified time, handing over all nodes scheduled before it to the expirer.
+     */
+    void advance(long currentNanos, Expirer<K, V> expirer) {
+        long previousNanos = nanos;
+        nanos = currentNanos;
+        for (int i = 0; i < SHIFTS.length; i++) {
+            long previousTicks = previousNanos >>> SHIFTS[i];
+            long currentTicks = currentNanos >>> SHIFTS[i];
+            if (currentTicks - previousTicks <= 0L) {
+                break;
+            }
+            expire(wheel[i], previousTicks, currentTicks, expirer);
+        }
+    }
+
+    private void expire(Node<K, V>[] buckets, long previousTicks, long currentTicks, Expirer<K, V> expirer) {
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + currentTicks - previousTicks, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            Node<K, V> sentinel = buckets[i & mask];
+            Node<K, V> node = sentinel.nextInTimer;
+            sentinel.previousInTimer = sentinel;
+            sentinel.nextInTimer = sentinel;
+            while (node != sentinel) {
+                Node<K, V> next = node.nextInTimer;
+                node.previousInTimer = null;
+                node.nextInTimer = null;
+                if (node.timerTime - nanos > 0 || !expirer.expire(node, nanos)) {
+                    // not due yet at this resolution, or still alive: cascade it to its new bucket
+                    if (node.nextInTimer == null) {
+                        schedule(node, node.timerTime);
+                    }
+                }
+                node = next;
+            }
+        }
+    }
+
+    private Node<K, V> findBucket(long time) {
+        long duration = time - nanos;
+        for (int i = 0; i < wheel.length - 1; i++) {
+            if (duration < 1L << SHIFTS[i + 1]) {
+                long ticks = time >>> SHIFTS[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[wheel.length - 1][0];
+    }
+
+    private void unlink(Node<K, V> node) {
+        node.previousInTimer.nextInTimer = node.nextInTimer;
+        node.nextInTimer.previousInTimer = node.previousInTimer;
+        node.previousInTimer = null;
+        node.nextInTimer = null;
+    }
+
+    /**
+     * Called for each node whose scheduled time has elapsed.
+     */
+    @FunctionalInterface
+    interface Expirer<K, V> {
+        /**
+         * Removes the node if it has expired. Otherwise the node can be rescheduled at a later time by calling
+         * {@link TimerWheel#schedule(Node, long)}, or will be rescheduled at its current time.
+         *
+         * @param node the node to check.
+         * @param now  the current time in nanoseconds.
+         * @return true if the node was removed, false otherwise.
+         */
+        boolean expire(Node<K, V> node, long now);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A bounded cache using the Window TinyLFU eviction policy. New entries go into a small LRU admission window. When
+ * they leave the window, they are only admitted in the main region if they are estimated to be more popular than
+ * the entry that would be evicted in their place, as recorded by a {@link FrequencySketch}. The main region is a
+ * segmented LRU made of a probation and a protected area. One-off keys are thus evicted early instead of flushing
+ * frequently used entries out of the cache.
+ */
+public class TinyLFUCache<K, V> extends AbstractSegmentedCache<K, V> {
+    private static final double WINDOW_RATIO = 0.01;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private TinyLFUCache(CacheParameters<K, V> cacheParameters) {
+        super(cacheParameters, TinyLFUSegment::new);
+    }
+
+    private static final class TinyLFUSegment<K, V> extends Segment<K, V> {
+        private final NodeDeque<K, V> window = new NodeDeque<>();
+        private final NodeDeque<K, V> probation = new NodeDeque<>();
+        private final NodeDeque<K, V> protectedArea = new NodeDeque<>();
+        private final FrequencySketch sketch;
+        private long windowMaxWeight;
+        private long mainMaxWeight;
+        private long protectedMaxWeight;
+
+        private TinyLFUSegment(int initialSize, int maxSize, long maxWeight) {
+            super(initialSize);
+            sketch = new FrequencySketch(maxSize);
+            setMaxWeight(maxWeight);
+        }
+
+        private void setMaxWeight(long maxWeight) {
+            windowMaxWeight = Math.max(1, (long) (maxWeight * WINDOW_RATIO));
+            mainMaxWeight = Math.max(0, maxWeight - windowMaxWeight);
+            protectedMaxWeight = (long) (mainMaxWeight * PROTECTED_RATIO);
+        }
+
+        @Override
+        void onAccess(Node<K, V> node) {
+            sketch.increment(node.hash);
+            switch (node.queue) {
+                case Node.WINDOW:
+                    window.moveToLast(node);
+                    break;
+                case Node.PROBATION:
+                    probation.remove(node);
+                    node.queue = Node.PROTECTED;
+                    protectedArea.addLast(node);
+                    demoteFromProtected();
+                    break;
+                default:
+                    protectedArea.moveToLast(node);
+                    break;
+            }
+        }
+
+        @Override
+        void onInsert(Node<K, V> node) {
+            sketch.increment(node.hash);
+            node.queue = Node.WINDOW;
+            window.addLast(node);
+            while (window.weight() > windowMaxWeight) {
+                Node<K, V> candidate = window.pollFirst();
+                candidate.queue = Node.PROBATION;
+                probation.addLast(candidate);
+                evictFromMain(candidate);
+            }
+        }
+
+        private void demoteFromProtected() {
+            while (protectedArea.weight() > protectedMaxWeight) {
+                Node<K, V> demoted = protectedArea.pollFirst();
+                demoted.queue = Node.PROBATION;
+                probation.addLast(demoted);
+            }
+        }
+
+        private void evictFromMain(Node<K, V> candidate) {
+            while (probation.weight() + protectedArea.weight() > mainMaxWeight) {
+                Node<K, V> victim = probation.peekFirst();
+                if (victim == null) {
+                    evict(protectedArea.peekFirst());
+                } else if (candidate == null || victim == candidate) {
+                    evict(victim);
+                } else if (sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                    evict(victim);
+                } else {
+                    evict(candidate);
+                    candidate = null;
+                }
+            }
+        }
+
+        @Override
+        void onRemove(Node<K, V> node) {
+            switch (node.queue) {
+                case Node.WINDOW:
+                    window.remove(node);
+                    break;
+                case Node.PROBATION:
+                    probation.remove(node);
+                    break;
+                default:
+                    protectedArea.remove(node);
+                    break;
+            }
+        }
+
+        @Override
+        void resize(long maxWeight) {
+            setMaxWeight(maxWeight);
+            while (window.weight() > windowMaxWeight) {
+                Node<K, V> overflow = window.pollFirst();
+                overflow.queue = Node.PROBATION;
+                probation.addLast(overflow);
+            }
+            demoteFromProtected();
+            evictFromMain(null);
+        }
+    }
+
+    public static class Factory implements CacheFactory {
+        @Override
+        public <K, V> Cache<K, V> createCache(CacheParameters<K, V> cacheParameters) {
+            return new TinyLFUCache<>(cacheParameters);
+        }
+
+        @Override
+        public Set<CacheCapability> capabilities() {
+            return EnumSet.allOf(CacheCapability.class);
+        }
+    }
+}
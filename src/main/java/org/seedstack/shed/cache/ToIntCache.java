@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * A cache with {@code int} values, which are never boxed when returned.
+ *
+ * <p>Primitive caches are not created by a {@link CacheFactory} and only honor the maximum size, concurrency level
+ * and statistics settings of {@link CacheParameters}. Loads are not coalesced: concurrent misses on the same key can
+ * each invoke the loading function. Entries are held strongly until evicted, so results computed from classes of
+ * discardable class loaders should be memoized with a {@link ClassValue} instead.</p>
+ *
+ * @param <K> the type of the keys.
+ */
+@FunctionalInterface
+public interface ToIntCache<K> {
+    static <K> ToIntCache<K> create(ToIntFunction<? super K> loadingFunction) {
+        return new StripedToIntCache<>(new CacheParameters<>(), loadingFunction);
+    }
+
+    /**
+     * Creates a bounded cache with the specified parameters. Only the maximum size, concurrency level and statistics
+     * settings apply. The loading function is only invoked on misses and must not return null.
+     *
+     * @param cacheParameters the cache parameters.
+     * @param <K>             the type of the keys.
+     * @return the cache.
+     */
+    static <K> ToIntCache<K> create(CacheParameters<K, Integer> cacheParameters) {
+        Function<? super K, ? extends Integer> loadingFunction = cacheParameters.getLoadingFunction();
+        return new StripedToIntCache<>(cacheParameters, loadingFunction::apply);
+    }
+
+    int get(K key);
+
+    /**
+     * Discards the entry of the specified key if any.
+     *
+     * @param key the key to invalidate.
+     * @throws UnsupportedOperationException if the cache doesn't support invalidation.
+     */
+    default void invalidate(K key) {
+        throw new UnsupportedOperationException("Cache " + getClass().getName() + " doesn't support invalidation");
+    }
+
+    /**
+     * Discards all entries of the cache.
+     *
+     * @throws UnsupportedOperationException if the cache doesn't support invalidation.
+     */
+    default void invalidateAll() {
+        throw new UnsupportedOperationException("Cache " + getClass().getName() + " doesn't support invalidation");
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     *
+     * @return the cache statistics.
+     * @see Cache#stats()
+     */
+    default CacheStats stats() {
+        return CacheStats.empty();
+    }
+}
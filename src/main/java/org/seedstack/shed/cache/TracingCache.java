@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A cache decorator recording the accesses to another cache in a {@link CacheTrace}. An access is a miss if the
+ * loading functions were called for its key while the delegate cache was serving it on the same thread, and a hit
+ * otherwise. Loads done by refreshes on other threads are thus not counted as misses.
+ */
+final class TracingCache<K, V> implements Cache<K, V> {
+    private final Cache<K, V> delegate;
+    private final CacheTrace trace;
+    private final boolean identityKeys;
+    private final ThreadLocal<Loads> loads;
+
+    private TracingCache(Cache<K, V> delegate, CacheParameters<K, V> cacheParameters, ThreadLocal<Loads> loads) {
+        this.delegate = delegate;
+        this.trace = cacheParameters.getTrace();
+        this.identityKeys = cacheParameters.isIdentityKeys();
+        this.loads = loads;
+    }
+
+    /**
+     * Creates the tracing decorator of a cache to be created with the returned parameters, whose loading functions
+     * report the loads to the decorator.
+     */
+    static <K, V> Attachment<K, V> attachTo(CacheParameters<K, V> cacheParameters) {
+        ThreadLocal<Loads> loads = ThreadLocal.withInitial(() -> new Loads(cacheParameters.isIdentityKeys()));
+        CacheParameters<K, V> attached = cacheParameters.copy().setTrace(null);
+        Function<? super K, ? extends V> loadingFunction = cacheParameters.getLoadingFunction();
+        if (loadingFunction != null) {
+            attached.setLoadingFunction(key -> {
+                loads.get().add(key);
+                return loadingFunction.apply(key);
+            });
+        }
+        Function<Set<K>, Map<K, V>> batchLoadingFunction = cacheParameters.getBatchLoadingFunction();
+        if (batchLoadingFunction != null) {
+            attached.setBatchLoadingFunction(keys -> {
+                Loads threadLoads = loads.get();
+                for (K key : keys) {
+                    threadLoads.add(key);
+                }
+                return batchLoadingFunction.apply(keys);
+            });
+        }
+        return new Attachment<>(attached, delegate -> new TracingCache<>(delegate, cacheParameters, loads));
+    }
+
+    Cache<K, V> delegate() {
+        return delegate;
+    }
+
+    @Override
+    public V get(K key) {
+        Loads threadLoads = loads.get();
+        int count = threadLoads.count;
+        try {
+            return delegate.get(key);
+        } finally {
+            trace.record(hash(key), threadLoads.count == count);
+        }
+    }
+
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        List<K> specifiedKeys = new ArrayList<>();
+        keys.forEach(specifiedKeys::add);
+        Loads threadLoads = loads.get();
+        Set<Object> previousKeys = threadLoads.startRecordingKeys();
+        try {
+            return delegate.getAll(specifiedKeys);
+        } finally {
+            Set<Object> loadedKeys = threadLoads.stopRecordingKeys(previousKeys);
+            for (K key : specifiedKeys) {
+                trace.record(hash(key), !loadedKeys.contains(key));
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(K key) {
+        delegate.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        delegate.invalidateAll();
+    }
+
+    @Override
+    public void freeze() {
+        delegate.freeze();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return delegate.stats();
+    }
+
+    private int hash(K key) {
+        int hash = identityKeys ? System.identityHashCode(key) : key.hashCode();
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * The parameters to create the traced cache with and the decorator to wrap it in.
+     */
+    static final class Attachment<K, V> {
+        private final CacheParameters<K, V> cacheParameters;
+        private final Function<Cache<K, V>, Cache<K, V>> decorator;
+
+        private Attachment(CacheParameters<K, V> cacheParameters, Function<Cache<K, V>, Cache<K, V>> decorator) {
+            this.cacheParameters = cacheParameters;
+            this.decorator = decorator;
+        }
+
+        CacheParameters<K, V> cacheParameters() {
+            return cacheParameters;
+        }
+
+        Cache<K, V> decorate(Cache<K, V> cache) {
+            return decorator.apply(cache);
+        }
+    }
+
+    /**
+     * The loads done by a thread: their count for single accesses and their keys during a {@link #getAll(Iterable)}.
+     */
+    private static final class Loads {
+        private final boolean identityKeys;
+        private int count;
+        private Set<Object> keys;
+
+        private Loads(boolean identityKeys) {
+            this.identityKeys = identityKeys;
+        }
+
+        private void add(Object key) {
+            count++;
+            if (keys != null) {
+                keys.add(key);
+            }
+        }
+
+        private Set<Object> startRecordingKeys() {
+            Set<Object> previousKeys = keys;
+            keys = identityKeys ? Collections.newSetFromMap(new IdentityHashMap<>()) : new HashSet<>();
+            return previousKeys;
+        }
+
+        private Set<Object> stopRecordingKeys(Set<Object> previousKeys) {
+            Set<Object> loadedKeys = keys;
+            keys = previousKeys;
+            if (previousKeys != null) {
+                previousKeys.addAll(loadedKeys);
+            }
+            return loadedKeys;
+        }
+    }
+}
@@ -7,23 +7,248 @@
  */
 package org.seedstack.shed.cache;
 
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
 public class UnboundedCache<K, V> implements Cache<K, V> {
-    private final ConcurrentMap<K, V> map;
-    private final Function<? super K, ? extends V> loadingFunction;
+    private final ConcurrentMap<K, Node<K, V>> map;
+    private final Loader<K, V> loader;
+    private final Function<K, Node<K, V>> nodeLoader = this::loadNode;
+    private final Expiration expiration;
+    private final Refresh refresh;
+    private final Set<K> refreshing;
+    private final StatsCounter statsCounter;
+    private final TimerWheel<K, V> timerWheel;
+    private final ReentrantLock timerLock = new ReentrantLock();
+    private final TimerWheel.Expirer<K, V> expirer = this::expire;
+    private volatile long advancedTick;
 
     private UnboundedCache(CacheParameters<K, V> cacheParameters) {
-        loadingFunction = cacheParameters.getLoadingFunction();
         this.map = new ConcurrentHashMap<>(cacheParameters.getInitialSize(), 0.75f,
                 1);
+        this.expiration = Expiration.of(cacheParameters);
+        this.refresh = Refresh.of(cacheParameters);
+        this.refreshing = refresh == null ? null : ConcurrentHashMap.newKeySet();
+        this.statsCounter = StatsCounter.of(cacheParameters);
+        this.loader = new Loader<>(cacheParameters, statsCounter);
+        long now = System.nanoTime();
+        this.timerWheel = expiration == null ? null : new TimerWheel<>(now);
+        this.advancedTick = TimerWheel.tickOf(now);
     }
 
     @Override
     public V get(K key) {
-        return map.computeIfAbsent(key, loadingFunction);
+        if (expiration == null && refresh == null && statsCounter == null) {
+            Node<K, V> node = map.computeIfAbsent(key, nodeLoader);
+            return node == null ? null : node.value;
+        }
+        long now = expiration == null && refresh == null ? 0L : System.nanoTime();
+        Node<K, V> node = map.get(key);
+        if (node != null && expiration != null && expiration.hasExpired(node, now)) {
+            if (map.remove(key, node)) {
+                deschedule(node);
+                if (statsCounter != null) {
+                    statsCounter.recordEviction();
+                }
+            }
+            node = null;
+        }
+        if (node == null) {
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
+            node = map.computeIfAbsent(key, nodeLoader);
+            if (node == null) {
+                return null;
+            }
+            if (expiration != null) {
+                schedule(node);
+            }
+        } else {
+            if (statsCounter != null) {
+                statsCounter.recordHit();
+            }
+            if (expiration != null && expiration.isAccessBased()) {
+                node.accessTime = now;
+            }
+            if (refresh != null) {
+                refreshIfDue(node, now);
+            }
+        }
+        // expired entries are removed once per tick by whichever thread gets the timer lock, others don't wait for it
+        if (expiration != null && TimerWheel.tickOf(now) != advancedTick && timerLock.tryLock()) {
+            try {
+                timerWheel.advance(now, expirer);
+                advancedTick = TimerWheel.tickOf(now);
+            } finally {
+                timerLock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        if (!loader.isBatching()) {
+            return Cache.super.getAll(keys);
+        }
+        Map<K, V> result = new LinkedHashMap<>();
+        Set<K> missingKeys = new LinkedHashSet<>();
+        for (K key : keys) {
+            if (result.containsKey(key) || missingKeys.contains(key)) {
+                continue;
+            }
+            Node<K, V> node = map.get(key);
+            if (node != null && expiration != null && expiration.hasExpired(node, System.nanoTime())) {
+                node = null;
+            }
+            if (node == null) {
+                missingKeys.add(key);
+                // keep the requested order, the value is filled once loaded
+                result.put(key, null);
+            } else {
+                result.put(key, node.value);
+                if (statsCounter != null) {
+                    statsCounter.recordHit();
+                }
+                if (expiration != null && expiration.isAccessBased()) {
+                    node.accessTime = System.nanoTime();
+                }
+                if (refresh != null) {
+                    refreshIfDue(node, System.nanoTime());
+                }
+            }
+        }
+        if (!missingKeys.isEmpty()) {
+            if (statsCounter != null) {
+                statsCounter.recordMisses(missingKeys.size());
+            }
+            Map<K, V> loadedValues = loader.loadAll(missingKeys);
+            for (K key : missingKeys) {
+                V value = loadedValues.get(key);
+                if (value == null) {
+                    result.remove(key);
+                } else {
+                    Node<K, V> node = newNode(key, value);
+                    Node<K, V> current = map.get(key);
+                    if (current == null ? map.putIfAbsent(key, node) == null : map.replace(key, current, node)) {
+                        if (current != null && expiration != null) {
+                            deschedule(current);
+                        }
+                        if (expiration != null) {
+                            schedule(node);
+                        }
+                    }
+                    result.put(key, value);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        Node<K, V> node = map.remove(key);
+        if (node != null && expiration != null) {
+            deschedule(node);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (K key : map.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.empty() : statsCounter.snapshot();
+    }
+
+    long size() {
+        return map.size();
+    }
+
+    private Node<K, V> loadNode(K key) {
+        V value = loader.load(key);
+        return value == null ? null : newNode(key, value);
+    }
+
+    private Node<K, V> newNode(K key, V value) {
+        Node<K, V> node = new Node<>(key, 0, value);
+        node.writeTime = System.nanoTime();
+        node.refreshTime = node.writeTime;
+        node.accessTime = node.writeTime;
+        return node;
+    }
+
+    private void refreshIfDue(Node<K, V> node, long now) {
+        if (refresh.isDue(node, now) && refreshing.add(node.key)) {
+            refresh.execute(node.key, () -> reload(node), e -> refreshing.remove(node.key));
+        }
+    }
+
+    private void reload(Node<K, V> staleNode) {
+        V value = null;
+        try {
+            value = loader.load(staleNode.key);
+            if (value != null) {
+                Node<K, V> node = newNode(staleNode.key, value);
+                // the entry is not replaced if it was invalidated or expired meanwhile
+                if (map.replace(staleNode.key, staleNode, node) && expiration != null) {
+                    deschedule(staleNode);
+                    schedule(node);
+                }
+            }
+        } finally {
+            if (value == null) {
+                // read without lock by the callers, a stale read only triggering one more reload
+                refresh.backOff(staleNode);
+            }
+            refreshing.remove(staleNode.key);
+        }
+    }
+
+    private void schedule(Node<K, V> node) {
+        timerLock.lock();
+        try {
+            // the node may already have been scheduled (or even expired) by a concurrent caller
+            if (node.nextInTimer == null && map.get(node.key) == node) {
+                timerWheel.schedule(node, expiration.expirationTime(node));
+            }
+        } finally {
+            timerLock.unlock();
+        }
+    }
+
+    private void deschedule(Node<K, V> node) {
+        timerLock.lock();
+        try {
+            timerWheel.deschedule(node);
+        } finally {
+            timerLock.unlock();
+        }
+    }
+
+    private boolean expire(Node<K, V> node, long now) {
+        if (expiration.hasExpired(node, now)) {
+            if (map.remove(node.key, node) && statsCounter != null) {
+                statsCounter.recordEviction();
+            }
+            return true;
+        } else {
+            // the entry was accessed since it was scheduled
+            timerWheel.schedule(node, expiration.expirationTime(node));
+            return false;
+        }
     }
 
     public static class Factory implements CacheFactory {
@@ -31,5 +256,11 @@ public class UnboundedCache<K, V> implements Cache<K, V> {
         public <K, V> Cache<K, V> createCache(CacheParameters<K, V> cacheParameters) {
             return new UnboundedCache<>(cacheParameters);
         }
+
+        @Override
+        public Set<CacheCapability> capabilities() {
+            return EnumSet.of(CacheCapability.EXPIRING, CacheCapability.ASYNC, CacheCapability.CONCURRENT,
+                    CacheCapability.INVALIDATION);
+        }
     }
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Built-in weighers for {@link CacheParameters#setWeigher(BiFunction)}.
+ */
+public final class Weighers {
+    private Weighers() {
+        // no instantiation allowed
+    }
+
+    /**
+     * Returns a weigher for list-valued caches, weighing each entry by one plus the size of its list so that empty
+     * lists still count.
+     *
+     * @param <K> the type of the keys.
+     * @param <E> the type of the list elements.
+     * @return the weigher.
+     */
+    public static <K, E> BiFunction<K, List<E>, Integer> listSize() {
+        return (key, value) -> value.size() + 1;
+    }
+}
@@ -15,6 +15,13 @@ import java.util.function.ToIntFunction;
 import javax.annotation.Priority;
 
 public final class PriorityUtils {
+    private static final ClassValue<Integer> PRIORITIES = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> someClass) {
+            return findPriorityOf(someClass);
+        }
+    };
+
     private PriorityUtils() {
         // no instantiation allowed
     }
@@ -64,6 +71,10 @@ public final class PriorityUtils {
      * @return the priority.
      */
     public static int priorityOf(Class<?> someClass) {
+        return someClass == null ? 0 : PRIORITIES.get(someClass);
+    }
+
+    private static int findPriorityOf(Class<?> someClass) {
         while (someClass != null) {
             Priority annotation = someClass.getAnnotation(Priority.class);
             if (annotation != null) {
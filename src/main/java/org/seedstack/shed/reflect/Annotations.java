@@ -14,21 +14,32 @@ import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Field;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 import org.seedstack.shed.cache.Cache;
 import org.seedstack.shed.cache.CacheParameters;
+import org.seedstack.shed.cache.CacheRegistry;
 
 public final class Annotations {
     private static final String JAVA_LANG = "java.lang";
     private static final String KOTLIN_ANNOTATION = "kotlin.annotation";
-    private static Cache<Context, List<Annotation>> cache = Cache.create(
-            new CacheParameters<Context, List<Annotation>>()
+    private static Cache<Context, GatheredAnnotations> cache = Cache.create(
+            new CacheParameters<Context, GatheredAnnotations>()
+                    .setName("annotations")
+                    .setRegistered(Boolean.getBoolean(CacheRegistry.REGISTER_BUILT_IN_PROPERTY))
                     .setInitialSize(256)
-                    .setMaxSize(1024)
+                    .setMaxSize(2048)
+                    .setMaximumWeight(32768)
+                    .setWeigher((context, gatheredAnnotations) -> gatheredAnnotations.size() + 1)
+                    .setClassLoaderPartitioner(Context::classLoader)
                     .setLoadingFunction(Context::gather)
     );
 
@@ -36,6 +47,16 @@ public final class Annotations {
         // no instantiation allowed
     }
 
+    /**
+     * Freezes the cache of gathered annotations, to be called once the application has started and the cache has
+     * seen most of the elements it will be asked about.
+     *
+     * @see Cache#freeze()
+     */
+    public static void freezeCache() {
+        cache.freeze();
+    }
+
     public static OnAnnotatedElement on(AnnotatedElement annotatedElement) {
         return new OnAnnotatedElement(new Context(annotatedElement));
     }
@@ -83,8 +104,8 @@ public final class Annotations {
          */
         @SuppressWarnings("unchecked")
         public <T extends Annotation> Optional<T> find(Class<T> annotationClass) {
-            return (Optional<T>) findAll().filter(AnnotationPredicates.annotationIsOfClass(annotationClass))
-                    .findFirst();
+            List<Annotation> annotations = cache.get(context).ofType(annotationClass);
+            return annotations.isEmpty() ? Optional.empty() : Optional.of((T) annotations.get(0));
         }
 
         /**
@@ -94,9 +115,7 @@ public final class Annotations {
          */
         @SuppressWarnings("unchecked")
         public <T extends Annotation> Stream<T> findAll(Class<T> annotationClass) {
-            return (Stream<T>) cache.get(context)
-                    .stream()
-                    .filter(AnnotationPredicates.annotationIsOfClass(annotationClass));
+            return (Stream<T>) cache.get(context).ofType(annotationClass).stream();
         }
 
         /**
@@ -105,7 +124,7 @@ public final class Annotations {
          * @return a stream of annotation objects.
          */
         public Stream<Annotation> findAll() {
-            return cache.get(context).stream();
+            return cache.get(context).all().stream();
         }
     }
 
@@ -164,10 +183,19 @@ public final class Annotations {
             this.includingMetaAnnotations = includingMetaAnnotations;
         }
 
-        List<Annotation> gather() {
+        /**
+         * Returns the class loader defining the owner of the element, null for the bootstrap one. Unlike {@link
+         * org.seedstack.shed.ClassLoaders#findMostCompleteClassLoader(Class)}, the context class loader of the thread
+         * is not considered, so that an element is cached in the same partition whatever the calling thread.
+         */
+        ClassLoader classLoader() {
+            return ownerOf(annotatedElement).getClassLoader();
+        }
+
+        GatheredAnnotations gather() {
             List<Annotation> annotations = new ArrayList<>(32);
             gather(annotations);
-            return annotations;
+            return GatheredAnnotations.of(annotations);
         }
 
         private void gather(List<Annotation> list) {
@@ -294,4 +322,59 @@ public final class Annotations {
             return result;
         }
     }
+
+    /**
+     * Returns the class an annotated element belongs to: the class itself, the declaring class of a member or of the
+     * executable of a parameter, or the class of any other element.
+     */
+    private static Class<?> ownerOf(AnnotatedElement annotatedElement) {
+        if (annotatedElement instanceof Class) {
+            return (Class<?>) annotatedElement;
+        } else if (annotatedElement instanceof Member) {
+            return ((Member) annotatedElement).getDeclaringClass();
+        } else if (annotatedElement instanceof Parameter) {
+            return ((Parameter) annotatedElement).getDeclaringExecutable().getDeclaringClass();
+        } else {
+            return annotatedElement.getClass();
+        }
+    }
+
+    /**
+     * The annotations gathered for a context, in the order they were found, indexed by annotation type so that
+     * looking up the annotations of a type doesn't scan them all.
+     */
+    private static final class GatheredAnnotations {
+        private static final GatheredAnnotations NONE = new GatheredAnnotations(Collections.emptyList(),
+                Collections.emptyMap());
+        private final List<Annotation> all;
+        private final Map<Class<? extends Annotation>, List<Annotation>> byType;
+
+        private GatheredAnnotations(List<Annotation> all, Map<Class<? extends Annotation>, List<Annotation>> byType) {
+            this.all = all;
+            this.byType = byType;
+        }
+
+        private static GatheredAnnotations of(List<Annotation> annotations) {
+            if (annotations.isEmpty()) {
+                return NONE;
+            }
+            Map<Class<? extends Annotation>, List<Annotation>> byType = new HashMap<>();
+            for (Annotation annotation : annotations) {
+                byType.computeIfAbsent(annotation.annotationType(), type -> new ArrayList<>(1)).add(annotation);
+            }
+            return new GatheredAnnotations(annotations, byType);
+        }
+
+        private List<Annotation> all() {
+            return all;
+        }
+
+        private List<Annotation> ofType(Class<? extends Annotation> annotationClass) {
+            return byType.getOrDefault(annotationClass, Collections.emptyList());
+        }
+
+        private int size() {
+            return all.size();
+        }
+    }
 }
@@ -7,32 +7,107 @@
  */
 package org.seedstack.shed.reflect;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
+import org.seedstack.shed.ClassLoaders;
 import org.seedstack.shed.cache.Cache;
 import org.seedstack.shed.cache.CacheParameters;
+import org.seedstack.shed.cache.CacheRegistry;
+import org.seedstack.shed.cache.CacheSnapshot;
+import org.seedstack.shed.cache.ClassKey;
+import org.seedstack.shed.cache.Codec;
+import org.seedstack.shed.cache.Codecs;
+import org.seedstack.shed.cache.Weighers;
 import org.seedstack.shed.internal.ShedErrorCode;
 import org.seedstack.shed.internal.ShedException;
 
 public final class Classes {
-    private static Cache<Context, List<Class<?>>> cache = Cache.create(
-            new CacheParameters<Context, List<Class<?>>>()
-                    .setInitialSize(256)
-                    .setMaxSize(1024)
-                    .setLoadingFunction(Context::gather)
+    private static volatile CacheSnapshot<Context, List<Class<?>>> snapshot;
+    private static volatile Cache<Context, List<Class<?>>> cache = createCache(null);
+
+    private static Cache<String, Class<?>> optionalCache = Cache.create(
+            new CacheParameters<String, Class<?>>()
+                    .setName("classes.optional")
+                    .setRegistered(Boolean.getBoolean(CacheRegistry.REGISTER_BUILT_IN_PROPERTY))
+                    .setInitialSize(64)
+                    .setMaxSize(256)
+                    .setNegativeExpireAfterWrite(Duration.ofMinutes(1))
+                    .setLoadingFunction(Classes::forNameOrNull)
     );
 
     private Classes() {
         // no instantiation allowed
     }
 
+    /**
+     * Freezes the caches of gathered classes and class lookups, to be called once the application has started and the
+     * caches have seen most of the classes they will be asked about.
+     *
+     * @see Cache#freeze()
+     */
+    public static void freezeCache() {
+        cache.freeze();
+        optionalCache.freeze();
+    }
+
+    /**
+     * Replaces the cache of gathered classes by a cache restoring the entries of the specified snapshot file, to be
+     * called at startup before classes are gathered. The snapshot is ignored if it doesn't exist or was saved with
+     * another fingerprint. Only the classes resolved by the most complete class loader of the application are saved
+     * and restored: classes of other class loaders, which have their own partition of the cache, are gathered again
+     * at each startup.
+     *
+     * @param path        the snapshot file.
+     * @param fingerprint an identifier of the application version.
+     * @see CacheSnapshot
+     */
+    public static void restoreCache(Path path, long fingerprint) {
+        ClassLoader classLoader = ClassLoaders.findMostCompleteClassLoader(Classes.class);
+        snapshot = CacheSnapshot.open(path, fingerprint, new ContextCodec(classLoader),
+                Codecs.list(Codecs.classReference(classLoader)));
+        cache = createCache(snapshot);
+    }
+
+    /**
+     * Saves the gathered classes to the snapshot file specified to {@link #restoreCache(Path, long)}, if it was called,
+     * for the next startup to restore them.
+     *
+     * @throws IOException if the snapshot file cannot be written.
+     */
+    public static void saveCache() throws IOException {
+        CacheSnapshot<Context, List<Class<?>>> currentSnapshot = snapshot;
+        if (currentSnapshot != null) {
+            currentSnapshot.save();
+        }
+    }
+
+    private static Cache<Context, List<Class<?>>> createCache(CacheSnapshot<Context, List<Class<?>>> snapshot) {
+        return Cache.create(
+                new CacheParameters<Context, List<Class<?>>>()
+                        .setName("classes")
+                        .setRegistered(Boolean.getBoolean(CacheRegistry.REGISTER_BUILT_IN_PROPERTY))
+                        .setInitialSize(256)
+                        .setMaxSize(2048)
+                        .setMaximumWeight(32768)
+                        .setWeigher(Weighers.listSize())
+                        .setClassLoaderPartitioner(Context::classLoader)
+                        .setSnapshot(snapshot)
+                        .setLoadingFunction(Context::gather)
+        );
+    }
+
     /**
      * Instantiate a class by invoking its default constructor. If the specified class denotes an
      * array, an empty array of the correct component type is created. If the specified class denotes
@@ -84,10 +159,14 @@ public final class Classes {
      */
     @SuppressWarnings("unchecked")
     public static <T> Optional<Class<T>> optional(String dependency) {
+        return Optional.ofNullable((Class<T>) optionalCache.get(dependency));
+    }
+
+    private static Class<?> forNameOrNull(String name) {
         try {
-            return Optional.of((Class<T>) Class.forName(dependency));
+            return Class.forName(name);
         } catch (ClassNotFoundException | NoClassDefFoundError e) {
-            return Optional.empty();
+            return null;
         }
     }
 
@@ -245,7 +324,7 @@ public final class Classes {
         }
     }
 
-    private static final class Context {
+    private static final class Context implements ClassKey {
         private final Class<?> startingClass;
         private boolean includeInterfaces = false;
         private boolean includeClasses = false;
@@ -263,6 +342,25 @@ public final class Classes {
             this.includeClasses = includeClasses;
         }
 
+        /**
+         * Returns the class loader defining the starting class, null for the bootstrap one. Unlike {@link
+         * ClassLoaders#findMostCompleteClassLoader(Class)}, the context class loader of the thread is not considered,
+         * so that a class is cached in the same partition whatever the calling thread.
+         */
+        ClassLoader classLoader() {
+            return startingClass.getClassLoader();
+        }
+
+        @Override
+        public Class<?> keyClass() {
+            return startingClass;
+        }
+
+        @Override
+        public int keyFlags() {
+            return (includeInterfaces ? 1 : 0) | (includeClasses ? 2 : 0);
+        }
+
         List<Class<?>> gather() {
             List<Class<?>> classes = new ArrayList<>(32);
             gather(startingClass, classes);
@@ -316,4 +414,27 @@ public final class Classes {
             return result;
         }
     }
+
+    private static final class ContextCodec implements Codec<Context> {
+        private final Codec<Class<?>> classCodec;
+
+        private ContextCodec(ClassLoader classLoader) {
+            this.classCodec = Codecs.classReference(classLoader);
+        }
+
+        @Override
+        public void write(Context context, DataOutput output) throws IOException {
+            classCodec.write(context.startingClass, output);
+            output.writeBoolean(context.includeInterfaces);
+            output.writeBoolean(context.includeClasses);
+        }
+
+        @Override
+        public Context read(DataInput input) throws IOException {
+            Context context = new Context(classCodec.read(input));
+            context.setIncludeInterfaces(input.readBoolean());
+            context.setIncludeClasses(input.readBoolean());
+            return context;
+        }
+    }
 }
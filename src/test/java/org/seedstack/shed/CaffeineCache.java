@@ -12,6 +12,7 @@ import com.github.benmanes.caffeine.cache.LoadingCache;
 import org.seedstack.shed.cache.Cache;
 import org.seedstack.shed.cache.CacheFactory;
 import org.seedstack.shed.cache.CacheParameters;
+import org.seedstack.shed.cache.CacheStats;
 
 public class CaffeineCache<K, V> implements Cache<K, V> {
     private final LoadingCache<K, V> cache;
@@ -24,14 +25,40 @@ public class CaffeineCache<K, V> implements Cache<K, V> {
     }
 
     private CaffeineCache(CacheParameters<K, V> cacheParameters) {
-        cache = Caffeine.newBuilder()
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
                 .initialCapacity(cacheParameters.getInitialSize())
-                .maximumSize(cacheParameters.getMaxSize())
-                .build(cacheParameters.getLoadingFunction()::apply);
+                .maximumSize(cacheParameters.getMaxSize());
+        if (cacheParameters.getExpireAfterWrite() != null) {
+            builder.expireAfterWrite(cacheParameters.getExpireAfterWrite());
+        }
+        if (cacheParameters.getExpireAfterAccess() != null) {
+            builder.expireAfterAccess(cacheParameters.getExpireAfterAccess());
+        }
+        if (cacheParameters.isRecordingStats()) {
+            builder.recordStats();
+        }
+        cache = builder.build(cacheParameters.getLoadingFunction()::apply);
     }
 
     @Override
     public V get(K key) {
         return cache.get(key);
     }
+
+    @Override
+    public void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public CacheStats stats() {
+        com.github.benmanes.caffeine.cache.stats.CacheStats stats = cache.stats();
+        return new CacheStats(stats.hitCount(), stats.missCount(), stats.loadSuccessCount(),
+                stats.loadFailureCount(), stats.totalLoadTime(), stats.evictionCount());
+    }
 }
@@ -42,4 +42,14 @@ public class GuavaCache<K, V> implements Cache<K, V> {
     public V get(K key) {
         return cache.getUnchecked(key);
     }
+
+    @Override
+    public void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
 }
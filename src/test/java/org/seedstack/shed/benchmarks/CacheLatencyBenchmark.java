@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Samples the latency of each request to report its distribution, including the p99, for the same workloads as
+ * {@link CacheThroughputBenchmark}. Hits and misses are not counted here as sampling doesn't report them.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheLatencyBenchmark {
+    @Benchmark
+    @Threads(1)
+    public Integer oneThread(CacheWorkload workload, CacheWorkload.Requests requests) {
+        return requests.perform(workload.cache, null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer fourThreads(CacheWorkload workload, CacheWorkload.Requests requests) {
+        return requests.perform(workload.cache, null);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Integer sixteenThreads(CacheWorkload workload, CacheWorkload.Requests requests) {
+        return requests.perform(workload.cache, null);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Integer sixtyFourThreads(CacheWorkload workload, CacheWorkload.Requests requests) {
+        return requests.perform(workload.cache, null);
+    }
+}
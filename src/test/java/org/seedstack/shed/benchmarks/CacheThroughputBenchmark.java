@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures the throughput and hit ratio of each cache factory under contention, for each key distribution and
+ * read/write mix of {@link CacheWorkload}. The hit ratio is reported by the hits and misses counters.
+ */
+@BenchmarkMode(Mode.Throughput)
+public class CacheThroughputBenchmark {
+    @Benchmark
+    @Threads(1)
+    public Integer oneThread(CacheWorkload workload, CacheWorkload.Requests requests, HitCounters hitCounters) {
+        return requests.perform(workload.cache, hitCounters);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer fourThreads(CacheWorkload workload, CacheWorkload.Requests requests, HitCounters hitCounters) {
+        return requests.perform(workload.cache, hitCounters);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Integer sixteenThreads(CacheWorkload workload, CacheWorkload.Requests requests,
+            HitCounters hitCounters) {
+        return requests.perform(workload.cache, hitCounters);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Integer sixtyFourThreads(CacheWorkload workload, CacheWorkload.Requests requests,
+            HitCounters hitCounters) {
+        return requests.perform(workload.cache, hitCounters);
+    }
+}
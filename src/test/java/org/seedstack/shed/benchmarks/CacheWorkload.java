@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.seedstack.shed.CaffeineCache;
+import org.seedstack.shed.GuavaCache;
+import org.seedstack.shed.cache.Cache;
+import org.seedstack.shed.cache.CacheFactory;
+import org.seedstack.shed.cache.CacheParameters;
+import org.seedstack.shed.cache.ConcurrentLRUCache;
+import org.seedstack.shed.cache.FakeCache;
+import org.seedstack.shed.cache.SimpleLRUCache;
+import org.seedstack.shed.cache.TinyLFUCache;
+import org.seedstack.shed.cache.UnboundedCache;
+
+/**
+ * A cache shared by all benchmark threads, created by the benchmarked factory, and the distribution and read/write
+ * mix of the requests. Writes invalidate the requested key so that it has to be loaded again.
+ */
+@State(Scope.Benchmark)
+public class CacheWorkload {
+    static final int MAX_SIZE = 1 << 10;
+    static final int KEY_SPACE = 1 << 14;
+    static final int SEQUENCE_LENGTH = 1 << 16;
+    private static final AtomicLong SEEDS = new AtomicLong(42);
+    @Param({"ConcurrentLRU", "TinyLFU", "SimpleLRU", "Unbounded", "Fake", "Caffeine", "Guava"})
+    String cacheFactory;
+    @Param({"UNIFORM", "ZIPFIAN", "SCAN"})
+    KeyDistribution keyDistribution;
+    @Param({"100", "90"})
+    int readPercentage;
+    Cache<Integer, Integer> cache;
+
+    @Setup
+    public void setUp() {
+        cache = Cache.create(new CacheParameters<Integer, Integer>()
+                .setMaxSize(MAX_SIZE)
+                .setLoadingFunction(CacheWorkload::load), factoryClass(cacheFactory));
+        // warm the cache up with the requested distribution
+        for (int key : keyDistribution.generate(SEQUENCE_LENGTH, KEY_SPACE, new Random(SEEDS.get()))) {
+            cache.get(key);
+        }
+    }
+
+    private static Integer load(Integer key) {
+        HitCounters hitCounters = HitCounters.CURRENT.get();
+        if (hitCounters != null) {
+            hitCounters.misses++;
+        }
+        return key;
+    }
+
+    private static Class<? extends CacheFactory> factoryClass(String name) {
+        switch (name) {
+            case "ConcurrentLRU":
+                return ConcurrentLRUCache.Factory.class;
+            case "TinyLFU":
+                return TinyLFUCache.Factory.class;
+            case "SimpleLRU":
+                return SimpleLRUCache.Factory.class;
+            case "Unbounded":
+                return UnboundedCache.Factory.class;
+            case "Fake":
+                return FakeCache.Factory.class;
+            case "Caffeine":
+                return CaffeineCache.Factory.class;
+            case "Guava":
+                return GuavaCache.Factory.class;
+            default:
+                throw new IllegalArgumentException("Unknown cache factory " + name);
+        }
+    }
+
+    /**
+     * The pre-generated requests of a benchmark thread, replayed in a loop.
+     */
+    @State(Scope.Thread)
+    public static class Requests {
+        private Integer[] keys;
+        private boolean[] writes;
+        private int index;
+
+        @Setup
+        public void setUp(CacheWorkload workload) {
+            Random random = new Random(SEEDS.incrementAndGet());
+            int[] generatedKeys = workload.keyDistribution.generate(SEQUENCE_LENGTH, KEY_SPACE, random);
+            keys = new Integer[SEQUENCE_LENGTH];
+            writes = new boolean[SEQUENCE_LENGTH];
+            for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+                keys[i] = generatedKeys[i];
+                writes[i] = random.nextInt(100) >= workload.readPercentage;
+            }
+        }
+
+        /**
+         * Performs the next request, counting its hit or miss if hit counters are specified.
+         */
+        Integer perform(Cache<Integer, Integer> cache, HitCounters hitCounters) {
+            int i = index++ & (SEQUENCE_LENGTH - 1);
+            if (writes[i]) {
+                cache.invalidate(keys[i]);
+                return null;
+            }
+            if (hitCounters == null) {
+                return cache.get(keys[i]);
+            }
+            long missesBefore = hitCounters.misses;
+            Integer value = cache.get(keys[i]);
+            if (hitCounters.misses == missesBefore) {
+                hitCounters.hits++;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the hits and misses of a benchmark thread, reported by JMH next to the throughput. Misses are counted by the
+ * loading function, which runs in the requesting thread for all the benchmarked caches.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class HitCounters {
+    static final ThreadLocal<HitCounters> CURRENT = new ThreadLocal<>();
+    public long hits;
+    public long misses;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        hits = 0;
+        misses = 0;
+        CURRENT.set(this);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Distributions of the keys requested by cache benchmarks, generated in advance so that benchmarks only measure the
+ * cache. Keys are scrambled over the key space so that popular keys are not contiguous.
+ */
+public enum KeyDistribution {
+    /**
+     * All keys of the key space are equally likely.
+     */
+    UNIFORM {
+        @Override
+        int[] generate(int count, int keySpace, Random random) {
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = random.nextInt(keySpace);
+            }
+            return keys;
+        }
+    },
+    /**
+     * A few keys of the key space are requested most of the time, following Zipf's law with an exponent of 0.99.
+     */
+    ZIPFIAN {
+        @Override
+        int[] generate(int count, int keySpace, Random random) {
+            double[] cumulativeProbabilities = zipfCumulativeProbabilities(keySpace);
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = scramble(zipfRank(cumulativeProbabilities, random), keySpace);
+            }
+            return keys;
+        }
+    },
+    /**
+     * Half of the requests follow the Zipfian distribution and the other half scan keys out of the key space that
+     * are seen only once per pass, which flushes caches that don't resist scans.
+     */
+    SCAN {
+        @Override
+        int[] generate(int count, int keySpace, Random random) {
+            double[] cumulativeProbabilities = zipfCumulativeProbabilities(keySpace);
+            int[] keys = new int[count];
+            int scanned = 0;
+            for (int i = 0; i < count; i++) {
+                if ((i & 1) == 0) {
+                    keys[i] = scramble(zipfRank(cumulativeProbabilities, random), keySpace);
+                } else {
+                    keys[i] = keySpace + scanned++ % (4 * keySpace);
+                }
+            }
+            return keys;
+        }
+    };
+
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    /**
+     * Generates the specified number of keys.
+     *
+     * @param count    the number of keys to generate.
+     * @param keySpace the number of distinct popular keys, which must be a power of two.
+     * @param random   the source of randomness.
+     * @return the generated keys.
+     */
+    abstract int[] generate(int count, int keySpace, Random random);
+
+    private static double[] zipfCumulativeProbabilities(int keySpace) {
+        double[] cumulativeProbabilities = new double[keySpace];
+        double sum = 0;
+        for (int rank = 0; rank < keySpace; rank++) {
+            sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulativeProbabilities[rank] = sum;
+        }
+        for (int rank = 0; rank < keySpace; rank++) {
+            cumulativeProbabilities[rank] /= sum;
+        }
+        return cumulativeProbabilities;
+    }
+
+    private static int zipfRank(double[] cumulativeProbabilities, Random random) {
+        int index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulativeProbabilities.length - 1);
+    }
+
+    private static int scramble(int rank, int keySpace) {
+        // multiplying by an odd number is a bijection modulo a power of two
+        return (rank * 0x9E3779B1) & (keySpace - 1);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class AdaptiveSizingTest {
+    @Test
+    public void cacheGrowsToFitTheWorkingSet() {
+        checkGrowth(ConcurrentLRUCache.Factory.class);
+        checkGrowth(TinyLFUCache.Factory.class);
+    }
+
+    @Test
+    public void cacheShrinksWhenLargerSizesDontHelp() {
+        checkShrinking(ConcurrentLRUCache.Factory.class);
+        checkShrinking(TinyLFUCache.Factory.class);
+    }
+
+    @Test
+    public void sizeStaysWithinBounds() {
+        AbstractSegmentedCache<Integer, Integer> cache = createCache(256, 128, 1024, ConcurrentLRUCache.Factory.class);
+        Random random = new Random(42);
+        for (int i = 0; i < 500_000; i++) {
+            cache.get(random.nextInt(2000));
+        }
+        assertThat(cache.capacity()).isEqualTo(1024);
+        assertThat(cache.weightedSize()).isLessThanOrEqualTo(1024);
+    }
+
+    @Test
+    public void weightBoundIsScaled() {
+        AbstractSegmentedCache<Integer, Integer> cache = (AbstractSegmentedCache<Integer, Integer>) Cache.create(
+                new CacheParameters<Integer, Integer>()
+                        .setMaxSize(1024)
+                        .setMaximumWeight(4096)
+                        .setWeigher((key, value) -> 4)
+                        .setAdaptiveSizing(64, 8192)
+                        .setLoadingFunction(key -> key),
+                ConcurrentLRUCache.Factory.class);
+        assertThat(cache.capacity()).isEqualTo(4096);
+        for (int i = 0; i < 200_000; i++) {
+            cache.get(i % 10);
+        }
+        assertThat(cache.capacity()).isEqualTo(256);
+    }
+
+    private void checkGrowth(Class<? extends CacheFactory> factoryClass) {
+        AbstractSegmentedCache<Integer, Integer> cache = createCache(256, 64, 8192, factoryClass);
+        Random random = new Random(42);
+        for (int i = 0; i < 1_000_000; i++) {
+            cache.get(random.nextInt(4000));
+        }
+        assertThat(cache.capacity()).isGreaterThanOrEqualTo(4096);
+        assertThat(cache.weightedSize()).isGreaterThan(3000);
+    }
+
+    private void checkShrinking(Class<? extends CacheFactory> factoryClass) {
+        AbstractSegmentedCache<Integer, Integer> cache = createCache(4096, 64, 8192, factoryClass);
+        Random random = new Random(42);
+        for (int i = 0; i < 500_000; i++) {
+            cache.get(random.nextInt(50));
+        }
+        assertThat(cache.capacity()).isEqualTo(64);
+    }
+
+    private AbstractSegmentedCache<Integer, Integer> createCache(int maxSize, int minAdaptiveSize,
+            int maxAdaptiveSize, Class<? extends CacheFactory> factoryClass) {
+        return (AbstractSegmentedCache<Integer, Integer>) Cache.create(new CacheParameters<Integer, Integer>()
+                        .setMaxSize(maxSize)
+                        .setAdaptiveSizing(minAdaptiveSize, maxAdaptiveSize)
+                        .setLoadingFunction(key -> key),
+                factoryClass);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncCacheTest {
+    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallersShareTheSameFuture() throws Exception {
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        AsyncCache<Integer, String> cache = Cache.createAsync(new CacheParameters<Integer, String>()
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    try {
+                        releaseLoad.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return String.valueOf(key);
+                }), executorService);
+
+        CompletableFuture<String> first = cache.getAsync(1);
+        CompletableFuture<String> second = cache.getAsync(1);
+        assertThat(first).isSameAs(second);
+        assertThat(first.isDone()).isFalse();
+        releaseLoad.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("1");
+        assertThat(cache.getAsync(1)).isSameAs(first);
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void failedFuturesAreDiscarded() throws Exception {
+        AsyncCache<Integer, String> cache = Cache.createAsync(new CacheParameters<Integer, String>()
+                .setLoadingFunction(key -> {
+                    if (loadCount.incrementAndGet() == 1) {
+                        throw new IllegalStateException("first load fails");
+                    }
+                    return String.valueOf(key);
+                }), executorService);
+
+        CompletableFuture<String> failed = cache.getAsync(1);
+        try {
+            failed.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+        assertThat(failed.isCompletedExceptionally()).isTrue();
+        Thread.sleep(50);
+        assertThat(cache.getAsync(1).get(5, TimeUnit.SECONDS)).isEqualTo("1");
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void failedFuturesCompletedInTheCallerAreDiscarded() throws Exception {
+        AsyncCache<Integer, String> cache = Cache.createAsync(new CacheParameters<Integer, String>()
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return null;
+                }), Runnable::run);
+
+        assertThat(cache.getAsync(1).get()).isNull();
+        assertThat(cache.getAsync(1).get()).isNull();
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void failedFuturesDontDiscardNewerLoads() throws Exception {
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        AsyncCache<Integer, String> cache = Cache.createAsync(new CacheParameters<Integer, String>()
+                .setLoadingFunction(key -> {
+                    if (loadCount.incrementAndGet() == 1) {
+                        throw new IllegalStateException("first load fails");
+                    }
+                    try {
+                        releaseLoad.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return String.valueOf(key);
+                }), executorService);
+
+        CompletableFuture<String> failed = cache.getAsync(1);
+        while (!failed.isDone()) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<String> retried = cache.getAsync(1);
+        assertThat(retried).isNotSameAs(failed);
+        assertThat(cache.getAsync(1)).isSameAs(retried);
+        releaseLoad.countDown();
+        assertThat(retried.get(5, TimeUnit.SECONDS)).isEqualTo("1");
+        assertThat(cache.getAsync(1)).isSameAs(retried);
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void settingsApplyingToValuesAreRejected() {
+        assertThatThrownBy(() -> Cache.createAsync(new CacheParameters<Integer, String>()
+                .setRefreshAfterWrite(Duration.ofMinutes(1))
+                .setLoadingFunction(String::valueOf), executorService))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cache.createAsync(new CacheParameters<Integer, String>()
+                .setNegativeExpireAfterWrite(Duration.ofMinutes(1))
+                .setLoadingFunction(String::valueOf), executorService))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cache.createAsync(new CacheParameters<Integer, String>()
+                .setHotKeysSize(8)
+                .setLoadingFunction(String::valueOf), executorService))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
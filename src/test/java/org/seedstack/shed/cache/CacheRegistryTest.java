@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.management.ManagementFactory;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Test;
+
+public class CacheRegistryTest {
+    private static final String NAME = "test.registry";
+
+    @After
+    public void tearDown() {
+        CacheRegistry.unregister(NAME);
+        System.clearProperty("shed.cache." + NAME + ".maxSize");
+        System.clearProperty("shed.cache." + NAME + ".policy");
+        System.clearProperty("shed.cache." + NAME + ".recordingStats");
+    }
+
+    @Test
+    public void namedCachesAreRegistered() {
+        Cache<Integer, Integer> cache = createCache(ConcurrentLRUCache.Factory.class);
+        cache.get(1);
+        assertThat(CacheRegistry.names()).contains(NAME);
+        CacheMXBean mxBean = CacheRegistry.get(NAME).get();
+        assertThat(mxBean.getPolicy()).isEqualTo("lru");
+        assertThat(mxBean.getMaxSize()).isEqualTo(512);
+        assertThat(mxBean.getCapacity()).isEqualTo(512);
+        assertThat(mxBean.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void shutdownUnregistersAllCaches() throws Exception {
+        createCache(ConcurrentLRUCache.Factory.class).get(1);
+        CacheRegistry.shutdown();
+        assertThat(CacheRegistry.names()).isEmpty();
+        ObjectName objectName = new ObjectName("org.seedstack.shed:type=Cache,name=" + ObjectName.quote(NAME));
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isFalse();
+    }
+
+    @Test
+    public void cachesAreExposedOverJmx() throws Exception {
+        Cache<Integer, Integer> cache = createCache(ConcurrentLRUCache.Factory.class);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i);
+        }
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("org.seedstack.shed:type=Cache,name=" + ObjectName.quote(NAME));
+        assertThat(mBeanServer.getAttribute(objectName, "Size")).isEqualTo(100L);
+        mBeanServer.setAttribute(objectName, new Attribute("MaxSize", 64));
+        assertThat(mBeanServer.getAttribute(objectName, "Capacity")).isEqualTo(64L);
+        assertThat((Long) mBeanServer.getAttribute(objectName, "Size")).isLessThanOrEqualTo(64);
+
+        CacheRegistry.unregister(NAME);
+        assertThat(mBeanServer.isRegistered(objectName)).isFalse();
+    }
+
+    @Test
+    public void segmentedCachesAreResizedInPlace() {
+        Cache<Integer, Integer> cache = createCache(ConcurrentLRUCache.Factory.class);
+        for (int i = 0; i < 512; i++) {
+            cache.get(i);
+        }
+        CacheMXBean mxBean = CacheRegistry.get(NAME).get();
+        mxBean.setMaxSize(128);
+        assertThat(mxBean.getSize()).isBetween(1, 128);
+        mxBean.setMaxSize(1024);
+        for (int i = 0; i < 1024; i++) {
+            cache.get(i);
+        }
+        assertThat(mxBean.getCapacity()).isEqualTo(1024);
+        assertThat(mxBean.getSize()).isGreaterThan(512);
+    }
+
+    @Test
+    public void otherCachesAreRecreatedWithTheNewSize() {
+        Cache<Integer, Integer> cache = createCache(SimpleLRUCache.Factory.class);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i);
+        }
+        CacheMXBean mxBean = CacheRegistry.get(NAME).get();
+        mxBean.setMaxSize(16);
+        assertThat(mxBean.getSize()).isEqualTo(0);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i);
+        }
+        assertThat(mxBean.getSize()).isEqualTo(16);
+    }
+
+    @Test
+    public void policyCanBeChanged() {
+        Cache<Integer, Integer> cache = createCache(ConcurrentLRUCache.Factory.class);
+        cache.get(1);
+        CacheMXBean mxBean = CacheRegistry.get(NAME).get();
+        mxBean.setPolicy("tinylfu");
+        assertThat(mxBean.getPolicy()).isEqualTo("tinylfu");
+        assertThat(mxBean.getSize()).isEqualTo(0);
+        assertThat(cache.get(1)).isEqualTo(2);
+        mxBean.setPolicy(UnboundedCache.Factory.class.getName());
+        assertThat(mxBean.getPolicy()).isEqualTo("unbounded");
+        assertThat(mxBean.getCapacity()).isEqualTo(-1);
+        assertThatThrownBy(() -> mxBean.setPolicy("unknown")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void systemPropertiesOverrideParameters() {
+        System.setProperty("shed.cache." + NAME + ".maxSize", "32");
+        System.setProperty("shed.cache." + NAME + ".policy", "simplelru");
+        System.setProperty("shed.cache." + NAME + ".recordingStats", "true");
+        Cache<Integer, Integer> cache = createCache(ConcurrentLRUCache.Factory.class);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i);
+        }
+        CacheMXBean mxBean = CacheRegistry.get(NAME).get();
+        assertThat(mxBean.getPolicy()).isEqualTo("simplelru");
+        assertThat(mxBean.getMaxSize()).isEqualTo(32);
+        assertThat(mxBean.getSize()).isEqualTo(32);
+        assertThat(mxBean.getEvictionCount()).isEqualTo(68);
+    }
+
+    @Test
+    public void systemPropertiesApplyToUnregisteredCaches() {
+        System.setProperty("shed.cache." + NAME + ".maxSize", "32");
+        System.setProperty("shed.cache." + NAME + ".policy", "simplelru");
+        Cache<Integer, Integer> cache = Cache.create(new CacheParameters<Integer, Integer>()
+                        .setName(NAME)
+                        .setRegistered(false)
+                        .setMaxSize(512)
+                        .setLoadingFunction(key -> key + 1),
+                ConcurrentLRUCache.Factory.class);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i);
+        }
+        assertThat(CacheRegistry.names()).doesNotContain(NAME);
+        assertThat(cache).isInstanceOf(SimpleLRUCache.class);
+        assertThat(((SimpleLRUCache<Integer, Integer>) cache).size()).isEqualTo(32);
+    }
+
+    @Test
+    public void invalidSystemPropertiesAreIgnored() {
+        System.setProperty("shed.cache." + NAME + ".maxSize", "many");
+        System.setProperty("shed.cache." + NAME + ".policy", "unknown");
+        createCache(ConcurrentLRUCache.Factory.class);
+        CacheMXBean mxBean = CacheRegistry.get(NAME).get();
+        assertThat(mxBean.getPolicy()).isEqualTo("lru");
+        assertThat(mxBean.getMaxSize()).isEqualTo(512);
+    }
+
+    @Test
+    public void weightBoundIsScaledWithTheMaxSize() {
+        Cache.create(new CacheParameters<Integer, Integer>()
+                        .setName(NAME)
+                        .setMaxSize(100)
+                        .setMaximumWeight(1000)
+                        .setWeigher((key, value) -> 10)
+                        .setLoadingFunction(key -> key),
+                ConcurrentLRUCache.Factory.class);
+        CacheMXBean mxBean = CacheRegistry.get(NAME).get();
+        assertThat(mxBean.getCapacity()).isEqualTo(1000);
+        mxBean.setMaxSize(50);
+        assertThat(mxBean.getCapacity()).isEqualTo(500);
+    }
+
+    private Cache<Integer, Integer> createCache(Class<? extends CacheFactory> factoryClass) {
+        return Cache.create(new CacheParameters<Integer, Integer>()
+                        .setName(NAME)
+                        .setMaxSize(512)
+                        .setLoadingFunction(key -> key + 1),
+                factoryClass);
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Replays a {@link CacheTrace} against several eviction policies at several sizes and prints their hit ratios, to
+ * choose the policy and the size of a traced cache. Run it with the trace file as first argument, optionally followed
+ * by the sizes to simulate. By default, sizes range from 0.5% to 100% of the number of distinct keys in the trace.
+ */
+public class CacheSimulator {
+    private static final double[] DEFAULT_SIZE_RATIOS = {0.005, 0.01, 0.02, 0.05, 0.1, 0.2, 0.5, 1};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: CacheSimulator <trace file> [size...]");
+            System.exit(1);
+        }
+        Trace trace = Trace.read(args[0]);
+        int[] sizes = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : defaultSizes(trace.distinctKeys());
+        System.out.printf("%d accesses, %d distinct keys, recorded hit ratio %.4f%n", trace.keys.length,
+                trace.distinctKeys(), trace.recordedHitRatio());
+        System.out.printf("%10s", "size");
+        for (Policy policy : Policy.values()) {
+            System.out.printf("%10s", policy);
+        }
+        System.out.println();
+        for (int size : sizes) {
+            System.out.printf("%10d", size);
+            for (Policy policy : Policy.values()) {
+                System.out.printf("%10.4f", policy.hitRatio(trace.keys, size));
+            }
+            System.out.println();
+        }
+    }
+
+    static int[] defaultSizes(int distinctKeys) {
+        return Arrays.stream(DEFAULT_SIZE_RATIOS)
+                .mapToInt(ratio -> Math.max(1, (int) (distinctKeys * ratio)))
+                .distinct()
+                .toArray();
+    }
+
+    /**
+     * The accesses of a trace file.
+     */
+    static final class Trace {
+        private final int[] keys;
+        private final int hitCount;
+
+        private Trace(int[] keys, int hitCount) {
+            this.keys = keys;
+            this.hitCount = hitCount;
+        }
+
+        static Trace read(String path) throws IOException {
+            int[][] keys = {new int[1024]};
+            int[] counts = new int[2];
+            CacheTrace.read(Paths.get(path), (hash, hit) -> {
+                if (counts[0] == keys[0].length) {
+                    keys[0] = Arrays.copyOf(keys[0], counts[0] * 2);
+                }
+                keys[0][counts[0]++] = hash;
+                if (hit) {
+                    counts[1]++;
+                }
+            });
+            return new Trace(Arrays.copyOf(keys[0], counts[0]), counts[1]);
+        }
+
+        int[] keys() {
+            return keys;
+        }
+
+        int distinctKeys() {
+            return (int) Arrays.stream(keys).distinct().count();
+        }
+
+        double recordedHitRatio() {
+            return keys.length == 0 ? 0 : (double) hitCount / keys.length;
+        }
+    }
+
+    /**
+     * The simulated eviction policies.
+     */
+    enum Policy {
+        LRU(LruSimulation::new),
+        CLOCK(ClockSimulation::new),
+        ARC(ArcSimulation::new),
+        TINYLFU(TinyLfuSimulation::new);
+
+        private final IntFunction<Simulation> simulationFactory;
+
+        Policy(IntFunction<Simulation> simulationFactory) {
+            this.simulationFactory = simulationFactory;
+        }
+
+        double hitRatio(int[] keys, int size) {
+            Simulation simulation = simulationFactory.apply(size);
+            int hitCount = 0;
+            for (int key : keys) {
+                if (simulation.access(key)) {
+                    hitCount++;
+                }
+            }
+            return keys.length == 0 ? 0 : (double) hitCount / keys.length;
+        }
+    }
+
+    /**
+     * A cache of the specified size holding keys only.
+     */
+    private interface Simulation {
+        /**
+         * Accesses a key, adding it to the cache if it is missing, and returns true if it was present.
+         */
+        boolean access(int key);
+    }
+
+    private static final class LruSimulation implements Simulation {
+        private final Map<Integer, Boolean> entries;
+
+        private LruSimulation(int size) {
+            entries = new LinkedHashMap<Integer, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                    return size() > size;
+                }
+            };
+        }
+
+        @Override
+        public boolean access(int key) {
+            return entries.put(key, Boolean.TRUE) != null;
+        }
+    }
+
+    private static final class ClockSimulation implements Simulation {
+        private final int[] keys;
+        private final boolean[] referenced;
+        private final Map<Integer, Integer> slots = new HashMap<>();
+        private int hand;
+
+        private ClockSimulation(int size) {
+            keys = new int[size];
+            referenced = new boolean[size];
+        }
+
+        @Override
+        public boolean access(int key) {
+            Integer slot = slots.get(key);
+            if (slot != null) {
+                referenced[slot] = true;
+                return true;
+            }
+            if (slots.size() == keys.length) {
+                while (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand = (hand + 1) % keys.length;
+                }
+                slots.remove(keys[hand]);
+            } else {
+                hand = slots.size();
+            }
+            keys[hand] = key;
+            referenced[hand] = false;
+            slots.put(key, hand);
+            hand = (hand + 1) % keys.length;
+            return false;
+        }
+    }
+
+    /**
+     * The Adaptive Replacement Cache of Megiddo and Modha: recently and frequently used keys are kept in two LRU lists
+     * whose target sizes adapt to the hits on the ghost lists of their recently evicted keys.
+     */
+    private static final class ArcSimulation implements Simulation {
+        private final int size;
+        private final LinkedHashMap<Integer, Boolean> recent = new LinkedHashMap<>();
+        private final LinkedHashMap<Integer, Boolean> frequent = new LinkedHashMap<>();
+        private final LinkedHashMap<Integer, Boolean> recentGhosts = new LinkedHashMap<>();
+        private final LinkedHashMap<Integer, Boolean> frequentGhosts = new LinkedHashMap<>();
+        private int recentTarget;
+
+        private ArcSimulation(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public boolean access(int key) {
+            if (recent.remove(key) != null || frequent.remove(key) != null) {
+                frequent.put(key, Boolean.TRUE);
+                return true;
+            }
+            if (recentGhosts.remove(key) != null) {
+                int delta = Math.max(1, frequentGhosts.size() / (recentGhosts.size() + 1));
+                recentTarget = Math.min(size, recentTarget + delta);
+                replace(false);
+                frequent.put(key, Boolean.TRUE);
+            } else if (frequentGhosts.remove(key) != null) {
+                int delta = Math.max(1, recentGhosts.size() / (frequentGhosts.size() + 1));
+                recentTarget = Math.max(0, recentTarget - delta);
+                replace(true);
+                frequent.put(key, Boolean.TRUE);
+            } else {
+                if (recent.size() + recentGhosts.size() == size) {
+                    if (recent.size() < size) {
+                        removeEldest(recentGhosts);
+                        replace(false);
+                    } else {
+                        removeEldest(recent);
+                    }
+                } else if (recent.size() + frequent.size() + recentGhosts.size() + frequentGhosts.size() >= size) {
+                    if (recent.size() + frequent.size() + recentGhosts.size() + frequentGhosts.size() >= 2 * size) {
+                        removeEldest(frequentGhosts);
+                    }
+                    if (recent.size() + frequent.size() >= size) {
+                        replace(false);
+                    }
+                }
+                recent.put(key, Boolean.TRUE);
+            }
+            return false;
+        }
+
+        private void replace(boolean inFrequentGhosts) {
+            if (recent.isEmpty() && frequent.isEmpty()) {
+                return;
+            }
+            boolean recentOverTarget = recent.size() > recentTarget
+                    || inFrequentGhosts && recent.size() == recentTarget;
+            if (!recent.isEmpty() && (recentOverTarget || frequent.isEmpty())) {
+                recentGhosts.put(removeEldest(recent), Boolean.TRUE);
+            } else {
+                frequentGhosts.put(removeEldest(frequent), Boolean.TRUE);
+            }
+        }
+
+        private static int removeEldest(LinkedHashMap<Integer, Boolean> keys) {
+            Iterator<Integer> iterator = keys.keySet().iterator();
+            int key = iterator.next();
+            iterator.remove();
+            return key;
+        }
+    }
+
+    /**
+     * The Window TinyLFU policy of {@link TinyLFUCache}: a 1% LRU admission window in front of a segmented LRU main
+     * region, admitting candidates more popular than their victim according to a {@link FrequencySketch}.
+     */
+    private static final class TinyLfuSimulation implements Simulation {
+        private final FrequencySketch sketch;
+        private final int windowSize;
+        private final int protectedSize;
+        private final int probationSize;
+        private final LinkedHashMap<Integer, Boolean> window = new LinkedHashMap<>();
+        private final LinkedHashMap<Integer, Boolean> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<Integer, Boolean> protectedArea = new LinkedHashMap<>();
+
+        private TinyLfuSimulation(int size) {
+            sketch = new FrequencySketch(size);
+            windowSize = Math.max(1, (int) (size * 0.01));
+            int mainSize = size - windowSize;
+            protectedSize = (int) (mainSize * 0.8);
+            probationSize = mainSize - protectedSize;
+        }
+
+        @Override
+        public boolean access(int key) {
+            sketch.increment(key);
+            if (window.remove(key) != null) {
+                window.put(key, Boolean.TRUE);
+                return true;
+            }
+            if (probation.remove(key) != null) {
+                protectedArea.put(key, Boolean.TRUE);
+                if (protectedArea.size() > protectedSize) {
+                    probation.put(ArcSimulation.removeEldest(protectedArea), Boolean.TRUE);
+                }
+                return true;
+            }
+            if (protectedArea.remove(key) != null) {
+                protectedArea.put(key, Boolean.TRUE);
+                return true;
+            }
+            window.put(key, Boolean.TRUE);
+            if (window.size() > windowSize) {
+                int candidate = ArcSimulation.removeEldest(window);
+                if (probation.size() + protectedArea.size() < probationSize + protectedSize) {
+                    probation.put(candidate, Boolean.TRUE);
+                } else if (!probation.isEmpty()) {
+                    int victim = probation.keySet().iterator().next();
+                    if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+                        probation.remove(victim);
+                        probation.put(candidate, Boolean.TRUE);
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class CacheStatsTest {
+    @Test
+    public void statsAreEmptyByDefault() {
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setLoadingFunction(String::valueOf));
+        cache.get(1);
+        cache.get(1);
+        assertThat(cache.stats().getRequestCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void statsAreRecorded() {
+        checkStats(ConcurrentLRUCache.Factory.class, 1);
+        checkStats(TinyLFUCache.Factory.class, 1);
+        checkStats(SimpleLRUCache.Factory.class, 1);
+        checkStats(UnboundedCache.Factory.class, 0);
+    }
+
+    @Test
+    public void fakeCacheOnlyMisses() {
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setRecordingStats(true)
+                .setLoadingFunction(String::valueOf), FakeCache.Factory.class);
+        cache.get(1);
+        cache.get(1);
+        assertThat(cache.stats().getHitCount()).isEqualTo(0L);
+        assertThat(cache.stats().getMissCount()).isEqualTo(2L);
+        assertThat(cache.stats().getLoadSuccessCount()).isEqualTo(2L);
+    }
+
+    private void checkStats(Class<? extends CacheFactory> factoryClass, long expectedEvictions) {
+        CacheParameters<Integer, String> cacheParameters = new CacheParameters<Integer, String>()
+                .setMaxSize(2)
+                .setRecordingStats(true)
+                .setLoadingFunction(key -> {
+                    if (key < 0) {
+                        throw new IllegalArgumentException("negative key");
+                    }
+                    return key == 0 ? null : String.valueOf(key);
+                });
+        cacheParameters.setConcurrencyLevel(1);
+        Cache<Integer, String> cache = Cache.create(cacheParameters, factoryClass);
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        cache.get(0);
+        try {
+            cache.get(-1);
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).isEqualTo("negative key");
+        }
+        cache.get(3);
+
+        CacheStats stats = cache.stats();
+        assertThat(stats.getHitCount()).isEqualTo(1L);
+        assertThat(stats.getMissCount()).isEqualTo(5L);
+        assertThat(stats.getHitRate()).isEqualTo(1.0 / 6);
+        assertThat(stats.getLoadSuccessCount()).isEqualTo(3L);
+        assertThat(stats.getLoadFailureCount()).isEqualTo(2L);
+        assertThat(stats.getTotalLoadTime()).isGreaterThan(0);
+        assertThat(stats.getEvictionCount()).isEqualTo(expectedEvictions);
+    }
+}
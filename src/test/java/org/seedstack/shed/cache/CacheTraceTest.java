@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheTraceTest {
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("shed-trace", ".bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void hitsAndMissesAreRecorded() throws IOException {
+        try (CacheTrace trace = CacheTrace.open(file, 4)) {
+            Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                    .setTrace(trace)
+                    .setLoadingFunction(String::valueOf));
+            for (int key : new int[]{1, 2, 1, 3, 2, 1}) {
+                cache.get(key);
+            }
+            assertThat(trace.droppedCount()).isEqualTo(0);
+        }
+        assertThat(read()).containsExactly("1-miss", "2-miss", "1-hit", "3-miss", "2-hit", "1-hit");
+    }
+
+    @Test
+    public void getAllRecordsEachKey() throws IOException {
+        try (CacheTrace trace = CacheTrace.open(file)) {
+            Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                    .setTrace(trace)
+                    .setLoadingFunction(String::valueOf));
+            cache.get(2);
+            assertThat(cache.getAll(Arrays.asList(1, 2, 3)).size()).isEqualTo(3);
+        }
+        assertThat(read()).containsExactly("2-miss", "1-miss", "2-hit", "3-miss");
+    }
+
+    @Test
+    public void accessesAreDroppedWhenTheBufferIsFull() throws IOException {
+        CacheTrace trace = CacheTrace.open(file, 4);
+        trace.close();
+        trace.record(1, true);
+        assertThat(read()).isEmpty();
+        try (CacheTrace otherTrace = CacheTrace.open(file, 4)) {
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    for (int j = 0; j < 10000; j++) {
+                        otherTrace.record(j, j % 2 == 0);
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                join(thread);
+            }
+            otherTrace.flush();
+            assertThat(read().size() + otherTrace.droppedCount()).isEqualTo(40000);
+        }
+    }
+
+    @Test
+    public void simulatedPoliciesReplayTheTrace() throws IOException {
+        Random random = new Random(42);
+        try (CacheTrace trace = CacheTrace.open(file)) {
+            Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                    .setMaxSize(100)
+                    .setTrace(trace)
+                    .setLoadingFunction(String::valueOf));
+            for (int i = 0; i < 20000; i++) {
+                // skewed towards small keys
+                cache.get((int) Math.pow(1000, random.nextDouble()));
+            }
+        }
+        CacheSimulator.Trace trace = CacheSimulator.Trace.read(file.toString());
+        assertThat(trace.distinctKeys()).isLessThanOrEqualTo(1000);
+        assertThat(CacheSimulator.defaultSizes(1000)).containsExactly(5, 10, 20, 50, 100, 200, 500, 1000);
+        for (CacheSimulator.Policy policy : CacheSimulator.Policy.values()) {
+            double small = policy.hitRatio(trace.keys(), 10);
+            double large = policy.hitRatio(trace.keys(), 500);
+            assertThat(small).isGreaterThan(0);
+            assertThat(large).isGreaterThan(small);
+            assertThat(policy.hitRatio(trace.keys(), 1000)).isGreaterThan(0.9);
+        }
+        assertThat(CacheSimulator.Policy.LRU.hitRatio(new int[]{1, 2, 1, 3, 2, 1}, 2)).isEqualTo(1 / 6d);
+    }
+
+    private List<String> read() throws IOException {
+        List<String> accesses = new ArrayList<>();
+        CacheTrace.read(file, (hash, hit) -> accesses.add(hash + (hit ? "-hit" : "-miss")));
+        return accesses;
+    }
+
+    private void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class ClassLoaderPartitionTest {
+    private static final String NAME = "test.partitions";
+    private final ClassLoader classLoader1 = new URLClassLoader(new URL[0]);
+    private final ClassLoader classLoader2 = new URLClassLoader(new URL[0]);
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        CacheRegistry.unregister(NAME);
+    }
+
+    @Test
+    public void classLoadersDontCrowdOutEachOther() {
+        Cache<Key, Integer> cache = Cache.create(createParameters(32));
+        for (int i = 0; i < 16; i++) {
+            cache.get(new Key(classLoader1, i));
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.get(new Key(classLoader2, i));
+        }
+        loadCount.set(0);
+        for (int i = 0; i < 16; i++) {
+            cache.get(new Key(classLoader1, i));
+        }
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void partitionsShareTheMaximumSize() {
+        Cache<Key, Integer> cache = Cache.create(createParameters(32).setName(NAME));
+        for (int i = 0; i < 100; i++) {
+            cache.get(new Key(classLoader1, i));
+        }
+        assertThat(CacheRegistry.get(NAME).get().getSize()).isEqualTo(32);
+        for (int i = 0; i < 100; i++) {
+            cache.get(new Key(classLoader2, i));
+        }
+        assertThat(CacheRegistry.get(NAME).get().getSize()).isEqualTo(32);
+        CacheRegistry.evictClassLoader(classLoader1);
+        for (int i = 0; i < 100; i++) {
+            cache.get(new Key(classLoader2, i));
+        }
+        assertThat(CacheRegistry.get(NAME).get().getSize()).isEqualTo(32);
+    }
+
+    @Test
+    public void idlePartitionsLendTheirShare() {
+        Cache<Key, Integer> cache = Cache.create(createParameters(32).setName(NAME));
+        for (int i = 0; i < 4; i++) {
+            cache.get(new Key(classLoader1, i));
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.get(new Key(classLoader2, i % 28));
+        }
+        assertThat(CacheRegistry.get(NAME).get().getSize()).isEqualTo(32);
+        loadCount.set(0);
+        for (int i = 0; i < 4; i++) {
+            cache.get(new Key(classLoader1, i));
+        }
+        for (int i = 0; i < 28; i++) {
+            cache.get(new Key(classLoader2, i));
+        }
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void busyPartitionsGetAnEqualShare() {
+        Cache<Key, Integer> cache = Cache.create(createParameters(32).setName(NAME));
+        for (int i = 0; i < 200; i++) {
+            cache.get(new Key(classLoader1, i));
+            cache.get(new Key(classLoader2, i));
+        }
+        assertThat(CacheRegistry.get(NAME).get().getSize()).isEqualTo(32);
+        loadCount.set(0);
+        for (int i = 184; i < 200; i++) {
+            cache.get(new Key(classLoader1, i));
+            cache.get(new Key(classLoader2, i));
+        }
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void resizingKeepsTheEntries() {
+        Cache<Key, Integer> cache = Cache.create(createParameters(32).setName(NAME));
+        for (int i = 0; i < 8; i++) {
+            cache.get(new Key(classLoader1, i));
+            cache.get(new Key(classLoader2, i));
+        }
+        CacheRegistry.get(NAME).get().setMaxSize(64);
+        loadCount.set(0);
+        for (int i = 0; i < 8; i++) {
+            cache.get(new Key(classLoader1, i));
+            cache.get(new Key(classLoader2, i));
+        }
+        assertThat(loadCount.get()).isEqualTo(0);
+        CacheRegistry.get(NAME).get().setMaxSize(8);
+        assertThat(CacheRegistry.get(NAME).get().getSize()).isEqualTo(8);
+    }
+
+    @Test
+    public void partitionsThatCannotBeResizedAreRecreated() {
+        CacheParameters<Key, Integer> cacheParameters = createParameters(8).setName(NAME);
+        Cache<Key, Integer> cache = Cache.create(cacheParameters, SimpleLRUCache.Factory.class);
+        for (int i = 0; i < 8; i++) {
+            cache.get(new Key(classLoader1, i));
+        }
+        for (int i = 0; i < 8; i++) {
+            cache.get(new Key(classLoader2, i));
+        }
+        for (int i = 0; i < 8; i++) {
+            cache.get(new Key(classLoader1, i));
+        }
+        assertThat(CacheRegistry.get(NAME).get().getSize()).isEqualTo(8);
+    }
+
+    @Test
+    public void partitionsCannotResizeThemselves() {
+        assertThatThrownBy(() -> Cache.create(createParameters(32).setAdaptiveSizing(16, 64)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cache.create(createParameters(32).setMemoryPressureShrinking(0.8, 0.5)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void evictedClassLoadersAreDropped() {
+        Cache<Key, Integer> cache = Cache.create(createParameters(64).setName(NAME).setNearCacheSize(16));
+        cache.get(new Key(classLoader1, 1));
+        cache.get(new Key(classLoader2, 1));
+        cache.get(new Key(null, 1));
+        assertThat(CacheRegistry.get(NAME).get().getSize()).isEqualTo(3);
+        assertThat(CacheRegistry.evictClassLoader(classLoader1)).contains(NAME);
+        assertThat(CacheRegistry.evictClassLoader(classLoader1)).doesNotContain(NAME);
+        assertThat(CacheRegistry.get(NAME).get().getSize()).isEqualTo(2);
+        loadCount.set(0);
+        cache.get(new Key(classLoader1, 1));
+        cache.get(new Key(classLoader2, 1));
+        cache.get(new Key(null, 1));
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictedClassLoadersAreDroppedFromUnnamedCaches() {
+        Cache<Key, Integer> cache = Cache.create(createParameters(64).setNearCacheSize(16));
+        cache.get(new Key(classLoader1, 1));
+        cache.get(new Key(classLoader2, 1));
+        assertThat(CacheRegistry.evictClassLoader(classLoader1)).doesNotContain(NAME);
+        loadCount.set(0);
+        cache.get(new Key(classLoader1, 1));
+        cache.get(new Key(classLoader2, 1));
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void statisticsIncludeEvictedPartitions() {
+        Cache<Key, Integer> cache = Cache.create(createParameters(64).setName(NAME).setRecordingStats(true));
+        cache.get(new Key(classLoader1, 1));
+        cache.get(new Key(classLoader1, 1));
+        cache.get(new Key(classLoader2, 1));
+        CacheRegistry.evictClassLoader(classLoader1);
+        assertThat(cache.stats().getHitCount()).isEqualTo(1);
+        assertThat(cache.stats().getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void getAllSpansPartitions() {
+        Cache<Key, Integer> cache = Cache.create(createParameters(64));
+        Key key1 = new Key(classLoader1, 1);
+        Key key2 = new Key(classLoader2, 2);
+        Key key3 = new Key(classLoader1, 3);
+        Map<Key, Integer> values = cache.getAll(Arrays.asList(key1, key2, key3));
+        assertThat(values.keySet().iterator().next()).isEqualTo(key1);
+        assertThat(values.get(key2)).isEqualTo(2);
+        assertThat(values.get(key3)).isEqualTo(3);
+        cache.invalidate(key2);
+        cache.get(key2);
+        assertThat(loadCount.get()).isEqualTo(4);
+    }
+
+    private CacheParameters<Key, Integer> createParameters(int maxSize) {
+        CacheParameters<Key, Integer> cacheParameters = new CacheParameters<Key, Integer>()
+                .setMaxSize(maxSize)
+                .setClassLoaderPartitioner(key -> key.classLoader)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return key.id;
+                });
+        cacheParameters.setConcurrencyLevel(1);
+        return cacheParameters;
+    }
+
+    private static final class Key {
+        private final ClassLoader classLoader;
+        private final int id;
+
+        private Key(ClassLoader classLoader, int id) {
+            this.classLoader = classLoader;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return classLoader == key.classLoader && id == key.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(classLoader) + id;
+        }
+    }
+}
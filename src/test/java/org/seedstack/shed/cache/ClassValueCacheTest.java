@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class ClassValueCacheTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @Test
+    public void valuesAreAttachedToClasses() {
+        Cache<Class<?>, String> cache = createCache(key -> {
+            loadCount.incrementAndGet();
+            return key.getSimpleName();
+        });
+        assertThat(cache.get(String.class)).isEqualTo("String");
+        assertThat(cache.get(String.class)).isEqualTo("String");
+        assertThat(cache.get(Integer.class)).isEqualTo("Integer");
+        assertThat(loadCount.get()).isEqualTo(2);
+        assertThat(cache.stats().getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void flagsSelectDistinctValues() {
+        Cache<Key, String> cache = createCache(key -> {
+            loadCount.incrementAndGet();
+            return key.keyClass().getSimpleName() + key.keyFlags();
+        });
+        assertThat(cache.get(new Key(String.class, 0))).isEqualTo("String0");
+        assertThat(cache.get(new Key(String.class, 3))).isEqualTo("String3");
+        assertThat(cache.get(new Key(String.class, 3))).isEqualTo("String3");
+        assertThat(loadCount.get()).isEqualTo(2);
+        assertThatThrownBy(() -> cache.get(new Key(String.class, ClassValueCache.MAX_FLAG_COMBINATIONS)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void invalidatedValuesAreLoadedAgain() {
+        Cache<Class<?>, String> cache = createCache(key -> "value" + loadCount.incrementAndGet());
+        assertThat(cache.get(String.class)).isEqualTo("value1");
+        cache.invalidate(String.class);
+        assertThat(cache.get(String.class)).isEqualTo("value2");
+        cache.get(Integer.class);
+        cache.invalidateAll();
+        assertThat(cache.get(String.class)).isEqualTo("value4");
+        assertThat(cache.get(Integer.class)).isEqualTo("value5");
+    }
+
+    @Test
+    public void nullValuesAreNotCached() {
+        Cache<Class<?>, String> cache = createCache(key -> {
+            loadCount.incrementAndGet();
+            return null;
+        });
+        assertThat(cache.get(String.class)).isNull();
+        assertThat(cache.get(String.class)).isNull();
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void recursiveLoadsAreDetected() {
+        AtomicReference<Cache<Class<?>, String>> cache = new AtomicReference<>();
+        cache.set(createCache(key -> cache.get().get(key)));
+        assertThatThrownBy(() -> cache.get().get(String.class)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void unsupportedKeysAndExpirationAreRejected() {
+        Cache<Object, String> cache = createCache(String::valueOf);
+        assertThatThrownBy(() -> cache.get("key")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cache.create(new CacheParameters<Class<?>, String>()
+                        .setExpireAfterWrite(Duration.ofMinutes(1))
+                        .setLoadingFunction(Class::getName),
+                ClassValueCache.Factory.class))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private <K> Cache<K, String> createCache(Function<K, String> loadingFunction) {
+        return Cache.create(new CacheParameters<K, String>()
+                        .setRecordingStats(true)
+                        .setLoadingFunction(loadingFunction),
+                ClassValueCache.Factory.class);
+    }
+
+    private static final class Key implements ClassKey {
+        private final Class<?> keyClass;
+        private final int keyFlags;
+
+        private Key(Class<?> keyClass, int keyFlags) {
+            this.keyClass = keyClass;
+            this.keyFlags = keyFlags;
+        }
+
+        @Override
+        public Class<?> keyClass() {
+            return keyClass;
+        }
+
+        @Override
+        public int keyFlags() {
+            return keyFlags;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class ConcurrentLRUCacheTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @Test
+    public void valuesAreLoadedOnce() {
+        Cache<Integer, String> cache = createCache(16, 1, key -> {
+            loadCount.incrementAndGet();
+            return String.valueOf(key);
+        });
+        assertThat(cache.get(1)).isEqualTo("1");
+        assertThat(cache.get(1)).isEqualTo("1");
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        Cache<Integer, String> cache = createCache(2, 1, key -> {
+            loadCount.incrementAndGet();
+            return String.valueOf(key);
+        });
+        cache.get(1);
+        cache.get(2);
+        cache.get(1);
+        cache.get(3);
+        assertThat(loadCount.get()).isEqualTo(3);
+        cache.get(1);
+        assertThat(loadCount.get()).isEqualTo(3);
+        cache.get(2);
+        assertThat(loadCount.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void failedLoadIsNotCached() {
+        Cache<Integer, String> cache = createCache(16, 1, key -> {
+            if (loadCount.incrementAndGet() == 1) {
+                throw new IllegalStateException("first load fails");
+            }
+            return String.valueOf(key);
+        });
+        try {
+            cache.get(1);
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("first load fails");
+        }
+        assertThat(cache.get(1)).isEqualTo("1");
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void nullKeysAreRejected() {
+        Cache<Integer, String> cache = createCache(16, 1, String::valueOf);
+        assertThatThrownBy(() -> cache.get(null))
+                .isInstanceOf(NullPointerException.class)
+                .hasMessage("Cache keys cannot be null");
+        assertThat(Cache.<Integer, String>create(new CacheParameters<Integer, String>()
+                .setLoadingFunction(String::valueOf), SimpleLRUCache.Factory.class).get(null)).isEqualTo("null");
+    }
+
+    @Test
+    public void concurrentMissesAreCoalesced() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        Cache<Integer, String> cache = createCache(1024, 8, key -> {
+            loadCount.incrementAndGet();
+            if (key == 1) {
+                loadStarted.countDown();
+                try {
+                    releaseLoad.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return String.valueOf(key);
+        });
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executorService.submit(() -> cache.get(1));
+            assertThat(loadStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<String> second = executorService.submit(() -> cache.get(1));
+            Future<String> other = executorService.submit(() -> cache.get(2));
+            assertThat(other.get(5, TimeUnit.SECONDS)).isEqualTo("2");
+            releaseLoad.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("1");
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("1");
+            assertThat(loadCount.get()).isEqualTo(2);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private Cache<Integer, String> createCache(int maxSize, int concurrencyLevel,
+            Function<Integer, String> loadingFunction) {
+        CacheParameters<Integer, String> cacheParameters = new CacheParameters<Integer, String>()
+                .setMaxSize(maxSize)
+                .setLoadingFunction(loadingFunction);
+        cacheParameters.setConcurrencyLevel(concurrencyLevel);
+        return Cache.create(cacheParameters, ConcurrentLRUCache.Factory.class);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class ExpirationTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @Test
+    public void entriesExpireAfterWrite() throws Exception {
+        checkExpireAfterWrite(ConcurrentLRUCache.Factory.class);
+        checkExpireAfterWrite(TinyLFUCache.Factory.class);
+        checkExpireAfterWrite(UnboundedCache.Factory.class);
+    }
+
+    @Test
+    public void entriesExpireAfterAccess() throws Exception {
+        checkExpireAfterAccess(ConcurrentLRUCache.Factory.class);
+        checkExpireAfterAccess(TinyLFUCache.Factory.class);
+        checkExpireAfterAccess(UnboundedCache.Factory.class);
+    }
+
+    private void checkExpireAfterWrite(Class<? extends CacheFactory> factoryClass) throws Exception {
+        loadCount.set(0);
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setExpireAfterWrite(Duration.ofMillis(100))
+                .setLoadingFunction(this::load), factoryClass);
+        cache.get(1);
+        cache.get(1);
+        assertThat(loadCount.get()).isEqualTo(1);
+        Thread.sleep(150);
+        cache.get(1);
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    private void checkExpireAfterAccess(Class<? extends CacheFactory> factoryClass) throws Exception {
+        loadCount.set(0);
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setExpireAfterAccess(Duration.ofMillis(200))
+                .setLoadingFunction(this::load), factoryClass);
+        for (int i = 0; i < 5; i++) {
+            cache.get(1);
+            Thread.sleep(50);
+        }
+        assertThat(loadCount.get()).isEqualTo(1);
+        Thread.sleep(300);
+        cache.get(1);
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    private String load(Integer key) {
+        loadCount.incrementAndGet();
+        return String.valueOf(key);
+    }
+}
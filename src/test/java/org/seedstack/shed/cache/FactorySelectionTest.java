@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class FactorySelectionTest {
+    private final CacheFactory preferredFactory = new TestFactory(10, EnumSet.of(CacheCapability.BOUNDED));
+    private final CacheFactory fallbackFactory = new TestFactory(-1, EnumSet.allOf(CacheCapability.class));
+    private final CacheFactory legacyFactory = new CacheFactory() {
+        @Override
+        public <K, V> Cache<K, V> createCache(CacheParameters<K, V> cacheParameters) {
+            return null;
+        }
+    };
+
+    @Test
+    public void requiredCapabilitiesAreDerivedFromParameters() {
+        CacheParameters<String, String> cacheParameters = new CacheParameters<>();
+        cacheParameters.setConcurrencyLevel(1);
+        assertThat(CacheCapability.requiredBy(cacheParameters)).containsExactly(CacheCapability.BOUNDED);
+        cacheParameters.setConcurrencyLevel(4);
+        cacheParameters.setExpireAfterAccess(Duration.ofMinutes(1))
+                .setMaximumWeight(100)
+                .setRefreshAfterWrite(Duration.ofSeconds(10));
+        assertThat(CacheCapability.requiredBy(cacheParameters))
+                .containsExactly(CacheCapability.BOUNDED, CacheCapability.EXPIRING, CacheCapability.WEIGHTED,
+                        CacheCapability.ASYNC, CacheCapability.CONCURRENT);
+    }
+
+    @Test
+    public void highestPriorityFactoryWithCapabilitiesIsSelected() {
+        List<CacheFactory> rankedFactories = Cache.Factories.rank(Arrays.asList(fallbackFactory, preferredFactory));
+        assertThat(Cache.Factories.select(rankedFactories, EnumSet.of(CacheCapability.BOUNDED)))
+                .isSameAs(preferredFactory);
+        assertThat(Cache.Factories.select(rankedFactories,
+                EnumSet.of(CacheCapability.BOUNDED, CacheCapability.CONCURRENT)))
+                .isInstanceOf(ConcurrentLRUCache.Factory.class);
+    }
+
+    @Test
+    public void builtInFactoryIsTheFallback() {
+        List<CacheFactory> rankedFactories = Cache.Factories.rank(Arrays.asList(preferredFactory));
+        assertThat(Cache.Factories.select(rankedFactories, EnumSet.of(CacheCapability.EXPIRING)))
+                .isInstanceOf(ConcurrentLRUCache.Factory.class);
+        assertThat(Cache.create(new CacheParameters<String, String>().setLoadingFunction(key -> key)))
+                .isInstanceOf(ConcurrentLRUCache.class);
+    }
+
+    @Test
+    public void declaredFactoriesArePreferredAtEqualPriority() {
+        List<CacheFactory> rankedFactories = Cache.Factories.rank(Arrays.asList(legacyFactory));
+        assertThat(Cache.Factories.select(rankedFactories,
+                EnumSet.of(CacheCapability.BOUNDED, CacheCapability.CONCURRENT)))
+                .isSameAs(legacyFactory);
+    }
+
+    @Test
+    public void factoriesNotDeclaringCapabilitiesAreNotUsedForWeightedCaches() {
+        List<CacheFactory> rankedFactories = Cache.Factories.rank(Arrays.asList(legacyFactory));
+        CacheParameters<String, String> cacheParameters = new CacheParameters<String, String>()
+                .setMaximumWeight(100)
+                .setWeigher((key, value) -> value.length());
+        assertThat(Cache.Factories.select(rankedFactories, CacheCapability.requiredBy(cacheParameters)))
+                .isInstanceOf(ConcurrentLRUCache.Factory.class);
+        assertThat(Cache.Factories.select(rankedFactories,
+                CacheCapability.requiredBy(cacheParameters.setMaximumWeight(-1)
+                        .setExpireAfterWrite(Duration.ofMinutes(1)))))
+                .isInstanceOf(ConcurrentLRUCache.Factory.class);
+    }
+
+    @Test
+    public void factoriesNotDeclaringCapabilitiesAreNotUsedWhereInvalidationIsNeeded() {
+        List<CacheFactory> rankedFactories = Cache.Factories.rank(Arrays.asList(legacyFactory));
+        CacheParameters<String, String> cacheParameters = new CacheParameters<String, String>()
+                .setNegativeExpireAfterWrite(Duration.ofSeconds(1));
+        assertThat(CacheCapability.requiredBy(cacheParameters)).contains(CacheCapability.INVALIDATION);
+        assertThat(Cache.Factories.select(rankedFactories, CacheCapability.requiredBy(cacheParameters)))
+                .isInstanceOf(ConcurrentLRUCache.Factory.class);
+    }
+
+    private static final class TestFactory implements CacheFactory {
+        private final int priority;
+        private final Set<CacheCapability> capabilities;
+
+        private TestFactory(int priority, Set<CacheCapability> capabilities) {
+            this.priority = priority;
+            this.capabilities = capabilities;
+        }
+
+        @Override
+        public <K, V> Cache<K, V> createCache(CacheParameters<K, V> cacheParameters) {
+            return null;
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+
+        @Override
+        public Set<CacheCapability> capabilities() {
+            return capabilities;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class FreezeTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @Test
+    public void frozenEntriesAreServedWithoutLoading() {
+        checkFreeze(ConcurrentLRUCache.Factory.class);
+        checkFreeze(TinyLFUCache.Factory.class);
+    }
+
+    @Test
+    public void frozenEntriesCanBeInvalidated() {
+        Cache<Integer, String> cache = createCache(ConcurrentLRUCache.Factory.class, 64);
+        cache.get(1);
+        cache.get(2);
+        cache.freeze();
+        cache.invalidate(1);
+        loadCount.set(0);
+        cache.get(1);
+        cache.get(2);
+        assertThat(loadCount.get()).isEqualTo(1);
+        cache.invalidateAll();
+        cache.get(2);
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void freezingAgainMergesNewEntries() {
+        Cache<Integer, String> cache = createCache(ConcurrentLRUCache.Factory.class, 64);
+        cache.get(1);
+        cache.freeze();
+        cache.get(2);
+        cache.freeze();
+        loadCount.set(0);
+        assertThat(cache.get(1)).isEqualTo("1");
+        assertThat(cache.get(2)).isEqualTo("2");
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void frozenEntriesCountAgainstTheBound() {
+        Cache<Integer, String> cache = createCache(ConcurrentLRUCache.Factory.class, 64);
+        for (int i = 0; i < 64; i++) {
+            cache.get(i);
+        }
+        cache.freeze();
+        for (int i = 100; i < 200; i++) {
+            cache.get(i);
+        }
+        freezeAndCheckBound(cache, 64);
+        for (int i = 200; i < 300; i++) {
+            cache.get(i);
+        }
+        freezeAndCheckBound(cache, 64);
+    }
+
+    @Test
+    public void frozenEntriesAreEvictedWhenTheCacheShrinks() {
+        Cache<Integer, String> cache = createCache(TinyLFUCache.Factory.class, 64);
+        for (int i = 0; i < 64; i++) {
+            cache.get(i);
+        }
+        cache.freeze();
+        assertThat(((AbstractSegmentedCache<Integer, String>) cache).setMaxSize(16)).isTrue();
+        assertThat(((AbstractSegmentedCache<Integer, String>) cache).weightedSize()).isLessThanOrEqualTo(16);
+        loadCount.set(0);
+        for (int i = 0; i < 64; i++) {
+            cache.get(i);
+        }
+        assertThat(loadCount.get()).isGreaterThan(0);
+    }
+
+    @Test
+    public void keysWithEqualHashCodesAreKept() {
+        CacheParameters<String, String> cacheParameters = new CacheParameters<String, String>()
+                .setMaxSize(64)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return key;
+                });
+        cacheParameters.setConcurrencyLevel(1);
+        Cache<String, String> cache = Cache.create(cacheParameters, ConcurrentLRUCache.Factory.class);
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+        cache.get("Aa");
+        cache.get("BB");
+        cache.freeze();
+        loadCount.set(0);
+        assertThat(cache.get("Aa")).isEqualTo("Aa");
+        assertThat(cache.get("BB")).isEqualTo("BB");
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void expiringCachesCannotBeFrozen() {
+        CacheParameters<Integer, String> cacheParameters = new CacheParameters<Integer, String>()
+                .setExpireAfterWrite(Duration.ofMinutes(1))
+                .setLoadingFunction(String::valueOf);
+        Cache<Integer, String> cache = Cache.create(cacheParameters, ConcurrentLRUCache.Factory.class);
+        assertThatThrownBy(cache::freeze).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void freezingIsIgnoredByOtherCaches() {
+        Cache<Integer, String> cache = createCache(SimpleLRUCache.Factory.class, 64);
+        cache.get(1);
+        cache.freeze();
+        assertThat(cache.get(1)).isEqualTo("1");
+    }
+
+    @Test
+    public void frozenTableFindsAllItsKeys() {
+        Map<String, Integer> entries = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            entries.put("key" + i, i);
+        }
+        FrozenTable<String, Integer> table = FrozenTable.of(entries);
+        assertThat(table.size()).isEqualTo(10000);
+        for (int i = 0; i < 10000; i++) {
+            assertThat(table.get("key" + i)).isEqualTo(i);
+        }
+        assertThat(table.get("key10000")).isNull();
+        assertThat(FrozenTable.of(new HashMap<String, Integer>()).get("key")).isNull();
+    }
+
+    private void checkFreeze(Class<? extends CacheFactory> factoryClass) {
+        loadCount.set(0);
+        Cache<Integer, String> cache = createCache(factoryClass, 256);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i);
+        }
+        cache.freeze();
+        // entries loaded after freezing still go through the eviction policy
+        for (int i = 1000; i < 2000; i++) {
+            cache.get(i);
+        }
+        loadCount.set(0);
+        for (int i = 0; i < 100; i++) {
+            assertThat(cache.get(i)).isEqualTo(String.valueOf(i));
+        }
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    private void freezeAndCheckBound(Cache<Integer, String> cache, int maxSize) {
+        cache.freeze();
+        // each segment keeps room for one entry besides the frozen ones
+        assertThat(((AbstractSegmentedCache<Integer, String>) cache).weightedSize()).isLessThanOrEqualTo(maxSize + 1);
+    }
+
+    private Cache<Integer, String> createCache(Class<? extends CacheFactory> factoryClass, int maxSize) {
+        CacheParameters<Integer, String> cacheParameters = new CacheParameters<Integer, String>()
+                .setMaxSize(maxSize)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return String.valueOf(key);
+                });
+        cacheParameters.setConcurrencyLevel(1);
+        return Cache.create(cacheParameters, factoryClass);
+    }
+}
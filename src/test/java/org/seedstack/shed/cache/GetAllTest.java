@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+public class GetAllTest {
+    @Test
+    public void batchLoadingFunctionIsCalledOnceForMissingKeys() {
+        checkBatchLoading(ConcurrentLRUCache.Factory.class);
+        checkBatchLoading(TinyLFUCache.Factory.class);
+        checkBatchLoading(UnboundedCache.Factory.class);
+        checkBatchLoading(FakeCache.Factory.class);
+    }
+
+    @Test
+    public void getAllFallsBackToLoadingFunction() {
+        checkSingleLoading(ConcurrentLRUCache.Factory.class);
+        checkSingleLoading(TinyLFUCache.Factory.class);
+        checkSingleLoading(UnboundedCache.Factory.class);
+        checkSingleLoading(SimpleLRUCache.Factory.class);
+    }
+
+    @Test
+    public void singleKeysAreLoadedAsBatches() {
+        List<Set<Integer>> batches = new ArrayList<>();
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setBatchLoadingFunction(keys -> {
+                    batches.add(keys);
+                    return load(keys);
+                }), ConcurrentLRUCache.Factory.class);
+        assertThat(cache.get(1)).isEqualTo("1");
+        assertThat(cache.get(1)).isEqualTo("1");
+        assertThat(batches.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void batchLoadingIsRecordedInStats() {
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setRecordingStats(true)
+                .setBatchLoadingFunction(GetAllTest::load), ConcurrentLRUCache.Factory.class);
+        cache.get(1);
+        cache.getAll(Arrays.asList(1, 2, 3));
+        assertThat(cache.stats().getHitCount()).isEqualTo(1L);
+        assertThat(cache.stats().getMissCount()).isEqualTo(3L);
+        assertThat(cache.stats().getLoadSuccessCount()).isEqualTo(2L);
+    }
+
+    private void checkBatchLoading(Class<? extends CacheFactory> factoryClass) {
+        List<Set<Integer>> batches = new ArrayList<>();
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setLoadingFunction(key -> {
+                    throw new AssertionError("unexpected single load of " + key);
+                })
+                .setBatchLoadingFunction(keys -> {
+                    batches.add(keys);
+                    return load(keys);
+                }), factoryClass);
+        assertThat(cache.getAll(Arrays.asList(1, 2)).keySet()).containsExactly(1, 2);
+        batches.clear();
+
+        Map<Integer, String> values = cache.getAll(Arrays.asList(3, 0, 2, 1, 4, 3));
+        assertThat(values.keySet()).containsExactly(3, 2, 1, 4);
+        assertThat(values.get(4)).isEqualTo("4");
+        assertThat(batches.size()).isEqualTo(1);
+        if (factoryClass == FakeCache.Factory.class) {
+            assertThat(batches.get(0)).containsExactly(3, 0, 2, 1, 4);
+        } else {
+            assertThat(batches.get(0)).containsExactly(3, 0, 4);
+        }
+    }
+
+    private void checkSingleLoading(Class<? extends CacheFactory> factoryClass) {
+        List<Integer> loads = new ArrayList<>();
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setLoadingFunction(key -> {
+                    loads.add(key);
+                    return key == 0 ? null : String.valueOf(key);
+                }), factoryClass);
+        cache.get(1);
+        assertThat(cache.getAll(Arrays.asList(2, 1, 0)).keySet()).containsExactly(2, 1);
+        assertThat(loads).containsExactly(1, 2, 0);
+    }
+
+    private static Map<Integer, String> load(Set<Integer> keys) {
+        Map<Integer, String> values = new HashMap<>();
+        for (Integer key : keys) {
+            if (key != 0) {
+                values.put(key, String.valueOf(key));
+            }
+        }
+        return values;
+    }
+}
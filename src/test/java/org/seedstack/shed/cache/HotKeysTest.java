@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class HotKeysTest {
+    @Test
+    public void hotKeysAreNotTrackedByDefault() {
+        Cache<Integer, Integer> cache = Cache.create(new CacheParameters<Integer, Integer>()
+                .setLoadingFunction(key -> key));
+        cache.get(1);
+        assertThat(cache.stats().getFrequentKeys()).isEmpty();
+        assertThat(cache.stats().getExpensiveKeys()).isEmpty();
+    }
+
+    @Test
+    public void mostRequestedKeysAreReported() {
+        Cache<Integer, Integer> cache = Cache.create(new CacheParameters<Integer, Integer>()
+                .setHotKeysSize(3)
+                .setLoadingFunction(key -> key));
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            // keys 1 to 3 take 15%, 10% and 5% of the requests among thousands of rare keys
+            int draw = random.nextInt(100);
+            cache.get(draw < 15 ? 1 : draw < 25 ? 2 : draw < 30 ? 3 : 100 + random.nextInt(5000));
+        }
+        List<HotKey> frequentKeys = cache.stats().getFrequentKeys();
+        assertThat(frequentKeys).hasSize(3);
+        assertThat(frequentKeys.get(0).getKey()).isEqualTo(1);
+        assertThat(frequentKeys.get(1).getKey()).isEqualTo(2);
+        assertThat(frequentKeys.get(2).getKey()).isEqualTo(3);
+        assertThat(frequentKeys.get(0).getEstimate() - frequentKeys.get(0).getError()).isGreaterThan(1200);
+    }
+
+    @Test
+    public void newKeysReplaceTheLeastCountedOne() {
+        Cache<Integer, Integer> cache = Cache.create(new CacheParameters<Integer, Integer>()
+                .setHotKeysSize(1)
+                .setLoadingFunction(key -> key));
+        // the summary counts sixteen keys, key i being requested i times
+        for (int i = 16; i > 0; i--) {
+            for (int j = 0; j < i; j++) {
+                cache.get(i);
+            }
+        }
+        for (int i = 0; i < 20; i++) {
+            cache.get(100);
+        }
+        HotKey hotKey = cache.stats().getFrequentKeys().get(0);
+        assertThat(hotKey.getKey()).isEqualTo(100);
+        assertThat(hotKey.getEstimate()).isEqualTo(21);
+        assertThat(hotKey.getError()).isEqualTo(1);
+    }
+
+    @Test
+    public void mostExpensiveKeysAreReported() {
+        Cache<Integer, Integer> cache = Cache.create(new CacheParameters<Integer, Integer>()
+                .setHotKeysSize(2)
+                .setLoadingFunction(key -> {
+                    if (key == 7) {
+                        sleep();
+                    }
+                    return key;
+                }));
+        for (int i = 0; i < 20; i++) {
+            cache.get(i);
+        }
+        cache.getAll(Arrays.asList(7, 8));
+        List<HotKey> expensiveKeys = cache.stats().getExpensiveKeys();
+        assertThat(expensiveKeys).hasSize(2);
+        assertThat(expensiveKeys.get(0).getKey()).isEqualTo(7);
+        assertThat(expensiveKeys.get(0).getEstimate()).isGreaterThanOrEqualTo(10_000_000L);
+        assertThat(cache.stats().getFrequentKeys().get(0).getKey()).isIn(7, 8);
+    }
+
+    @Test
+    public void hotKeysAreExposedByManagedCaches() {
+        Cache<String, String> cache = Cache.create(new CacheParameters<String, String>()
+                .setName("hotKeysTest")
+                .setHotKeysSize(1)
+                .setLoadingFunction(key -> key));
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        try {
+            assertThat(((ManagedCache<String, String>) cache).getFrequentKeys()).containsExactly("a=2");
+            assertThat(cache.stats().toString()).contains("frequentKeys=[a=2]");
+        } finally {
+            CacheRegistry.unregister("hotKeysTest");
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
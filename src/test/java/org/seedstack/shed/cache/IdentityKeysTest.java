@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class IdentityKeysTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @Test
+    public void equalKeysAreDistinctEntries() {
+        Cache<String, String> cache = createCache(new CacheParameters<String, String>().setIdentityKeys(true));
+        String key = new String("key");
+        cache.get(key);
+        cache.get(key);
+        assertThat(loadCount.get()).isEqualTo(1);
+        cache.get(new String("key"));
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void canonicalizedKeysShareTheirEntry() {
+        AtomicReference<String> loadedKey = new AtomicReference<>();
+        Cache<String, String> cache = createCache(new CacheParameters<String, String>()
+                .setIdentityKeys(true)
+                .setKeyCanonicalizer(String::intern)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    loadedKey.set(key);
+                    return "value-" + key;
+                }));
+        assertThat(cache.get(new String("key"))).isEqualTo("value-key");
+        assertThat(cache.get(new String("key"))).isEqualTo("value-key");
+        assertThat(loadCount.get()).isEqualTo(1);
+        assertThat(loadedKey.get()).isSameAs("key");
+        cache.invalidate(new String("key"));
+        cache.get(new String("key"));
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void frozenEntriesAreComparedByIdentity() {
+        Cache<String, String> cache = createCache(new CacheParameters<String, String>().setIdentityKeys(true));
+        String key = new String("key");
+        cache.get(key);
+        cache.freeze();
+        assertThat(cache.get(key)).isEqualTo("value-key");
+        assertThat(loadCount.get()).isEqualTo(1);
+        cache.get(new String("key"));
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void nearCacheComparesKeysByIdentity() {
+        Cache<String, String> cache = createCache(new CacheParameters<String, String>()
+                .setIdentityKeys(true)
+                .setNearCacheSize(16));
+        String key = new String("key");
+        cache.get(key);
+        cache.get(key);
+        cache.get(new String("key"));
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void getAllReturnsTheSpecifiedKeys() {
+        Cache<String, String> cache = createCache(new CacheParameters<String, String>()
+                .setIdentityKeys(true)
+                .setKeyCanonicalizer(String::intern));
+        String key1 = new String("key1");
+        String key2 = new String("key2");
+        Map<String, String> values = cache.getAll(Arrays.asList(key1, key2));
+        assertThat(values.keySet().iterator().next()).isSameAs(key1);
+        assertThat(values.get(key2)).isEqualTo("value-key2");
+        cache.getAll(Arrays.asList(new String("key1"), new String("key2")));
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    private Cache<String, String> createCache(CacheParameters<String, String> cacheParameters) {
+        if (cacheParameters.getLoadingFunction() == null) {
+            cacheParameters.setLoadingFunction(key -> {
+                loadCount.incrementAndGet();
+                return "value-" + key;
+            });
+        }
+        return Cache.create(cacheParameters);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.Test;
+
+public class MemoryPressureTest {
+    @Test
+    public void cacheShrinksAboveTheWatermark() {
+        AbstractSegmentedCache<Integer, Integer> cache = createCache(0.8, 0.5);
+        fill(cache);
+        cache.onMemoryPressure(0.9);
+        assertThat(cache.capacity()).isEqualTo(512);
+        assertThat(cache.weightedSize()).isLessThanOrEqualTo(512);
+        cache.onMemoryPressure(0.85);
+        assertThat(cache.capacity()).isEqualTo(256);
+        assertThat(cache.weightedSize()).isLessThanOrEqualTo(256);
+    }
+
+    @Test
+    public void cacheGrowsBackWhenPressureDrops() {
+        AbstractSegmentedCache<Integer, Integer> cache = createCache(0.8, 0.5);
+        cache.onMemoryPressure(0.9);
+        cache.onMemoryPressure(0.9);
+        assertThat(cache.capacity()).isEqualTo(256);
+        cache.onMemoryPressure(0.75);
+        assertThat(cache.capacity()).isEqualTo(256);
+        cache.onMemoryPressure(0.5);
+        assertThat(cache.capacity()).isEqualTo(512);
+        cache.onMemoryPressure(0.5);
+        cache.onMemoryPressure(0.5);
+        assertThat(cache.capacity()).isEqualTo(1024);
+        fill(cache);
+        assertThat(cache.weightedSize()).isEqualTo(1024);
+    }
+
+    @Test
+    public void cacheKeepsOneEntryPerSegment() {
+        AbstractSegmentedCache<Integer, Integer> cache = createCache(0.8, 0.9);
+        for (int i = 0; i < 20; i++) {
+            cache.onMemoryPressure(1);
+        }
+        assertThat(cache.capacity()).isEqualTo(4);
+        fill(cache);
+        assertThat(cache.weightedSize()).isEqualTo(4);
+    }
+
+    @Test
+    public void registeredCachesApplyNotificationsAtTheirNextAccess() {
+        AbstractSegmentedCache<Integer, Integer> cache = createCache(0.99, 0.5);
+        MemoryPressure.notifyCaches(1);
+        assertThat(cache.capacity()).isEqualTo(1024);
+        cache.get(1);
+        assertThat(cache.capacity()).isEqualTo(512);
+        cache.get(1);
+        assertThat(cache.capacity()).isEqualTo(512);
+    }
+
+    @Test
+    public void cachesAreNotNotifiedAfterShutdown() {
+        AbstractSegmentedCache<Integer, Integer> cache = createCache(0.99, 0.5);
+        MemoryPressure.shutdown();
+        MemoryPressure.notifyCaches(1);
+        cache.get(1);
+        assertThat(cache.capacity()).isEqualTo(1024);
+        AbstractSegmentedCache<Integer, Integer> nextCache = createCache(0.99, 0.5);
+        MemoryPressure.notifyCaches(1);
+        nextCache.get(1);
+        assertThat(nextCache.capacity()).isEqualTo(512);
+    }
+
+    @Test
+    public void invalidParametersAreRejected() {
+        assertThatThrownBy(() -> createCache(1.5, 0.5)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> createCache(0.8, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void fill(Cache<Integer, Integer> cache) {
+        for (int i = 0; i < 2048; i++) {
+            cache.get(i);
+        }
+    }
+
+    private AbstractSegmentedCache<Integer, Integer> createCache(double watermark, double fraction) {
+        CacheParameters<Integer, Integer> cacheParameters = new CacheParameters<Integer, Integer>()
+                .setMaxSize(1024)
+                .setMemoryPressureShrinking(watermark, fraction)
+                .setLoadingFunction(key -> key);
+        cacheParameters.setConcurrencyLevel(4);
+        return (AbstractSegmentedCache<Integer, Integer>) Cache.create(cacheParameters);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class NearCacheTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void repeatedReadsDontReachTheSharedCache() {
+        Cache<Integer, Integer> cache = createCache(16);
+        for (int i = 0; i < 100; i++) {
+            assertThat(cache.get(7)).isEqualTo(8);
+        }
+        assertThat(cache.stats().getRequestCount()).isEqualTo(1);
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void collidingKeysReturnTheirOwnValue() {
+        Cache<Integer, Integer> cache = createCache(4);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 64; i++) {
+                assertThat(cache.get(i)).isEqualTo(i + 1);
+            }
+        }
+        assertThat(loadCount.get()).isEqualTo(64);
+    }
+
+    @Test
+    public void invalidationsReachOtherThreads() throws Exception {
+        Cache<Integer, Integer> cache = createCache(16);
+        assertThat(executorService.submit(() -> cache.get(1)).get()).isEqualTo(2);
+        assertThat(executorService.submit(() -> cache.get(1)).get()).isEqualTo(2);
+        assertThat(loadCount.get()).isEqualTo(1);
+        cache.invalidate(1);
+        assertThat(executorService.submit(() -> cache.get(1)).get()).isEqualTo(2);
+        assertThat(loadCount.get()).isEqualTo(2);
+        cache.invalidateAll();
+        assertThat(executorService.submit(() -> cache.get(1)).get()).isEqualTo(2);
+        assertThat(loadCount.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void nullValuesAreNotKept() {
+        Cache<Integer, Integer> cache = Cache.create(new CacheParameters<Integer, Integer>()
+                .setNearCacheSize(16)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return null;
+                }));
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.get(1)).isNull();
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void getAllReadsThroughTheNearCache() {
+        Cache<Integer, Integer> cache = createCache(16);
+        cache.get(2);
+        assertThat(cache.getAll(Arrays.asList(3, 2, -1, 1)).keySet()).containsExactly(3, 2, 1);
+        assertThat(loadCount.get()).isEqualTo(4);
+        assertThat(cache.getAll(Arrays.asList(1, 2, 3))).containsEntry(1, 2).containsEntry(3, 4);
+        assertThat(loadCount.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void expirationIsRejected() {
+        assertThatThrownBy(() -> Cache.create(new CacheParameters<Integer, Integer>()
+                .setNearCacheSize(16)
+                .setExpireAfterWrite(Duration.ofMinutes(1))
+                .setLoadingFunction(key -> key)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Cache<Integer, Integer> createCache(int nearCacheSize) {
+        return Cache.create(new CacheParameters<Integer, Integer>()
+                .setNearCacheSize(nearCacheSize)
+                .setRecordingStats(true)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return key < 0 ? null : key + 1;
+                }));
+    }
+}
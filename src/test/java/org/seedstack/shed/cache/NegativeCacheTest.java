@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class NegativeCacheTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @Test
+    public void nullResultsAreCached() {
+        checkNullResults(ConcurrentLRUCache.Factory.class);
+        checkNullResults(UnboundedCache.Factory.class);
+        checkNullResults(SimpleLRUCache.Factory.class);
+    }
+
+    @Test
+    public void failuresAreCached() {
+        Cache<Integer, String> cache = createCache(Duration.ofMinutes(1), 16, UnboundedCache.Factory.class);
+        RuntimeException first = getFailure(cache, -1);
+        RuntimeException second = getFailure(cache, -1);
+        RuntimeException third = getFailure(cache, -1);
+        assertThat(second).isInstanceOf(IllegalStateException.class);
+        assertThat(second.getCause()).isSameAs(first);
+        assertThat(third).isNotSameAs(second);
+        assertThat(third.getCause()).isSameAs(first);
+        assertThat(loadCount.get()).isEqualTo(1);
+        cache.invalidate(-1);
+        getFailure(cache, -1);
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void loadsCompletingAfterAnInvalidationAreNotRemembered() {
+        AtomicReference<Cache<Integer, String>> cacheReference = new AtomicReference<>();
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                        .setNegativeExpireAfterWrite(Duration.ofMinutes(1))
+                        .setLoadingFunction(key -> {
+                            loadCount.incrementAndGet();
+                            // invalidated while loading, as by a concurrent thread
+                            cacheReference.get().invalidate(key);
+                            return null;
+                        }),
+                ConcurrentLRUCache.Factory.class);
+        cacheReference.set(cache);
+        assertThat(cache.get(0)).isNull();
+        assertThat(cache.get(0)).isNull();
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void negativeEntriesExpire() throws Exception {
+        Cache<Integer, String> cache = createCache(Duration.ofMillis(20), 16, ConcurrentLRUCache.Factory.class);
+        assertThat(cache.get(0)).isNull();
+        assertThat(cache.get(0)).isNull();
+        assertThat(loadCount.get()).isEqualTo(1);
+        Thread.sleep(30);
+        assertThat(cache.get(0)).isNull();
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void negativeEntriesAreBounded() {
+        Cache<Integer, String> cache = createCache(Duration.ofMinutes(1), 8, ConcurrentLRUCache.Factory.class);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i * 1000);
+        }
+        loadCount.set(0);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i * 1000);
+        }
+        assertThat(loadCount.get()).isGreaterThanOrEqualTo(100 - 8);
+    }
+
+    @Test
+    public void getAllSkipsNegativeEntries() {
+        Cache<Integer, String> cache = createCache(Duration.ofMinutes(1), 16, ConcurrentLRUCache.Factory.class);
+        assertThat(cache.getAll(Arrays.asList(1, 0, 2)).keySet()).containsExactly(1, 2);
+        loadCount.set(0);
+        assertThat(cache.getAll(Arrays.asList(0, 2, 1)).keySet()).containsExactly(2, 1);
+        assertThat(cache.get(0)).isNull();
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    private void checkNullResults(Class<? extends CacheFactory> factoryClass) {
+        loadCount.set(0);
+        Cache<Integer, String> cache = createCache(Duration.ofMinutes(1), 16, factoryClass);
+        assertThat(cache.get(0)).isNull();
+        assertThat(cache.get(0)).isNull();
+        assertThat(cache.get(1)).isEqualTo("1");
+        assertThat(cache.get(1)).isEqualTo("1");
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    private RuntimeException getFailure(Cache<Integer, String> cache, int key) {
+        try {
+            cache.get(key);
+        } catch (RuntimeException e) {
+            return e;
+        }
+        throw new AssertionError("expected a failure for key " + key);
+    }
+
+    private Cache<Integer, String> createCache(Duration negativeExpireAfterWrite, int negativeMaxSize,
+            Class<? extends CacheFactory> factoryClass) {
+        return Cache.create(new CacheParameters<Integer, String>()
+                .setNegativeExpireAfterWrite(negativeExpireAfterWrite)
+                .setNegativeMaxSize(negativeMaxSize)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    if (key < 0) {
+                        throw new IllegalArgumentException("negative key " + key);
+                    }
+                    return key % 1000 == 0 ? null : String.valueOf(key);
+                }), factoryClass);
+    }
+}
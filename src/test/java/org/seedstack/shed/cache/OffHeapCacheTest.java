@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class OffHeapCacheTest {
+    private static final int MB = 1 << 20;
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @Test
+    public void valuesAreStoredOffHeap() {
+        Cache<Integer, String> cache = createCache(new CacheParameters<Integer, String>().setMaximumWeight(MB));
+        assertThat(cache.get(1)).isEqualTo("value-1");
+        assertThat(cache.get(1)).isEqualTo("value-1");
+        assertThat(cache.get(2)).isEqualTo("value-2");
+        assertThat(loadCount.get()).isEqualTo(2);
+        assertThat(((OffHeapCache<Integer, String>) cache).weightedSize()).isEqualTo(2 * (4 + 7));
+    }
+
+    @Test
+    public void oldestValuesAreEvicted() {
+        CacheParameters<Integer, String> cacheParameters = new CacheParameters<Integer, String>()
+                .setMaximumWeight(MB)
+                .setRecordingStats(true)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return new String(new char[1000]).replace('\0', 'x') + key;
+                });
+        cacheParameters.setConcurrencyLevel(1);
+        Cache<Integer, String> cache = createCache(cacheParameters);
+        for (int i = 0; i < 3000; i++) {
+            cache.get(i);
+        }
+        assertThat(((OffHeapCache<Integer, String>) cache).weightedSize()).isLessThanOrEqualTo(MB);
+        assertThat(cache.stats().getEvictionCount()).isGreaterThan(0);
+        loadCount.set(0);
+        cache.get(2999);
+        cache.get(2000);
+        assertThat(loadCount.get()).isEqualTo(0);
+        assertThat(cache.get(0)).endsWith("x0");
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void valuesCanBeBackedByAFile() throws IOException {
+        Path file = Files.createTempFile("shed-offheap", ".bin");
+        try {
+            Cache<Integer, String> cache = createCache(new CacheParameters<Integer, String>()
+                    .setMaximumWeight(2 * MB)
+                    .setOffHeapFile(file));
+            for (int i = 0; i < 100; i++) {
+                assertThat(cache.get(i)).isEqualTo("value-" + i);
+            }
+            assertThat(cache.get(42)).isEqualTo("value-42");
+            assertThat(loadCount.get()).isEqualTo(100);
+            assertThat(Files.size(file)).isEqualTo(2 * MB);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void invalidatedValuesAreLoadedAgain() {
+        Cache<Integer, String> cache = createCache(new CacheParameters<Integer, String>().setMaximumWeight(MB));
+        cache.get(1);
+        cache.get(2);
+        cache.invalidate(1);
+        cache.get(1);
+        cache.get(2);
+        assertThat(loadCount.get()).isEqualTo(3);
+        cache.invalidateAll();
+        cache.get(2);
+        assertThat(loadCount.get()).isEqualTo(4);
+        assertThat(((OffHeapCache<Integer, String>) cache).weightedSize()).isEqualTo(4 + 7);
+    }
+
+    @Test
+    public void worksAsSecondLevelCache() {
+        Cache<Integer, String> offHeapCache = createCache(new CacheParameters<Integer, String>()
+                .setMaximumWeight(MB));
+        Cache<Integer, String> onHeapCache = Cache.create(new CacheParameters<Integer, String>()
+                .setMaxSize(16)
+                .setLoadingFunction(offHeapCache::get));
+        for (int i = 0; i < 100; i++) {
+            onHeapCache.get(i % 50);
+        }
+        assertThat(loadCount.get()).isEqualTo(50);
+        assertThat(onHeapCache.get(3)).isEqualTo("value-3");
+    }
+
+    @Test
+    public void oversizedValuesAreNotStored() {
+        CacheParameters<Integer, String> cacheParameters = new CacheParameters<Integer, String>()
+                .setMaximumWeight(MB)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return new String(new char[MB]);
+                });
+        cacheParameters.setConcurrencyLevel(1);
+        Cache<Integer, String> cache = createCache(cacheParameters);
+        assertThat(cache.get(1).length()).isEqualTo(MB);
+        cache.get(1);
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void codecAndCapacityAreRequired() {
+        assertThatThrownBy(() -> Cache.create(new CacheParameters<Integer, String>()
+                        .setMaximumWeight(MB)
+                        .setLoadingFunction(String::valueOf),
+                OffHeapCache.Factory.class))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cache.create(new CacheParameters<Integer, String>()
+                        .setValueCodec(Codecs.string())
+                        .setLoadingFunction(String::valueOf),
+                OffHeapCache.Factory.class))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Cache<Integer, String> createCache(CacheParameters<Integer, String> cacheParameters) {
+        if (cacheParameters.getLoadingFunction() == null) {
+            cacheParameters.setLoadingFunction(key -> {
+                loadCount.incrementAndGet();
+                return "value-" + key;
+            });
+        }
+        return Cache.create(cacheParameters.setValueCodec(Codecs.string()), OffHeapCache.Factory.class);
+    }
+}
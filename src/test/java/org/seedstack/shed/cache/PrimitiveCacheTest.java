@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class PrimitiveCacheTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @Test
+    public void intKeysAreCached() {
+        IntCache<String> cache = IntCache.create(key -> {
+            loadCount.incrementAndGet();
+            return key == 0 ? null : String.valueOf(key);
+        });
+        assertThat(cache.get(-1)).isEqualTo("-1");
+        assertThat(cache.get(-1)).isEqualTo("-1");
+        assertThat(cache.get(0)).isNull();
+        assertThat(cache.get(0)).isNull();
+        assertThat(loadCount.get()).isEqualTo(3);
+        cache.invalidate(-1);
+        assertThat(cache.get(-1)).isEqualTo("-1");
+        assertThat(loadCount.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void longKeysAreCached() {
+        LongCache<String> cache = LongCache.create(new CacheParameters<Long, String>()
+                .setRecordingStats(true)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return String.valueOf(key);
+                }));
+        assertThat(cache.get(Long.MAX_VALUE)).isEqualTo(String.valueOf(Long.MAX_VALUE));
+        assertThat(cache.get(Long.MAX_VALUE)).isEqualTo(String.valueOf(Long.MAX_VALUE));
+        assertThat(cache.get(1L << 32)).isEqualTo(String.valueOf(1L << 32));
+        assertThat(loadCount.get()).isEqualTo(2);
+        assertThat(cache.stats().getHitCount()).isEqualTo(1L);
+        assertThat(cache.stats().getMissCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void intValuesAreCached() {
+        ToIntCache<String> cache = ToIntCache.create(key -> {
+            loadCount.incrementAndGet();
+            return key.length();
+        });
+        assertThat(cache.get("abc")).isEqualTo(3);
+        assertThat(cache.get("abc")).isEqualTo(3);
+        assertThat(cache.get("")).isEqualTo(0);
+        assertThat(loadCount.get()).isEqualTo(2);
+        cache.invalidateAll();
+        assertThat(cache.get("abc")).isEqualTo(3);
+        assertThat(loadCount.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        CacheParameters<Integer, String> cacheParameters = new CacheParameters<Integer, String>()
+                .setMaxSize(64)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return String.valueOf(key);
+                });
+        IntCache<String> cache = IntCache.create(cacheParameters);
+        for (int i = 0; i < 1000; i++) {
+            cache.get(i);
+        }
+        loadCount.set(0);
+        for (int i = 0; i < 1000; i++) {
+            cache.get(i);
+        }
+        assertThat(loadCount.get()).isGreaterThanOrEqualTo(1000 - 64);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryOfASetIsEvicted() {
+        CacheParameters<Integer, String> cacheParameters = new CacheParameters<Integer, String>()
+                .setMaxSize(AbstractStripedCache.WAYS)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return String.valueOf(key);
+                });
+        IntCache<String> cache = IntCache.create(cacheParameters);
+        for (int i = 0; i < AbstractStripedCache.WAYS; i++) {
+            cache.get(i);
+        }
+        cache.get(0);
+        cache.get(100);
+        loadCount.set(0);
+        cache.get(0);
+        cache.get(100);
+        assertThat(loadCount.get()).isEqualTo(0);
+        cache.get(1);
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+}
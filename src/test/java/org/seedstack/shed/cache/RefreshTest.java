@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class RefreshTest {
+    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    private final AtomicInteger loadCount = new AtomicInteger();
+    private volatile CountDownLatch releaseReload = new CountDownLatch(0);
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void staleValuesAreServedWhileReloading() throws Exception {
+        checkRefresh(ConcurrentLRUCache.Factory.class);
+        checkRefresh(TinyLFUCache.Factory.class);
+        checkRefresh(UnboundedCache.Factory.class);
+    }
+
+    @Test
+    public void failedReloadsKeepTheStaleValue() throws Exception {
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setRefreshAfterWrite(Duration.ofMillis(20))
+                .setRefreshExecutor(executorService)
+                .setLoadingFunction(key -> {
+                    if (loadCount.incrementAndGet() > 1) {
+                        throw new IllegalStateException("reload fails");
+                    }
+                    return "v1";
+                }), ConcurrentLRUCache.Factory.class);
+        assertThat(cache.get(1)).isEqualTo("v1");
+        Thread.sleep(30);
+        assertThat(cache.get(1)).isEqualTo("v1");
+        waitForLoads(2);
+        assertThat(cache.get(1)).isEqualTo("v1");
+    }
+
+    @Test
+    public void failedReloadsBackOff() throws Exception {
+        checkBackOff(ConcurrentLRUCache.Factory.class);
+        checkBackOff(UnboundedCache.Factory.class);
+    }
+
+    private void checkBackOff(Class<? extends CacheFactory> factoryClass) throws Exception {
+        loadCount.set(0);
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setRefreshAfterWrite(Duration.ofMillis(200))
+                .setRefreshExecutor(executorService)
+                .setLoadingFunction(key -> loadCount.incrementAndGet() > 1 ? null : "v1"), factoryClass);
+        assertThat(cache.get(1)).isEqualTo("v1");
+        Thread.sleep(250);
+        assertThat(cache.get(1)).isEqualTo("v1");
+        waitForLoads(2);
+        // the null reload is complete once the next refresh attempt is postponed
+        Thread.sleep(20);
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.get(1)).isEqualTo("v1");
+        }
+        Thread.sleep(20);
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    private void checkRefresh(Class<? extends CacheFactory> factoryClass) throws Exception {
+        loadCount.set(0);
+        Cache<Integer, String> cache = Cache.create(new CacheParameters<Integer, String>()
+                .setRefreshAfterWrite(Duration.ofMillis(20))
+                .setRefreshExecutor(executorService)
+                .setLoadingFunction(key -> {
+                    int count = loadCount.incrementAndGet();
+                    try {
+                        releaseReload.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "v" + count;
+                }), factoryClass);
+        assertThat(cache.get(1)).isEqualTo("v1");
+        assertThat(cache.get(1)).isEqualTo("v1");
+        assertThat(loadCount.get()).isEqualTo(1);
+
+        releaseReload = new CountDownLatch(1);
+        Thread.sleep(30);
+        assertThat(cache.get(1)).isEqualTo("v1");
+        assertThat(cache.get(1)).isEqualTo("v1");
+        waitForLoads(2);
+        // a single reload is triggered by concurrent reads of a stale entry
+        Thread.sleep(10);
+        assertThat(loadCount.get()).isEqualTo(2);
+        releaseReload.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        String value = cache.get(1);
+        while (!"v2".equals(value) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+            value = cache.get(1);
+        }
+        assertThat(value).isEqualTo("v2");
+    }
+
+    private void waitForLoads(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (loadCount.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(loadCount.get()).isEqualTo(count);
+    }
+}
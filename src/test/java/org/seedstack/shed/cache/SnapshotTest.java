@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+    private Path directory;
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("shed-snapshot");
+        path = directory.resolve("cache.snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void savedEntriesAreRestoredWithoutLoading() throws IOException {
+        CacheSnapshot<String, String> snapshot = open(1L);
+        Cache<String, String> cache = createCache(snapshot);
+        assertThat(cache.get("a")).isEqualTo("A");
+        assertThat(cache.get("b")).isEqualTo("B");
+        snapshot.save();
+
+        loadCount.set(0);
+        Cache<String, String> restoredCache = createCache(open(1L));
+        assertThat(restoredCache.get("a")).isEqualTo("A");
+        assertThat(restoredCache.get("b")).isEqualTo("B");
+        assertThat(restoredCache.get("c")).isEqualTo("C");
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void entriesAreOnlyRestoredOnce() throws IOException {
+        CacheSnapshot<String, String> snapshot = open(1L);
+        createCache(snapshot).get("a");
+        snapshot.save();
+
+        loadCount.set(0);
+        Cache<String, String> restoredCache = createCache(open(1L));
+        restoredCache.get("a");
+        restoredCache.invalidate("a");
+        restoredCache.get("a");
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void snapshotsOfOtherVersionsAreIgnored() throws IOException {
+        CacheSnapshot<String, String> snapshot = open(1L);
+        createCache(snapshot).get("a");
+        snapshot.save();
+
+        loadCount.set(0);
+        createCache(open(2L)).get("a");
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void unresolvableEntriesAreLoadedAgain() throws IOException {
+        CacheSnapshot<String, String> snapshot = open(1L);
+        Cache<String, String> cache = Cache.create(new CacheParameters<String, String>()
+                .setSnapshot(snapshot)
+                .setLoadingFunction(key -> key.equals("present") ? "java.lang.String" : "org.example.Removed"));
+        cache.get("present");
+        cache.get("removed");
+        snapshot.save();
+
+        CacheSnapshot<String, Class<?>> classSnapshot = CacheSnapshot.open(path, 1L, Codecs.string(),
+                Codecs.classReference(getClass().getClassLoader()));
+        Cache<String, Class<?>> classCache = Cache.create(new CacheParameters<String, Class<?>>()
+                .setSnapshot(classSnapshot)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return Object.class;
+                }));
+        assertThat(classCache.get("present")).isEqualTo(String.class);
+        assertThat(classCache.get("removed")).isEqualTo(Object.class);
+        assertThat(loadCount.get()).isEqualTo(1);
+
+        classSnapshot.save();
+        loadCount.set(0);
+        Cache<String, Class<?>> nextClassCache = Cache.create(new CacheParameters<String, Class<?>>()
+                .setSnapshot(CacheSnapshot.open(path, 1L, Codecs.string(),
+                        Codecs.classReference(getClass().getClassLoader())))
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return null;
+                }));
+        assertThat(nextClassCache.get("removed")).isEqualTo(Object.class);
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void classesOfOtherClassLoadersAreNotSaved() throws Exception {
+        URL location = getClass().getProtectionDomain().getCodeSource().getLocation();
+        try (URLClassLoader otherClassLoader = new URLClassLoader(new URL[]{location}, null)) {
+            Class<?> otherClass = otherClassLoader.loadClass(getClass().getName());
+            CacheSnapshot<String, Class<?>> snapshot = CacheSnapshot.open(path, 1L, Codecs.string(),
+                    Codecs.classReference(getClass().getClassLoader()));
+            Cache<String, Class<?>> cache = Cache.create(new CacheParameters<String, Class<?>>()
+                    .setSnapshot(snapshot)
+                    .setLoadingFunction(key -> key.equals("local") ? getClass() : otherClass));
+            cache.get("local");
+            cache.get("other");
+            snapshot.save();
+
+            Cache<String, Class<?>> restoredCache = Cache.create(new CacheParameters<String, Class<?>>()
+                    .setSnapshot(CacheSnapshot.open(path, 1L, Codecs.string(),
+                            Codecs.classReference(getClass().getClassLoader())))
+                    .setLoadingFunction(key -> {
+                        loadCount.incrementAndGet();
+                        return Object.class;
+                    }));
+            assertThat(restoredCache.get("local")).isEqualTo(getClass());
+            assertThat(restoredCache.get("other")).isEqualTo(Object.class);
+            assertThat(loadCount.get()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void unaccessedEntriesAreKeptAcrossSaves() throws IOException {
+        CacheSnapshot<String, String> snapshot = open(1L);
+        Cache<String, String> cache = createCache(snapshot);
+        cache.get("a");
+        cache.get("b");
+        snapshot.save();
+
+        CacheSnapshot<String, String> secondSnapshot = open(1L);
+        createCache(secondSnapshot).get("c");
+        secondSnapshot.save();
+
+        loadCount.set(0);
+        Cache<String, String> restoredCache = createCache(open(1L));
+        assertThat(restoredCache.getAll(Arrays.asList("a", "b", "c")))
+                .containsEntry("a", "A")
+                .containsEntry("b", "B")
+                .containsEntry("c", "C");
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void batchLoadsOnlyMissingKeys() throws IOException {
+        CacheSnapshot<String, String> snapshot = open(1L);
+        createCache(snapshot).get("a");
+        snapshot.save();
+
+        AtomicInteger batchedKeys = new AtomicInteger();
+        Cache<String, String> cache = Cache.create(new CacheParameters<String, String>()
+                .setSnapshot(open(1L))
+                .setBatchLoadingFunction(keys -> {
+                    batchedKeys.addAndGet(keys.size());
+                    Map<String, String> values = new HashMap<>();
+                    keys.forEach(key -> values.put(key, key.toUpperCase()));
+                    return values;
+                }));
+        assertThat(cache.getAll(Arrays.asList("a", "b", "c")))
+                .containsEntry("a", "A")
+                .containsEntry("b", "B")
+                .containsEntry("c", "C");
+        assertThat(batchedKeys.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void snapshotsOfPreviousFormatsAreIgnored() throws IOException {
+        CacheSnapshot<String, String> snapshot = open(1L);
+        createCache(snapshot).get("a");
+        snapshot.save();
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer.wrap(bytes).putInt(4, 1);
+        Files.write(path, bytes);
+
+        loadCount.set(0);
+        createCache(open(1L)).get("a");
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidFilesAreIgnored() throws IOException {
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21});
+        CacheSnapshot<String, String> snapshot = open(1L);
+        assertThat(createCache(snapshot).get("a")).isEqualTo("A");
+        assertThat(loadCount.get()).isEqualTo(1);
+        snapshot.save();
+
+        loadCount.set(0);
+        createCache(open(1L)).get("a");
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void corruptedLengthsAreNotAllocated() throws IOException {
+        CacheSnapshot<String, String> snapshot = open(1L);
+        createCache(snapshot).get("a");
+        snapshot.save();
+        byte[] bytes = Files.readAllBytes(path);
+        // the value is the last string of the file, written as its length followed by its only byte
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 5, Integer.MAX_VALUE);
+        Files.write(path, bytes);
+
+        loadCount.set(0);
+        assertThat(createCache(open(1L)).get("a")).isEqualTo("A");
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    private CacheSnapshot<String, String> open(long fingerprint) {
+        return CacheSnapshot.open(path, fingerprint, Codecs.string(), Codecs.string());
+    }
+
+    private Cache<String, String> createCache(CacheSnapshot<String, String> snapshot) {
+        return Cache.create(new CacheParameters<String, String>()
+                .setSnapshot(snapshot)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return key.toUpperCase();
+                }));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TimerWheelTest {
+    private final TimerWheel<String, String> timerWheel = new TimerWheel<>(0);
+    private final List<String> expired = new ArrayList<>();
+
+    @Test
+    public void nodesExpireOnceTheirTimeHasElapsed() {
+        schedule("second", TimeUnit.SECONDS.toNanos(2));
+        schedule("minute", TimeUnit.MINUTES.toNanos(2));
+        schedule("hour", TimeUnit.HOURS.toNanos(2));
+        schedule("day", TimeUnit.DAYS.toNanos(2));
+        schedule("week", TimeUnit.DAYS.toNanos(10));
+
+        advance(TimeUnit.SECONDS.toNanos(1));
+        assertThat(expired).isEmpty();
+        advance(TimeUnit.SECONDS.toNanos(3));
+        assertThat(expired).containsExactly("second");
+        advance(TimeUnit.MINUTES.toNanos(3));
+        assertThat(expired).containsExactly("second", "minute");
+        advance(TimeUnit.HOURS.toNanos(3));
+        assertThat(expired).containsExactly("second", "minute", "hour");
+        advance(TimeUnit.DAYS.toNanos(3));
+        assertThat(expired).containsExactly("second", "minute", "hour", "day");
+        advance(TimeUnit.DAYS.toNanos(11));
+        assertThat(expired).containsExactly("second", "minute", "hour", "day", "week");
+    }
+
+    @Test
+    public void descheduledNodesDoNotExpire() {
+        Node<String, String> node = schedule("node", TimeUnit.SECONDS.toNanos(2));
+        timerWheel.deschedule(node);
+        advance(TimeUnit.MINUTES.toNanos(1));
+        assertThat(expired).isEmpty();
+    }
+
+    @Test
+    public void nodesCanBeRescheduledByTheExpirer() {
+        schedule("node", TimeUnit.SECONDS.toNanos(2));
+        timerWheel.advance(TimeUnit.SECONDS.toNanos(3), (node, now) -> {
+            timerWheel.schedule(node, now + TimeUnit.SECONDS.toNanos(5));
+            return false;
+        });
+        advance(TimeUnit.SECONDS.toNanos(5));
+        assertThat(expired).isEmpty();
+        advance(TimeUnit.SECONDS.toNanos(10));
+        assertThat(expired).containsExactly("node");
+    }
+
+    private Node<String, String> schedule(String key, long time) {
+        Node<String, String> node = new Node<>(key, key.hashCode(), key);
+        timerWheel.schedule(node, time);
+        return node;
+    }
+
+    private void advance(long time) {
+        timerWheel.advance(time, (node, now) -> expired.add(node.key));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class TinyLFUCacheTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @Test
+    public void valuesAreLoadedOnce() {
+        Cache<Integer, String> cache = createCache(16, 1, String::valueOf);
+        assertThat(cache.get(1)).isEqualTo("1");
+        assertThat(cache.get(1)).isEqualTo("1");
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        Cache<Integer, String> cache = createCache(100, 1, String::valueOf);
+        for (int i = 0; i < 1000; i++) {
+            cache.get(i);
+        }
+        loadCount.set(0);
+        for (int i = 0; i < 1000; i++) {
+            cache.get(i);
+        }
+        assertThat(loadCount.get()).isGreaterThanOrEqualTo(900);
+    }
+
+    @Test
+    public void frequentlyUsedEntriesSurviveScans() {
+        Cache<Integer, String> cache = createCache(100, 1, String::valueOf);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get(i);
+            }
+        }
+        for (int i = 1000; i < 1500; i++) {
+            cache.get(i);
+        }
+        loadCount.set(0);
+        for (int i = 0; i < 50; i++) {
+            cache.get(i);
+        }
+        assertThat(loadCount.get()).isEqualTo(0);
+    }
+
+    private Cache<Integer, String> createCache(int maxSize, int concurrencyLevel,
+            Function<Integer, String> loadingFunction) {
+        CacheParameters<Integer, String> cacheParameters = new CacheParameters<Integer, String>()
+                .setMaxSize(maxSize)
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return loadingFunction.apply(key);
+                });
+        cacheParameters.setConcurrencyLevel(concurrencyLevel);
+        return Cache.create(cacheParameters, TinyLFUCache.Factory.class);
+    }
+}
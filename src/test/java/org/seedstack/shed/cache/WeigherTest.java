@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2013-2019, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.shed.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class WeigherTest {
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @Test
+    public void evictionIsDrivenByWeight() {
+        Cache<Integer, String> cache = createCache(ConcurrentLRUCache.Factory.class, 10);
+        cache.get(4);
+        cache.get(3);
+        cache.get(2);
+        loadCount.set(0);
+        cache.get(4);
+        cache.get(3);
+        cache.get(2);
+        assertThat(loadCount.get()).isEqualTo(0);
+
+        // 4 is the least recently used entry and has to go to make room for 5
+        cache.get(5);
+        loadCount.set(0);
+        cache.get(3);
+        cache.get(2);
+        cache.get(5);
+        assertThat(loadCount.get()).isEqualTo(0);
+        cache.get(4);
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void entriesHeavierThanTheMaximumAreNotRetained() {
+        checkHeavyEntry(ConcurrentLRUCache.Factory.class);
+        checkHeavyEntry(TinyLFUCache.Factory.class);
+    }
+
+    @Test
+    public void totalWeightIsBounded() {
+        checkTotalWeight(ConcurrentLRUCache.Factory.class);
+        checkTotalWeight(TinyLFUCache.Factory.class);
+    }
+
+    @Test
+    public void listsAreWeighedByTheirSize() {
+        assertThat(Weighers.<String, Integer>listSize().apply("a", Collections.emptyList())).isEqualTo(1);
+        assertThat(Weighers.<String, Integer>listSize().apply("a", Collections.nCopies(5, 0))).isEqualTo(6);
+    }
+
+    private void checkHeavyEntry(Class<? extends CacheFactory> factoryClass) {
+        Cache<Integer, String> cache = createCache(factoryClass, 10);
+        assertThat(cache.get(11)).isEqualTo("xxxxxxxxxxx");
+        assertThat(cache.get(11)).isEqualTo("xxxxxxxxxxx");
+        assertThat(loadCount.get()).isEqualTo(2);
+        loadCount.set(0);
+    }
+
+    private void checkTotalWeight(Class<? extends CacheFactory> factoryClass) {
+        Cache<Integer, String> cache = createCache(factoryClass, 100);
+        for (int i = 1; i <= 50; i++) {
+            cache.get(i % 20 + 1);
+            assertThat(((AbstractSegmentedCache<Integer, String>) cache).weightedSize()).isLessThanOrEqualTo(100);
+        }
+        assertThat(((AbstractSegmentedCache<Integer, String>) cache).weightedSize()).isGreaterThan(50);
+        loadCount.set(0);
+    }
+
+    private Cache<Integer, String> createCache(Class<? extends CacheFactory> factoryClass, long maximumWeight) {
+        CacheParameters<Integer, String> cacheParameters = new CacheParameters<Integer, String>()
+                .setMaximumWeight(maximumWeight)
+                .setWeigher((key, value) -> value.length())
+                .setLoadingFunction(key -> {
+                    loadCount.incrementAndGet();
+                    return String.join("", Collections.nCopies(key, "x"));
+                });
+        cacheParameters.setConcurrencyLevel(1);
+        return Cache.create(cacheParameters, factoryClass);
+    }
+}
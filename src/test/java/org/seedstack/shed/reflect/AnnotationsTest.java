@@ -19,6 +19,8 @@ import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 import org.junit.Test;
 
 public class AnnotationsTest {
@@ -249,6 +251,57 @@ public class AnnotationsTest {
                 (TypeAnnotation.class)).isNotPresent();
     }
 
+    @Test
+    public void equalElementsGetTheSameAnnotations() throws Exception {
+        Method annotatedMethod = MethodsAnnotatedByInterface.class.getDeclaredMethod("annotatedMethod");
+        Method sameAnnotatedMethod = MethodsAnnotatedByInterface.class.getDeclaredMethod("annotatedMethod");
+        assertThat(Annotations.on(annotatedMethod).traversingOverriddenMembers().find(MethodAnnotation.class))
+                .isPresent();
+        assertThat(Annotations.on(sameAnnotatedMethod).traversingOverriddenMembers().find(MethodAnnotation.class))
+                .isPresent();
+        assertThat(Annotations.on(sameAnnotatedMethod).find(MethodAnnotation.class)).isNotPresent();
+        assertThat(Annotations.on(annotatedMethod).find(MethodAnnotation.class)).isNotPresent();
+    }
+
+    @Test
+    public void findAllFollowsTheTraversalOrder() {
+        Annotations.OnClass onSubClass = Annotations.on(ValueSubClass.class).traversingSuperclasses()
+                .includingMetaAnnotations();
+        // annotations of the class first, then those of its superclass, each followed by its meta-annotations
+        assertThat(onSubClass.findAll().map(Annotation::annotationType).collect(Collectors.toList()))
+                .isEqualTo(Arrays.asList(ValueAnnotation.class, ValueMetaAnnotation.class, ValueAnnotation.class,
+                        ValueAnnotation.class));
+        assertThat(onSubClass.findAll(ValueAnnotation.class).map(ValueAnnotation::value).collect(Collectors.toList()))
+                .isEqualTo(Arrays.asList(3, 1, 2));
+        // results are stable across calls
+        assertThat(onSubClass.findAll(ValueAnnotation.class).map(ValueAnnotation::value).collect(Collectors.toList()))
+                .isEqualTo(Arrays.asList(3, 1, 2));
+    }
+
+    @Test
+    public void findReturnsTheFirstAnnotationOfTheTraversal() {
+        assertThat(Annotations.on(ValueSubClass.class).traversingSuperclasses().find(ValueAnnotation.class).get()
+                .value()).isEqualTo(3);
+        assertThat(Annotations.on(ValueBaseClass.class).find(ValueAnnotation.class).get().value()).isEqualTo(2);
+        assertThat(Annotations.on(ValueBaseClass.class).includingMetaAnnotations().find(ValueAnnotation.class).get()
+                .value()).isEqualTo(1);
+    }
+
+    @Test
+    public void metaAnnotationsAreFoundByType() {
+        assertThat(Annotations.on(ValueSubClass.class).find(ValueMetaAnnotation.class)).isNotPresent();
+        assertThat(Annotations.on(ValueSubClass.class).traversingSuperclasses().find(ValueMetaAnnotation.class))
+                .isPresent();
+        assertThat(Annotations.on(ValueBaseClass.class).findAll(ValueAnnotation.class).count()).isEqualTo(1L);
+        assertThat(Annotations.on(ValueBaseClass.class).includingMetaAnnotations().findAll(ValueAnnotation.class)
+                .count()).isEqualTo(2L);
+        assertThat(Annotations.on(NotAnnotatedClass.class).includingMetaAnnotations().find(ValueAnnotation.class))
+                .isNotPresent();
+        assertThat(Annotations.on(MetaAnnotatedBaseClass.class).includingMetaAnnotations().findAll()
+                .map(Annotation::annotationType).collect(Collectors.toList()))
+                .isEqualTo(Arrays.asList(TypeMetaAnnotation.class, TypeAnnotation.class));
+    }
+
     private Annotations.OnClass on(AnnotatedElement annotatedElement, boolean fallback, boolean meta) {
         Annotations.OnAnnotatedElement withAnnotatedElement = Annotations.on(annotatedElement);
         Annotations.OnClass OnClass = fallback ? withAnnotatedElement.fallingBackOnClasses() : withAnnotatedElement;
@@ -299,6 +352,18 @@ public class AnnotationsTest {
     private @interface ConstructorMetaAnnotation {
     }
 
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.TYPE, ElementType.ANNOTATION_TYPE})
+    private @interface ValueAnnotation {
+        int value();
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.TYPE})
+    @ValueAnnotation(1)
+    private @interface ValueMetaAnnotation {
+    }
+
     @TypeAnnotation
     private interface AnnotatedInterface {
         void notAnnotatedMethod();
@@ -428,4 +493,13 @@ public class AnnotationsTest {
     @TypeAnnotation
     private static class AnnotatedSubClass extends NotAnnotatedClass {
     }
+
+    @ValueMetaAnnotation
+    @ValueAnnotation(2)
+    private static class ValueBaseClass {
+    }
+
+    @ValueAnnotation(3)
+    private static class ValueSubClass extends ValueBaseClass {
+    }
 }